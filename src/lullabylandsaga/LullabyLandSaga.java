@@ -102,6 +102,9 @@ public class LullabyLandSaga {
         GAME_LEFT_OFFSET,
         GAME_TOP_OFFSET,
         
+        /* HOW LONG THE HINT SOLVER MAY SEARCH, IN MILLISECONDS */
+        HINT_TIME_BUDGET,
+        
         /* GAME TEXT */
         GAME_TITLE_TEXT,
         EXIT_REQUEST_TEXT,
@@ -24,6 +24,24 @@ public class LullabyLandSagaConstants {
     public static final String TILE_F_TYPE = "TILE_F_TYPE";
     public static final String TILE_SPRITE_TYPE_PREFIX = "TILE_";
     
+    // ALL THE TILE TYPES, A TILE'S INDEX IN HERE IS ITS TYPE ID
+    public static final String[] TILE_TYPES = { TILE_A_TYPE, TILE_B_TYPE, TILE_C_TYPE,
+                                                TILE_D_TYPE, TILE_E_TYPE, TILE_F_TYPE };
+    
+    // THE NUMBER OF TILES MADE FROM EACH TILE IMAGE FOR DEALING THE BOARD,
+    // AND THE NUMBER MORE THAT START OUT FOR FILLING THE GRID IN
+    public static final int TILES_PER_IMAGE = 20;
+    public static final int FILLER_TILES_PER_IMAGE = 6;
+    
+    // THE LEVEL PACK LOOKED FOR IN EACH LEVEL DIRECTORY, WHICH LEVELS ARE
+    // READ FROM BEFORE THEIR OWN FILES
+    public static final String LEVEL_PACK_FILE_NAME = "levels.llp";
+    
+    // EACH LEVEL'S FILE IN THE DATA DIRECTORY IS THIS, ITS NUMBER, AND THEN
+    // THE EXTENSION
+    public static final String LEVEL_FILE_PREFIX = "./lullaland/Level";
+    public static final String LEVEL_FILE_EXTENSION = ".zom";
+    
     // EACH SCREEN HAS ITS OWN BACKGROUND TYPE
     public static final String BACKGROUND_TYPE = "BACKGROUND_TYPE";
     
@@ -93,6 +111,7 @@ public class LullabyLandSagaConstants {
     public static final String ROW_CLEAR_STATE = "ROW_CLEAR_STATE";
     public static final String COL_CLEAR_STATE = "COLUMN_CLEAR_STATE";
     public static final String WRAPPED_STATE = "WRAPPED_STATE";
+    public static final String COLOR_BOMB_STATE = "COLOR_BOMB_STATE";
     public static final String INCORRECTLY_SELECTED_STATE = "INCORECTLY_SELECTED_STATE";
     public static final String SPECIAL_SELECTED_STATE = "SPECIAL_SELECTED_STATE";
 
@@ -116,6 +135,21 @@ public class LullabyLandSagaConstants {
     // FOR MOVING TILES AROUND
     public static final int MAX_TILE_VELOCITY = 70;
     
+    // TILE VELOCITIES ARE IN PIXELS PER SIMULATION STEP, AND THE GAME IS
+    // STEPPED THIS MANY TIMES A SECOND NO MATTER HOW OFTEN IT IS DRAWN,
+    // THOUGH NEVER MORE THAN SO MANY STEPS TO CATCH UP IN A SINGLE FRAME
+    public static final int SIMULATION_STEPS_PER_SECOND = 30;
+    public static final int MAX_SIMULATION_STEPS_PER_FRAME = 5;
+    
+    // HOW LONG THE HINT SOLVER SEARCHES FOR, IN MILLISECONDS, WHEN THE
+    // HINT_TIME_BUDGET PROPERTY ISN'T SET, AND HOW FAR AHEAD IT LOOKS
+    public static final long DEFAULT_HINT_TIME_BUDGET = 250;
+    public static final int HINT_MAX_DEPTH = 4;
+    public static final int HINT_SAMPLES = 3;
+    
+    // THE MOST SWAPS THAT CAN BE UNDONE, ONE AFTER THE OTHER
+    public static final int MAX_UNDO_STATES = 32;
+    
     // UI CONTROLS POSITIONS IN THE GAME SCREEN
     public static final int CONTROLS_MARGIN = 0;
     public static final int SAGA_LEFT_BUTTON_X = 30;
@@ -146,6 +180,7 @@ public class LullabyLandSagaConstants {
     public static final Color ROW_CLEAR_TILE_COLOR = new Color(255,50,50,100);
     public static final Color COL_CLEAR_TILE_COLOR = new Color(225,50,50,100);
     public static final Color WRAPPED_TILE_COLOR = new Color(205,50,50,100);
+    public static final Color COLOR_BOMB_TILE_COLOR = new Color(50,50,205,100);
     public static final Color SPECIAL_SELECTED_COLOR = new Color(131, 50, 196, 100);
     public static final Color CLOUD_COLOR = new Color(153, 255, 255, 100);
     
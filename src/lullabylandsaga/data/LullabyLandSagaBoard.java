@@ -0,0 +1,456 @@
+package lullabylandsaga.data;
+
+/**
+ * This class is a compact model of the game grid. For each cell it keeps
+ * the type id of the tile used for matching along with that tile's special
+ * state, both stored in primitive arrays column by column, meaning the cell
+ * at col, row is found at col * rows + row. The data model keeps it in sync
+ * with its grid of tile sprites so that match tests, gravity and the like
+ * never have to reach through the sprites, and it is cheap to copy.
+ *
+ * The board also keeps track of the cells that have changed since it was
+ * last known to hold no matches, so that looking for matches after a move
+ * only needs to look near those cells rather than over the whole grid.
+ * Separately it keeps track of the cells that have changed since the
+ * index of available moves was last brought up to date.
+ *
+ * A Zobrist hash of the tiles is kept up to date as they change, and
+ * copies of a board share its arrays until one of them changes a tile,
+ * which is when the one changing it makes its own, so copying a board to
+ * keep as a snapshot costs next to nothing.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaBoard
+{
+    // A CELL WITH NO TILE IN IT
+    public static final int EMPTY = LullabyLandSagaMatchEngine.EMPTY_CELL;
+
+    // THE SPECIAL STATES A TILE MAY HAVE
+    public static final byte NO_SPECIAL = 0;
+    public static final byte ROW_CLEAR_SPECIAL = 1;
+    public static final byte COLUMN_CLEAR_SPECIAL = 2;
+    public static final byte WRAPPED_SPECIAL = 3;
+    public static final byte COLOR_BOMB_SPECIAL = 4;
+    public static final int SPECIAL_STATES = 5;
+
+    // BOARD DIMENSIONS
+    private int columns;
+    private int rows;
+
+    // THE TILE TYPE ID AND SPECIAL STATE OF EACH CELL, WHICH MAY BE
+    // SHARED WITH COPIES OF THIS BOARD, IN WHICH CASE THEY ARE COPIED
+    // BEFORE BEING CHANGED
+    private int[] types;
+    private byte[] specials;
+    private boolean shared;
+
+    // THE KEYS FOR HASHING THE TILES, AND THE HASH OF THE TILES NOW
+    private LullabyLandSagaZobrist zobrist;
+    private long hash;
+
+    // ONE BIT PER CELL, SET FOR EACH CELL THAT HAS CHANGED SINCE THE
+    // BOARD WAS LAST KNOWN TO HOLD NO MATCHES
+    private long[] dirtyCells;
+
+    // ONE BIT PER CELL, SET FOR EACH CELL THAT HAS CHANGED SINCE THE
+    // MOVE INDEX WAS LAST UPDATED
+    private long[] changedCells;
+
+    /**
+     * Constructor for initializing an empty board of the given size.
+     *
+     * @param initColumns The number of columns in the board.
+     *
+     * @param initRows The number of rows in the board.
+     */
+    public LullabyLandSagaBoard(int initColumns, int initRows)
+    {
+        columns = initColumns;
+        rows = initRows;
+        types = new int[columns * rows];
+        specials = new byte[columns * rows];
+        shared = false;
+        zobrist = new LullabyLandSagaZobrist(columns * rows);
+        dirtyCells = new long[getBitSetLength()];
+        changedCells = new long[getBitSetLength()];
+        clear();
+    }
+
+    /**
+     * Constructor for making a copy of the board argument. The two share
+     * their tiles until either one changes.
+     *
+     * @param board The board to copy.
+     */
+    public LullabyLandSagaBoard(LullabyLandSagaBoard board)
+    {
+        columns = board.columns;
+        rows = board.rows;
+        types = board.types;
+        specials = board.specials;
+        shared = true;
+        board.shared = true;
+        zobrist = board.zobrist;
+        hash = board.hash;
+        dirtyCells = board.dirtyCells.clone();
+        changedCells = board.changedCells.clone();
+    }
+
+    // ACCESSOR METHODS
+
+    /**
+     * Accessor method for getting the number of columns in this board.
+     *
+     * @return The number of columns in this board.
+     */
+    public int getColumns()
+    {
+        return columns;
+    }
+
+    /**
+     * Accessor method for getting the number of rows in this board.
+     *
+     * @return The number of rows in this board.
+     */
+    public int getRows()
+    {
+        return rows;
+    }
+
+    /**
+     * Accessor method for getting the index of the col, row cell in the
+     * arrays backing this board.
+     *
+     * @return The index of that cell.
+     */
+    public int getIndex(int col, int row)
+    {
+        return (col * rows) + row;
+    }
+
+    /**
+     * Accessor method for getting the tile type id in the col, row cell.
+     *
+     * @return The tile type id in that cell, or EMPTY if there is no tile.
+     */
+    public int getType(int col, int row)
+    {
+        return types[(col * rows) + row];
+    }
+
+    /**
+     * Accessor method for getting the special state of the tile in the
+     * col, row cell.
+     *
+     * @return The special state of the tile in that cell.
+     */
+    public byte getSpecial(int col, int row)
+    {
+        return specials[(col * rows) + row];
+    }
+
+    /**
+     * Accessor method for testing if the col, row cell has no tile.
+     *
+     * @return true if there is no tile in that cell, false otherwise.
+     */
+    public boolean isEmpty(int col, int row)
+    {
+        return types[(col * rows) + row] == EMPTY;
+    }
+
+    /**
+     * Accessor method for getting the length of the bit sets used to
+     * hold one bit per cell of this board, like a dirty region.
+     *
+     * @return The number of longs needed for such a bit set.
+     */
+    public int getBitSetLength()
+    {
+        return ((columns * rows) + 63) >> 6;
+    }
+
+    /**
+     * Accessor method for testing if any cell has changed since the board
+     * was last known to hold no matches.
+     *
+     * @return true if there are changed cells, false otherwise.
+     */
+    public boolean hasDirtyCells()
+    {
+        return isAnyBitSet(dirtyCells);
+    }
+
+    /**
+     * Accessor method for testing if any cell has changed since the move
+     * index was last updated.
+     *
+     * @return true if there are changed cells, false otherwise.
+     */
+    public boolean hasChangedCells()
+    {
+        return isAnyBitSet(changedCells);
+    }
+
+    /**
+     * This method finds all the cells within reach of a dirty cell in
+     * the same row or column, which are the only cells a new match may
+     * be anchored on. They are added to the region argument, a bit set
+     * with one bit per cell that must be getBitSetLength() long.
+     *
+     * @param reach How far from a dirty cell to look.
+     *
+     * @param region The bit set the cells found are added to.
+     */
+    public void getDirtyRegion(int reach, long[] region)
+    {
+        addRegion(dirtyCells, reach, region);
+    }
+
+    /**
+     * This method finds all the cells within reach of a cell that has
+     * changed since the move index was last updated, in the same row or
+     * column. They are added to the region argument, a bit set with one
+     * bit per cell that must be getBitSetLength() long.
+     *
+     * @param reach How far from a changed cell to look.
+     *
+     * @param region The bit set the cells found are added to.
+     */
+    public void getChangedRegion(int reach, long[] region)
+    {
+        addRegion(changedCells, reach, region);
+    }
+
+    /**
+     * Accessor method for getting the Zobrist hash of the tiles on this
+     * board, their types and special states.
+     *
+     * @return The hash, which is 0 for an empty board.
+     */
+    public long getHash()
+    {
+        return hash;
+    }
+
+    /**
+     * Accessor method for getting the keys the tiles are hashed with,
+     * for hashing the rest of a game along with its board.
+     *
+     * @return The Zobrist keys for this board.
+     */
+    public LullabyLandSagaZobrist getZobrist()
+    {
+        return zobrist;
+    }
+
+    /**
+     * Accessor method for getting the tile type ids of all the cells. Note
+     * that this is the array backing this board, not a copy, and so it is
+     * only meant for reading, like by the match engine.
+     *
+     * @return The tile type id of every cell, column by column.
+     */
+    public int[] getTypes()
+    {
+        return types;
+    }
+
+    // MUTATOR METHODS
+
+    /**
+     * Mutator method for setting the tile in the col, row cell.
+     *
+     * @param type The tile type id, or EMPTY for no tile.
+     *
+     * @param special The special state of the tile.
+     */
+    public void setCell(int col, int row, int type, byte special)
+    {
+        int index = (col * rows) + row;
+        if (type == EMPTY)
+            special = NO_SPECIAL;
+        if ((types[index] != type) || (specials[index] != special))
+        {
+            makeOwned();
+            hash ^= zobrist.getTileKey(index, types[index], specials[index])
+                    ^ zobrist.getTileKey(index, type, special);
+            types[index] = type;
+            specials[index] = special;
+            markDirty(index);
+        }
+    }
+
+    /**
+     * Mutator method for removing the tile from the col, row cell.
+     */
+    public void clearCell(int col, int row)
+    {
+        setCell(col, row, EMPTY, NO_SPECIAL);
+    }
+
+    /**
+     * Mutator method for swapping the tiles in two cells.
+     */
+    public void swapCells(int col1, int row1, int col2, int row2)
+    {
+        int index1 = (col1 * rows) + row1;
+        int index2 = (col2 * rows) + row2;
+        makeOwned();
+        hash ^= zobrist.getTileKey(index1, types[index1], specials[index1])
+                ^ zobrist.getTileKey(index2, types[index2], specials[index2])
+                ^ zobrist.getTileKey(index1, types[index2], specials[index2])
+                ^ zobrist.getTileKey(index2, types[index1], specials[index1]);
+        int type = types[index1];
+        types[index1] = types[index2];
+        types[index2] = type;
+        byte special = specials[index1];
+        specials[index1] = specials[index2];
+        specials[index2] = special;
+        if ((types[index1] != types[index2]) || (specials[index1] != specials[index2]))
+        {
+            markDirty(index1);
+            markDirty(index2);
+        }
+    }
+
+    /**
+     * Mutator method for removing all the tiles from this board.
+     */
+    public void clear()
+    {
+        makeOwned();
+        hash = 0;
+        for (int i = 0; i < types.length; i++)
+        {
+            types[i] = EMPTY;
+            specials[i] = NO_SPECIAL;
+        }
+        
+        // AN EMPTY BOARD HAS NO MATCHES, BUT ANY MOVES
+        // THAT WERE INDEXED ARE NOW GONE
+        clearDirtyCells();
+        for (int i = 0; i < types.length; i++)
+        {
+            changedCells[i >> 6] |= 1L << i;
+        }
+    }
+
+    /**
+     * Mutator method for marking all the cells as unchanged, which should
+     * be done once the board is known to hold no matches.
+     */
+    public void clearDirtyCells()
+    {
+        for (int w = 0; w < dirtyCells.length; w++)
+        {
+            dirtyCells[w] = 0;
+        }
+    }
+
+    /**
+     * Mutator method for marking all the cells as unchanged as far as
+     * the move index is concerned, which it does once it is up to date.
+     */
+    public void clearChangedCells()
+    {
+        for (int w = 0; w < changedCells.length; w++)
+        {
+            changedCells[w] = 0;
+        }
+    }
+
+    /**
+     * Mutator method for putting this board back to how the snapshot
+     * argument is, which must be a copy of this board made earlier. The
+     * two then share their tiles until either one changes.
+     *
+     * @param snapshot The copy to put this board back to.
+     */
+    public void restore(LullabyLandSagaBoard snapshot)
+    {
+        // ONLY THE CELLS THAT DIFFER COUNT AS CHANGED
+        if (types != snapshot.types)
+        {
+            for (int i = 0; i < types.length; i++)
+            {
+                if (types[i] != snapshot.types[i])
+                    changedCells[i >> 6] |= 1L << i;
+            }
+        }
+        types = snapshot.types;
+        specials = snapshot.specials;
+        shared = true;
+        snapshot.shared = true;
+        hash = snapshot.hash;
+        System.arraycopy(snapshot.dirtyCells, 0, dirtyCells, 0, dirtyCells.length);
+    }
+
+    /**
+     * Helper method that makes sure this board has tiles of its own
+     * before they are changed, rather than ones shared with a copy.
+     */
+    private void makeOwned()
+    {
+        if (shared)
+        {
+            types = types.clone();
+            specials = specials.clone();
+            shared = false;
+        }
+    }
+
+    /**
+     * Helper method for marking the cell at index as changed.
+     */
+    private void markDirty(int index)
+    {
+        dirtyCells[index >> 6] |= 1L << index;
+        changedCells[index >> 6] |= 1L << index;
+    }
+
+    /**
+     * Helper method for testing if any bit in the bit set argument is set.
+     */
+    private boolean isAnyBitSet(long[] bitSet)
+    {
+        for (long word : bitSet)
+        {
+            if (word != 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Helper method that adds all the cells within reach of a cell in the
+     * cells bit set, in the same row or column, to the region bit set.
+     */
+    private void addRegion(long[] cells, int reach, long[] region)
+    {
+        for (int w = 0; w < cells.length; w++)
+        {
+            long word = cells[w];
+            while (word != 0)
+            {
+                int bit = Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                int index = (w << 6) + bit;
+                int col = index / rows;
+                int row = index % rows;
+                for (int i = Math.max(0, col - reach); i <= Math.min(columns - 1, col + reach); i++)
+                {
+                    int cell = (i * rows) + row;
+                    region[cell >> 6] |= 1L << cell;
+                }
+                for (int j = Math.max(0, row - reach); j <= Math.min(rows - 1, row + reach); j++)
+                {
+                    int cell = (col * rows) + j;
+                    region[cell >> 6] |= 1L << cell;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package lullabylandsaga.data;
+
+import java.util.Random;
+
+/**
+ * This class deals out the tile types for a new board in a single pass.
+ * The board it deals never starts with a match already in it and has at
+ * least one swap the player can make, so there is no need to keep
+ * reshuffling until a usable board turns up. It uses only the tiles it is
+ * told are available and leaves the cells of the level that hold no tiles
+ * empty, and given the same seeded random number generator it deals the
+ * same board every time.
+ *
+ * Should there be too few tiles of any one type to give the player a
+ * swap, the board is dealt without one, and lastDealHasMove says so. Since
+ * dealing again can't help, it is up to the caller to end the game.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaBoardGenerator
+{
+    // THE ENGINE USED TO TEST FOR MATCHES AND SWAPS
+    private LullabyLandSagaMatchEngine matchEngine;
+
+    // WHETHER THE LAST BOARD DEALT GAVE THE PLAYER A SWAP
+    private boolean lastDealHasMove;
+
+    /**
+     * Constructor for initializing this generator.
+     *
+     * @param initMatchEngine The engine used to test for matches.
+     */
+    public LullabyLandSagaBoardGenerator(LullabyLandSagaMatchEngine initMatchEngine)
+    {
+        matchEngine = initMatchEngine;
+    }
+
+    /**
+     * Accessor method for testing if the last board dealt has a swap the
+     * player can make, which it lacks only when there aren't enough tiles
+     * of any type to plant one.
+     *
+     * @return true if the last board dealt has a move, false otherwise.
+     */
+    public boolean lastDealHasMove()
+    {
+        return lastDealHasMove;
+    }
+
+    /**
+     * This method deals the tile types for a new board. For each cell it
+     * picks the type of every tile stacked in it, the bottom one first,
+     * which is the one used for matching.
+     *
+     * @param levelGrid The number of tiles to stack in each cell.
+     *
+     * @param columns The number of columns in the grid.
+     *
+     * @param rows The number of rows in the grid.
+     *
+     * @param supply The number of tiles available of each type, indexed
+     * by tile type id. Note that the tiles dealt are taken out of it.
+     *
+     * @param random The random number generator used to pick tiles.
+     *
+     * @return For each cell, column by column, the types of the tiles
+     * stacked in it from the bottom up. See lastDealHasMove for whether it
+     * has a move.
+     */
+    public int[][] generate(int[][] levelGrid, int columns, int rows,
+                                int[] supply, Random random)
+    {
+        int[] types = new int[columns * rows];
+        int[] candidates = new int[supply.length];
+
+        // FIRST THE BOTTOM TILES, WHICH MAKE MATCHES. WE GO CELL BY CELL,
+        // PICKING ANY TYPE THAT WON'T FINISH A LINE OF THREE WITH THE
+        // TWO CELLS TO THE LEFT OR THE TWO ABOVE, WHICH ARE ALL THE
+        // CELLS DEALT SO FAR THAT IT COULD LINE UP WITH
+        for (int i = 0; i < columns; i++)
+        {
+            for (int j = 0; j < rows; j++)
+            {
+                int cell = (i * rows) + j;
+                if (levelGrid[i][j] == 0)
+                {
+                    types[cell] = LullabyLandSagaMatchEngine.EMPTY_CELL;
+                    continue;
+                }
+
+                int numCandidates = 0;
+                for (int type = 0; type < supply.length; type++)
+                {
+                    if ((supply[type] > 0) && !finishesLine(types, rows, i, j, type))
+                        candidates[numCandidates++] = type;
+                }
+
+                // ONLY WHEN THE TILES RUN OUT DO WE SETTLE FOR A LINE,
+                // WHICH WILL THEN BE CLEARED AS A MATCH
+                if (numCandidates == 0)
+                {
+                    for (int type = 0; type < supply.length; type++)
+                    {
+                        if (supply[type] > 0)
+                            candidates[numCandidates++] = type;
+                    }
+                }
+                if (numCandidates == 0)
+                {
+                    types[cell] = LullabyLandSagaMatchEngine.EMPTY_CELL;
+                    continue;
+                }
+
+                int type = candidates[random.nextInt(numCandidates)];
+                types[cell] = type;
+                supply[type]--;
+            }
+        }
+
+        // THEN MAKE SURE THE PLAYER HAS A MOVE
+        lastDealHasMove = hasMove(types, columns, rows)
+                || plantMove(types, columns, rows, supply, random);
+
+        // AND LAST THE TILES STACKED ON TOP, WHICH NEVER MATCH
+        int[][] deal = new int[columns * rows][];
+        for (int i = 0; i < columns; i++)
+        {
+            for (int j = 0; j < rows; j++)
+            {
+                int cell = (i * rows) + j;
+                if (types[cell] == LullabyLandSagaMatchEngine.EMPTY_CELL)
+                {
+                    deal[cell] = new int[0];
+                    continue;
+                }
+                deal[cell] = new int[levelGrid[i][j]];
+                deal[cell][0] = types[cell];
+                for (int k = 1; k < deal[cell].length; k++)
+                {
+                    deal[cell][k] = pickAny(supply, random);
+                }
+                if ((deal[cell].length > 1) && (deal[cell][deal[cell].length-1] < 0))
+                    deal[cell] = trimStack(deal[cell]);
+            }
+        }
+        return deal;
+    }
+
+    /**
+     * Helper method that tests if putting a tile of the type argument in
+     * the col, row cell finishes a line of three with the cells dealt
+     * before it, those to the left and those above.
+     */
+    private boolean finishesLine(int[] types, int rows, int col, int row, int type)
+    {
+        if ((col >= 2)
+                && (types[((col-1) * rows) + row] == type)
+                && (types[((col-2) * rows) + row] == type))
+            return true;
+        if ((row >= 2)
+                && (types[(col * rows) + row - 1] == type)
+                && (types[(col * rows) + row - 2] == type))
+            return true;
+        return false;
+    }
+
+    /**
+     * Helper method that tests if there is any swap on the board that
+     * would make a match.
+     */
+    private boolean hasMove(int[] types, int columns, int rows)
+    {
+        for (int i = 0; i < columns; i++)
+        {
+            for (int j = 0; j < rows; j++)
+            {
+                if (types[(i * rows) + j] == LullabyLandSagaMatchEngine.EMPTY_CELL)
+                    continue;
+                if ((i+1 < columns)
+                        && (types[((i+1) * rows) + j] != LullabyLandSagaMatchEngine.EMPTY_CELL)
+                        && (matchEngine.findMatch(types, columns, rows, i, j, i+1, j) != 0))
+                    return true;
+                if ((j+1 < rows)
+                        && (types[(i * rows) + j + 1] != LullabyLandSagaMatchEngine.EMPTY_CELL)
+                        && (matchEngine.findMatch(types, columns, rows, i, j, i, j+1) != 0))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper method that tests if there is a match that would not need a
+     * swap anchored on any cell within the match engine's reach of the
+     * col, row cell, in its row or column. Those are the only matches a
+     * change to that cell can make.
+     */
+    private boolean hasMatchNear(int[] types, int columns, int rows, int col, int row)
+    {
+        int reach = LullabyLandSagaMatchEngine.PATTERN_REACH;
+        for (int i = Math.max(0, col - reach); i <= Math.min(columns - 1, col + reach); i++)
+        {
+            if (matchEngine.findMatchInPlace(types, columns, rows, i, row) != 0)
+                return true;
+        }
+        for (int j = Math.max(0, row - reach); j <= Math.min(rows - 1, row + reach); j++)
+        {
+            if ((j != row) && (matchEngine.findMatchInPlace(types, columns, rows, col, j) != 0))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Helper method that changes a few tiles so that the board has a move.
+     * It makes two tiles in a row of the same type along with a third one
+     * a diagonal step past them, so that swapping the third one into line
+     * makes a match. It tries every spot on the board, starting from a
+     * random one, and keeps the first that doesn't make a match as is.
+     * Only the cells near the three changed are tested, since the rest of
+     * the board has no matches and can't have gained any.
+     *
+     * @return true if a move was planted, false if none would fit.
+     */
+    private boolean plantMove(int[] types, int columns, int rows, int[] supply, Random random)
+    {
+        int numCells = columns * rows;
+        int start = random.nextInt(numCells);
+        int startType = random.nextInt(supply.length);
+        int[] cols = new int[3];
+        int[] rowsOf = new int[3];
+        int[] plantCells = new int[3];
+        int[] oldTypes = new int[3];
+        for (int c = 0; c < numCells; c++)
+        {
+            int cell = (start + c) % numCells;
+            int col = cell / rows;
+            int row = cell % rows;
+
+            // THE FOUR WAYS OF PLANTING A MOVE AT THIS CELL, TWO ACROSS AND
+            // TWO DOWN, WITH THE THIRD TILE A STEP TO EITHER SIDE
+            for (int shape = 0; shape < 4; shape++)
+            {
+                int side = ((shape & 1) == 0) ? 1 : -1;
+                if (shape < 2)
+                {
+                    cols[0] = col;      rowsOf[0] = row;
+                    cols[1] = col+1;    rowsOf[1] = row;
+                    cols[2] = col+2;    rowsOf[2] = row+side;
+                }
+                else
+                {
+                    cols[0] = col;      rowsOf[0] = row;
+                    cols[1] = col;      rowsOf[1] = row+1;
+                    cols[2] = col+side; rowsOf[2] = row+2;
+                }
+
+                // THE CELL THE THIRD TILE SWAPS INTO MUST HAVE A TILE TOO
+                int gapCol = (shape < 2) ? col+2 : col;
+                int gapRow = (shape < 2) ? row : row+2;
+                if (!isOnBoard(types, columns, rows, gapCol, gapRow))
+                    continue;
+
+                boolean fits = true;
+                for (int k = 0; k < 3; k++)
+                {
+                    if (!isOnBoard(types, columns, rows, cols[k], rowsOf[k]))
+                        fits = false;
+                }
+                if (!fits)
+                    continue;
+
+                for (int t = 0; t < supply.length; t++)
+                {
+                    int type = (startType + t) % supply.length;
+                    if (types[(gapCol * rows) + gapRow] == type)
+                        continue;
+
+                    // TRY IT, PUTTING THE TILES IT REPLACES BACK IN THE SUPPLY
+                    for (int k = 0; k < 3; k++)
+                    {
+                        plantCells[k] = (cols[k] * rows) + rowsOf[k];
+                        oldTypes[k] = types[plantCells[k]];
+                        supply[oldTypes[k]]++;
+                    }
+                    boolean enough = supply[type] >= 3;
+                    if (enough)
+                    {
+                        for (int k = 0; k < 3; k++)
+                        {
+                            types[plantCells[k]] = type;
+                        }
+                        // THE THIRD TILE SWAPPED INTO THE GAP MUST MAKE A
+                        // MATCH, AND NONE OF THEM MAY MAKE ONE AS THEY ARE
+                        boolean planted = matchEngine.findMatch(types, columns, rows,
+                                cols[2], rowsOf[2], gapCol, gapRow) != 0;
+                        for (int k = 0; planted && (k < 3); k++)
+                        {
+                            planted = !hasMatchNear(types, columns, rows, cols[k], rowsOf[k]);
+                        }
+                        if (planted)
+                        {
+                            supply[type] -= 3;
+                            return true;
+                        }
+                    }
+
+                    // IT DIDN'T WORK, SO PUT THINGS BACK
+                    for (int k = 0; k < 3; k++)
+                    {
+                        types[plantCells[k]] = oldTypes[k];
+                        supply[oldTypes[k]]--;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper method that tests if the col, row cell is on the board and
+     * has a tile in it.
+     */
+    private boolean isOnBoard(int[] types, int columns, int rows, int col, int row)
+    {
+        return (col >= 0) && (col < columns) && (row >= 0) && (row < rows)
+                && (types[(col * rows) + row] != LullabyLandSagaMatchEngine.EMPTY_CELL);
+    }
+
+    /**
+     * Helper method for picking a tile of any type still in the supply.
+     *
+     * @return The type picked, or EMPTY_CELL if the supply has run out.
+     */
+    private int pickAny(int[] supply, Random random)
+    {
+        int total = 0;
+        for (int count : supply)
+        {
+            total += count;
+        }
+        if (total == 0)
+            return LullabyLandSagaMatchEngine.EMPTY_CELL;
+
+        int pick = random.nextInt(total);
+        for (int type = 0; type < supply.length; type++)
+        {
+            if (pick < supply[type])
+            {
+                supply[type]--;
+                return type;
+            }
+            pick -= supply[type];
+        }
+        return LullabyLandSagaMatchEngine.EMPTY_CELL;
+    }
+
+    /**
+     * Helper method that drops the tiles from the top of a stack that
+     * could not be dealt because the supply ran out.
+     */
+    private int[] trimStack(int[] stack)
+    {
+        int size = stack.length;
+        while ((size > 1) && (stack[size-1] < 0))
+        {
+            size--;
+        }
+        int[] trimmed = new int[size];
+        System.arraycopy(stack, 0, trimmed, 0, size);
+        return trimmed;
+    }
+}
@@ -0,0 +1,205 @@
+package lullabylandsaga.data;
+
+/**
+ * This class works out all the tiles a match clears, meaning the tiles in
+ * the match along with those cleared by the special tiles it sets off, and
+ * by the special tiles those set off, and so on. Rather than clearing each
+ * tile as it's found and setting off its special right away, which makes
+ * for deep chains of calls, it collects the cells to clear in a bit set
+ * and keeps the special tiles waiting to go off in a queue. Since a cell
+ * is only added to the set once, each tile is cleared at most once and
+ * each special goes off at most once, however the chain goes, so working
+ * out even a whole board's worth takes one pass over it at most. The cells
+ * found are then cleared by the caller, all at once.
+ *
+ * The special tiles do the following when they go off:
+ *  - A row clearing tile clears its whole row.
+ *  - A column clearing tile clears its whole column.
+ *  - A wrapped tile clears the 3x3 block of cells around it.
+ *  - A color bomb clears every tile of its type.
+ *
+ * A cell only has one tile cleared from it, its top one, so clearing a
+ * cell whose tile is covered by clouds only clears a cloud, and so doesn't
+ * set off the tile's special. Cells can also be kept from being cleared,
+ * like the one where a match has just made a new special tile.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaCascadeResolver
+{
+    // THE BOARD WHOSE CELLS WE CLEAR
+    private LullabyLandSagaBoard board;
+    private int columns;
+    private int rows;
+
+    // ONE BIT PER CELL, FOR THE CELLS TO CLEAR, THE CELLS NOT TO, AND THE
+    // CELLS WHOSE TILES ARE UNDER CLOUDS
+    private long[] clearCells;
+    private long[] keptCells;
+    private long[] coveredCells;
+    private int clearCount;
+
+    // THE CELLS WHOSE SPECIAL TILES HAVE YET TO GO OFF, THE FIRST
+    // queueSize OF THEM. A CELL IS ONLY EVER ADDED ONCE, SO THERE'S ROOM
+    // FOR ALL OF THEM
+    private int[] queue;
+    private int queueSize;
+
+    /**
+     * Constructor for initializing a resolver for the board argument.
+     *
+     * @param initBoard The board whose cells are cleared.
+     */
+    public LullabyLandSagaCascadeResolver(LullabyLandSagaBoard initBoard)
+    {
+        board = initBoard;
+        columns = board.getColumns();
+        rows = board.getRows();
+        clearCells = new long[board.getBitSetLength()];
+        keptCells = new long[board.getBitSetLength()];
+        coveredCells = new long[board.getBitSetLength()];
+        queue = new int[columns * rows];
+        begin();
+    }
+
+    // ACCESSOR METHODS
+
+    /**
+     * Accessor method for getting the cells to clear, one bit per cell.
+     * Note that this is not a copy, and is only good until begin is next
+     * called.
+     *
+     * @return The cells to clear.
+     */
+    public long[] getClearCells()
+    {
+        return clearCells;
+    }
+
+    /**
+     * Accessor method for getting the number of cells to clear.
+     *
+     * @return The number of bits set in the cells to clear.
+     */
+    public int getClearCount()
+    {
+        return clearCount;
+    }
+
+    // RESOLVING METHODS
+
+    /**
+     * This method starts working out a new set of cells to clear,
+     * forgetting the last one.
+     */
+    public void begin()
+    {
+        for (int w = 0; w < clearCells.length; w++)
+        {
+            clearCells[w] = 0;
+            keptCells[w] = 0;
+            coveredCells[w] = 0;
+        }
+        clearCount = 0;
+        queueSize = 0;
+    }
+
+    /**
+     * This method marks the col, row cell as having its tile under clouds,
+     * so clearing it won't set off the tile's special.
+     */
+    public void cover(int col, int row)
+    {
+        int cell = (col * rows) + row;
+        coveredCells[cell >> 6] |= 1L << cell;
+    }
+
+    /**
+     * This method keeps the col, row cell from being cleared, whatever
+     * goes off around it.
+     */
+    public void keep(int col, int row)
+    {
+        int cell = (col * rows) + row;
+        keptCells[cell >> 6] |= 1L << cell;
+    }
+
+    /**
+     * This method adds the col, row cell to those to clear, unless it is
+     * off the board, empty, kept, or already added. If the tile it clears
+     * is special, it goes off when resolve is next called.
+     */
+    public void clear(int col, int row)
+    {
+        if ((col < 0) || (col >= columns) || (row < 0) || (row >= rows))
+            return;
+        if (board.isEmpty(col, row))
+            return;
+
+        int cell = (col * rows) + row;
+        int w = cell >> 6;
+        long bit = 1L << cell;
+        if (((clearCells[w] | keptCells[w]) & bit) != 0)
+            return;
+        clearCells[w] |= bit;
+        clearCount++;
+
+        if ((board.getSpecial(col, row) != LullabyLandSagaBoard.NO_SPECIAL)
+                && ((coveredCells[w] & bit) == 0))
+        {
+            queue[queueSize] = cell;
+            queueSize++;
+        }
+    }
+
+    /**
+     * This method sets off all the special tiles in the cells to clear,
+     * adding the cells they clear, until there are none left to go off.
+     */
+    public void resolve()
+    {
+        while (queueSize > 0)
+        {
+            queueSize--;
+            int cell = queue[queueSize];
+            int col = cell / rows;
+            int row = cell % rows;
+            byte special = board.getSpecial(col, row);
+
+            if (special == LullabyLandSagaBoard.ROW_CLEAR_SPECIAL)
+            {
+                for (int i = 0; i < columns; i++)
+                {
+                    clear(i, row);
+                }
+            }
+            else if (special == LullabyLandSagaBoard.COLUMN_CLEAR_SPECIAL)
+            {
+                for (int i = 0; i < rows; i++)
+                {
+                    clear(col, i);
+                }
+            }
+            else if (special == LullabyLandSagaBoard.WRAPPED_SPECIAL)
+            {
+                for (int i = col - 1; i <= col + 1; i++)
+                {
+                    for (int j = row - 1; j <= row + 1; j++)
+                    {
+                        clear(i, j);
+                    }
+                }
+            }
+            else if (special == LullabyLandSagaBoard.COLOR_BOMB_SPECIAL)
+            {
+                int type = board.getType(col, row);
+                int[] types = board.getTypes();
+                for (int i = 0; i < types.length; i++)
+                {
+                    if (types[i] == type)
+                        clear(i / rows, i % rows);
+                }
+            }
+        }
+    }
+}
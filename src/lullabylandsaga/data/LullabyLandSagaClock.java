@@ -0,0 +1,81 @@
+package lullabylandsaga.data;
+
+/**
+ * This class is the clock the game is simulated by. The game is drawn as
+ * often as the timer driving it fires, which depends on the FPS setting
+ * and on how busy the machine is, but it is simulated in steps of a fixed
+ * length of time, so tiles move at the same speed no matter what. Each
+ * frame the real time that has passed is added to an accumulator, and as
+ * many whole steps as it holds are taken out of it. What is left over is
+ * how far the game is between its last step and its next one, which is
+ * used to draw the moving tiles in between where those steps put them.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaClock
+{
+    // THE LENGTH OF A STEP, IN NANOSECONDS
+    private long stepLength;
+
+    // THE MOST STEPS TAKEN IN ONE FRAME, AFTER A LONG STALL WE LET THE
+    // GAME FALL BEHIND RATHER THAN SPEND FRAMES TRYING TO CATCH UP
+    private int maxSteps;
+
+    // THE TIME OF THE LAST FRAME, AND HOW MUCH TIME HAS PASSED SINCE
+    // THE LAST STEP, BOTH IN NANOSECONDS
+    private boolean started;
+    private long lastTime;
+    private long accumulator;
+
+    /**
+     * Constructor for initializing a clock that has not yet started.
+     *
+     * @param stepsPerSecond How many steps to take each second.
+     *
+     * @param initMaxSteps The most steps to take in a single frame.
+     */
+    public LullabyLandSagaClock(int stepsPerSecond, int initMaxSteps)
+    {
+        stepLength = 1000000000L / stepsPerSecond;
+        maxSteps = initMaxSteps;
+        started = false;
+        accumulator = 0;
+    }
+
+    /**
+     * This method advances the clock to the time argument, which should be
+     * called once per frame.
+     *
+     * @param now The current time, in nanoseconds, from System.nanoTime.
+     *
+     * @return The number of steps the game should now be simulated for.
+     */
+    public int advance(long now)
+    {
+        if (!started)
+        {
+            started = true;
+            lastTime = now;
+            return 0;
+        }
+
+        long elapsed = now - lastTime;
+        lastTime = now;
+        accumulator += Math.max(0, Math.min(elapsed, stepLength * maxSteps));
+        int steps = (int)(accumulator / stepLength);
+        accumulator -= steps * stepLength;
+        return steps;
+    }
+
+    /**
+     * Accessor method for getting how far the game is between its last
+     * step and its next one.
+     *
+     * @return A fraction from 0, meaning just at the last step, up to but
+     * not including 1, meaning just at the next step.
+     */
+    public float getInterpolation()
+    {
+        return (float)accumulator / stepLength;
+    }
+}
@@ -1,15 +1,17 @@
 package lullabylandsaga.data;
 
+import lullabylandsaga.ui.LullabyLandSagaAnimationSet;
+import lullabylandsaga.ui.LullabyLandSagaEasing;
 import lullabylandsaga.ui.LullabyLandSagaTile;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.GregorianCalendar;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import lullabylandsaga.LullabyLandSaga.LullabyLandSagaPropertyType;
+import lullabylandsaga.file.LullabyLandSagaLevelCache;
 import mini_game.MiniGame;
 import mini_game.MiniGameDataModel;
 import mini_game.SpriteType;
@@ -17,13 +19,17 @@ import properties_manager.PropertiesManager;
 import static lullabylandsaga.LullabyLandSagaConstants.*;
 import lullabylandsaga.ui.LullabyLandSagaMiniGame;
 import lullabylandsaga.ui.LullabyLandSagaPanel;
+import lullabylandsaga.ui.LullabyLandSagaTileAtlas;
+import lullabylandsaga.ui.LullabyLandSagaTileState;
 
 /**
- * This class manages the game data for Mahjong Solitaire. 
+ * This class manages the game data for Mahjong Solitaire. The game itself
+ * is played on a rules engine, and the tile sprites follow each change it
+ * makes to the tiles, see LullabyLandSagaRulesListener.
  * 
  * @author Richard McKenna, Thomas Marion
  */
-public class LullabyLandSagaDataModel extends MiniGameDataModel
+public class LullabyLandSagaDataModel extends MiniGameDataModel implements LullabyLandSagaRulesListener
 {
     // THIS CLASS HAS A REFERERENCE TO THE MINI GAME SO THAT IT
     // CAN NOTIFY IT TO UPDATE THE DISPLAY WHEN THE DATA MODEL CHANGES
@@ -44,10 +50,28 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
     private ArrayList<LullabyLandSagaTile> stackTiles;
     
     // THESE ARE THE TILES THAT ARE MOVING AROUND, AND SO WE HAVE TO UPDATE
-    private ArrayList<LullabyLandSagaTile> movingTiles;
+    private LullabyLandSagaAnimationSet movingTiles;
     
-    private ArrayList<LullabyLandSagaTile> fillerTiles;
-    private ArrayList<Integer> colsToAdd;
+    // THE MOVING TILES ARE MOVED BY THIS CLOCK RATHER THAN ONCE A FRAME,
+    // AND THIS IS HOW FAR THE GAME IS BETWEEN ITS LAST STEP AND ITS NEXT
+    private LullabyLandSagaClock clock;
+    private float interpolation;
+    
+    // THE TILES THAT FILL IN THE CELLS LEFT EMPTY, BY TILE TYPE ID
+    private ArrayList<LullabyLandSagaTile>[] fillerTiles;
+    
+    // FOR DEALING THE BOARD, THE TILES THAT CAN BE DEALT, BY TILE TYPE ID
+    private ArrayList<LullabyLandSagaTile>[] dealtTiles;
+    
+    // THE TILES MOVED DOWN SINCE THE ENGINE LAST FILLED ITS EMPTY CELLS,
+    // THE FIRST droppedCount OF THEM, WHICH ARE SET MOVING TOGETHER, AND
+    // THE NUMBER OF FILLER TILES ADDED TO EACH COLUMN, WHICH START THAT
+    // MANY CELLS ABOVE WHERE THEY GO, SO THEY FALL IN TOGETHER
+    private LullabyLandSagaTile[] droppedTiles;
+    private int droppedCount;
+    private LullabyLandSagaTile[] addedTiles;
+    private int addedCount;
+    private int[] addedCounts;
     
     // THIS IS A SELECTED TILE, MEANING THE FIRST OF A PAIR THE PLAYER
     // IS TRYING TO MATCH. THERE CAN ONLY BE ONE OF THESE AT ANY TIME
@@ -57,28 +81,44 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
     private int unassignedTilesX;
     private int unassignedTilesY;
     
-    // THESE ARE USED FOR TIMING THE GAME
-    private GregorianCalendar startTime;
-    private GregorianCalendar endTime;
+    // THESE ARE USED FOR TIMING THE GAME, IN NANOSECONDS, THOUGH
+    // ONLY ONCE THE TIMER HAS BEEN STARTED
+    private boolean timerStarted;
+    private long startTime;
+    private long endTime;
     
     // THE REFERENCE TO THE FILE BEING PLAYED
     private String currentLevel;
+    private LullabyLandSagaLevel level;
     private int latestLevel = 1;
     
     // TILE COUNT
     private int tileCount;
     
-    private int score;
-    private int scoreMultiplier;
-    private int scoreObjective;
+    // THE GAME IS PLAYED ON THIS, WHICH HAS THE TILE TYPE ID AND SPECIAL
+    // STATE OF EACH CELL, ALONG WITH THE SCORE AND TURNS, AND WHICH TELLS
+    // US OF EACH CHANGE IT MAKES TO THE TILES, SO THE TILE GRID CAN
+    // FOLLOW IT. THERE'S NONE UNTIL A GAME OF THE LEVEL IS STARTED
+    private LullabyLandSagaRulesEngine engine;
     
-    private int clouds;
+    // THE SWAPS FOUND FOR THE PLAYER ARE PUT IN THIS, RATHER THAN A NEW
+    // MOVE EACH TIME
+    private LullabyLandSagaMove firstMove;
     
-    private int turns;
-
-    String stateHolder = VISIBLE_STATE;
+    // EACH GAME'S SEEDS COME FROM THIS, WHICH IS SEEDED FOR EACH GAME,
+    // AND WE KEEP THAT SEED AND THE ONE FOR THE NEXT GAME
+    private LullabyLandSagaRandom random;
+    private long gameSeed;
+    private long nextGameSeed;
     
-    boolean processSpecial = false;
+    // WHAT'S KEPT OF THE GAME BEFORE EACH SWAP, THE LATEST ON TOP,
+    // FOR UNDOING THEM
+    private ArrayDeque<LullabyLandSagaUndoState> undoStates;
+    
+    // THIS GOES UP EACH TIME THE BOARD, THE STATE OF A TILE AT REST OR
+    // THE SCREEN CHANGES, SO THE VIEW KNOWS WHEN WHAT IT HAS DRAWN OF
+    // THEM IS OUT OF DATE
+    private long viewVersion;
     /**
      * Constructor for initializing this data model, it will create
      * the data structures for storing tiles, but not the tile grid
@@ -94,13 +134,21 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
         
         // INIT THESE FOR HOLDING MATCHED AND MOVING TILES
         stackTiles = new ArrayList();
-        movingTiles = new ArrayList();
-        fillerTiles = new ArrayList();
-        colsToAdd = new ArrayList();
+        movingTiles = new LullabyLandSagaAnimationSet();
+        clock = new LullabyLandSagaClock(SIMULATION_STEPS_PER_SECOND, MAX_SIMULATION_STEPS_PER_FRAME);
+        interpolation = 0;
+        fillerTiles = new ArrayList[TILE_TYPES.length];
+        dealtTiles = new ArrayList[TILE_TYPES.length];
+        for (int i = 0; i < TILE_TYPES.length; i++)
+        {
+            fillerTiles[i] = new ArrayList();
+            dealtTiles[i] = new ArrayList();
+        }
+        firstMove = new LullabyLandSagaMove();
         
-        score = 0;
-        scoreMultiplier = 1;
-        clouds = 0;
+        nextGameSeed = System.nanoTime();
+        random = new LullabyLandSagaRandom(nextGameSeed);
+        undoStates = new ArrayDeque();
     }
     
     // INIT METHODS - AFTER CONSTRUCTION, THESE METHODS SETUP A GAME FOR USE
@@ -120,6 +168,7 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
         String imgPath = props.getProperty(LullabyLandSagaPropertyType.IMG_PATH);
         int spriteTypeID = 0;
         SpriteType sT;
+        ArrayList<SpriteType> tileSpriteTypes = new ArrayList();
         
         // WE'LL RENDER ALL THE TILES ON TOP OF THE BLANK TILE
         String blankTileFileName = props.getProperty(LullabyLandSagaPropertyType.BLANK_TILE_IMAGE_NAME);
@@ -138,11 +187,12 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
         {
             String imgFile = imgPath + typeATiles.get(i);            
             sT = initTileSpriteType(imgFile, TILE_SPRITE_TYPE_PREFIX + spriteTypeID);
-            for (int j = 0; j < 20; j++)
+            tileSpriteTypes.add(sT);
+            for (int j = 0; j < TILES_PER_IMAGE; j++)
             {
                 initTile(sT, TILE_A_TYPE);
             }
-            for (int j = 0; j < 6; j++)
+            for (int j = 0; j < FILLER_TILES_PER_IMAGE; j++)
             {
                 initFillerTile(sT, TILE_A_TYPE);
             }
@@ -156,11 +206,12 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
         {
             String imgFile = imgPath + typeBTiles.get(i);            
             sT = initTileSpriteType(imgFile, TILE_SPRITE_TYPE_PREFIX + spriteTypeID);
-            for (int j = 0; j < 20; j++)
+            tileSpriteTypes.add(sT);
+            for (int j = 0; j < TILES_PER_IMAGE; j++)
             {
                 initTile(sT, TILE_B_TYPE);
             }
-            for (int j = 0; j < 6; j++)
+            for (int j = 0; j < FILLER_TILES_PER_IMAGE; j++)
             {
                 initFillerTile(sT, TILE_B_TYPE);
             }
@@ -173,12 +224,13 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
         for (int i = 0; i < typeCTiles.size(); i++)
         {
             String imgFile = imgPath + typeCTiles.get(i);
-            sT = initTileSpriteType(imgFile, TILE_SPRITE_TYPE_PREFIX + spriteTypeID);            
-            for (int j = 0; j < 20; j++)
+            sT = initTileSpriteType(imgFile, TILE_SPRITE_TYPE_PREFIX + spriteTypeID);
+            tileSpriteTypes.add(sT);            
+            for (int j = 0; j < TILES_PER_IMAGE; j++)
             {
                 initTile(sT, TILE_C_TYPE);
             }
-            for (int j = 0; j < 6; j++)
+            for (int j = 0; j < FILLER_TILES_PER_IMAGE; j++)
             {
                 initFillerTile(sT, TILE_C_TYPE);
             }
@@ -191,12 +243,13 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
         for (int i = 0; i < typeDTiles.size(); i++)
         {
             String imgFile = imgPath + typeDTiles.get(i);
-            sT = initTileSpriteType(imgFile, TILE_SPRITE_TYPE_PREFIX + spriteTypeID);            
-            for (int j = 0; j < 20; j++)
+            sT = initTileSpriteType(imgFile, TILE_SPRITE_TYPE_PREFIX + spriteTypeID);
+            tileSpriteTypes.add(sT);            
+            for (int j = 0; j < TILES_PER_IMAGE; j++)
             {
                 initTile(sT, TILE_D_TYPE);
             }
-            for (int j = 0; j < 6; j++)
+            for (int j = 0; j < FILLER_TILES_PER_IMAGE; j++)
             {
                 initFillerTile(sT, TILE_D_TYPE);
             }
@@ -209,12 +262,13 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
         for (int i = 0; i < typeETiles.size(); i++)
         {
             String imgFile = imgPath + typeETiles.get(i);
-            sT = initTileSpriteType(imgFile, TILE_SPRITE_TYPE_PREFIX + spriteTypeID);            
-            for (int j = 0; j < 20; j++)
+            sT = initTileSpriteType(imgFile, TILE_SPRITE_TYPE_PREFIX + spriteTypeID);
+            tileSpriteTypes.add(sT);            
+            for (int j = 0; j < TILES_PER_IMAGE; j++)
             {
                 initTile(sT, TILE_E_TYPE);
             }        
-            for (int j = 0; j < 6; j++)
+            for (int j = 0; j < FILLER_TILES_PER_IMAGE; j++)
             {
                 initFillerTile(sT, TILE_E_TYPE);
             }
@@ -227,30 +281,37 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
         for (int i = 0; i < typeFTiles.size(); i++)
         {
             String imgFile = imgPath + typeFTiles.get(i);
-            sT = initTileSpriteType(imgFile, TILE_SPRITE_TYPE_PREFIX + spriteTypeID);            
-            for (int j = 0; j < 20; j++)
+            sT = initTileSpriteType(imgFile, TILE_SPRITE_TYPE_PREFIX + spriteTypeID);
+            tileSpriteTypes.add(sT);            
+            for (int j = 0; j < TILES_PER_IMAGE; j++)
             {
                 initTile(sT, TILE_F_TYPE);
             }   
-            for (int j = 0; j < 6; j++)
+            for (int j = 0; j < FILLER_TILES_PER_IMAGE; j++)
             {
                 initFillerTile(sT, TILE_F_TYPE);
             }
             spriteTypeID++;
         }
+        
+        // NOW THAT WE HAVE ALL THE TILE IMAGES, COMPOSITE EVERY TILE IN EVERY
+        // STATE ONTO ITS BLANK TILE ONCE, RATHER THAN EVERY TIME ONE IS RENDERED
+        ((LullabyLandSagaPanel)(miniGame.getCanvas())).setTileAtlas(
+                new LullabyLandSagaTileAtlas(tileSpriteTypes, blankTileImage, blankTileSelectedImage));
     }
     
     
 
     /**
-     * Helper method for loading the tiles, it constructs the prescribed
-     * tile type using the provided sprite type.
+     * This method is used while loading the tiles, it constructs the
+     * prescribed tile type using the provided sprite type, and puts it in
+     * the stack, which the board is dealt from.
      * 
      * @param sT The sprite type to use to represent this tile during rendering.
      * 
      * @param tileType The type of tile. Note that there are 3 broad categories.
      */
-    private void initTile(SpriteType sT, String tileType)
+    public void initTile(SpriteType sT, String tileType)
     {
         // CONSTRUCT THE TILE
         LullabyLandSagaTile newTile = new LullabyLandSagaTile(sT, unassignedTilesX, unassignedTilesY, 0, 0, INVISIBLE_STATE, tileType);
@@ -259,13 +320,22 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
         stackTiles.add(newTile);        
     }
  
-    private void initFillerTile(SpriteType sT, String tileType)
+    /**
+     * This method is used while loading the tiles, it constructs the
+     * prescribed tile type using the provided sprite type, and puts it
+     * with the filler tiles, which fill in the cells left empty.
+     * 
+     * @param sT The sprite type to use to represent this tile during rendering.
+     * 
+     * @param tileType The type of tile.
+     */
+    public void initFillerTile(SpriteType sT, String tileType)
     {
         // CONSTRUCT THE TILE
         LullabyLandSagaTile newTile = new LullabyLandSagaTile(sT, unassignedTilesX, unassignedTilesY, 0, 0, INVISIBLE_STATE, tileType);
         
-        // AND ADD IT TO THE STACK
-        fillerTiles.add(newTile);        
+        // AND ADD IT TO THE FILLER TILES OF ITS TYPE
+        fillerTiles[newTile.getTileTypeId()].add(newTile);        
     }
     
     /**
@@ -279,8 +349,13 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
      * 
      * @param initGridRows The rows in the grid for the level selected.
      */
-    public void initLevelGrid(int[][] initGrid, int initGridColumns, int initGridRows) throws InterruptedException
+    public void initLevelGrid(int[][] initGrid, int initGridColumns, int initGridRows)
     {
+        // THE TILES IN THE OLD GRID GO BACK TO THE STACK RATHER THAN
+        // BEING LOST WITH IT
+        if (tileGrid != null)
+            moveAllTilesToStack();
+        
         // KEEP ALL THE GRID INFO
         levelGrid = initGrid;
         gridColumns = initGridColumns;
@@ -298,17 +373,20 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
                 tileGrid[i][j] = new ArrayList();
             }
         }
+        
+        // THE ENGINE IS MADE FOR THE LEVEL WHEN A GAME OF IT IS STARTED,
+        // AND EACH TIME IT FILLS ITS EMPTY CELLS IT FILLS EACH ONE AT MOST
+        // ONCE, SO THAT'S THE MOST TILES DROPPED AT ONCE
+        engine = null;
+        droppedTiles = new LullabyLandSagaTile[gridColumns * gridRows];
+        droppedCount = 0;
+        addedTiles = new LullabyLandSagaTile[gridColumns * gridRows];
+        addedCount = 0;
+        addedCounts = new int[gridColumns];
+        undoStates.clear();
+        
         // MAKE ALL THE TILES VISIBLE
         enableTiles(true);
-        
-        while(matchOnGrid() != null)
-        {
-            System.out.println("DM288 - GRID RESHUFFLE");
-            LullabyLandSagaMove move = matchOnGrid();
-            int k = isValidMove(tileGrid[move.col1][move.row1].get(0),
-                    tileGrid[move.col2][move.row2].get(0));
-            processMove(move, k);
-        }
     }
     
     /**
@@ -334,6 +412,7 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
         sT.addState(ROW_CLEAR_STATE, img);
         sT.addState(COL_CLEAR_STATE, img);
         sT.addState(WRAPPED_STATE,img);
+        sT.addState(COLOR_BOMB_STATE,img);
         sT.addState(SPECIAL_SELECTED_STATE,img);
         //sT.addState(CLOUD_STATE, img);
         return sT;
@@ -350,6 +429,17 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
     { 
         return currentLevel; 
     }
+    
+    /**
+     * Accessor method for getting the currently loaded level, along with
+     * the rules it is played by.
+     * 
+     * @return The level being played.
+     */
+    public LullabyLandSagaLevel getLevel()
+    {
+        return level;
+    }
 
     public int getLatestLevel()
     {
@@ -388,6 +478,143 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
         return tileGrid; 
     }
     
+    /**
+     * Accessor method for getting the rules engine the game is played on.
+     * Note that it is only meant for reading, swaps are played through
+     * selectTile or playMove, so that the tiles follow them.
+     * 
+     * @return The engine, or null if no game of the level has been started.
+     */
+    public LullabyLandSagaRulesEngine getRulesEngine()
+    {
+        return engine;
+    }
+    
+    /**
+     * Accessor method for getting the board, which has the type and special
+     * state of the tile used for matching in each cell of the tile grid.
+     * 
+     * @return The board of the game being played, or null if there is none.
+     */
+    public LullabyLandSagaBoard getBoard()
+    {
+        return (engine == null) ? null : engine.getBoard();
+    }
+    
+    /**
+     * Accessor method for getting the index of the swaps the player
+     * can make on the board.
+     * 
+     * @return The move index of the game being played, or null if there
+     * is none.
+     */
+    public LullabyLandSagaMoveIndex getMoveIndex()
+    {
+        return (engine == null) ? null : engine.getMoveIndex();
+    }
+    
+    /**
+     * Accessor method for getting the number of swaps the player has left.
+     * 
+     * @return The turns left in the level being played.
+     */
+    public int getTurns()
+    {
+        return (engine == null) ? 0 : engine.getTurns();
+    }
+    
+    /**
+     * Accessor method for getting the score of the game being played.
+     * 
+     * @return The score so far.
+     */
+    public int getScore()
+    {
+        return (engine == null) ? 0 : engine.getScore();
+    }
+    
+    /**
+     * This method makes a copy of the rules engine the game is played on,
+     * which can then be played on without changing the game, like to search
+     * for a hint on another thread.
+     * 
+     * @param seed The seed for the copy's random choices.
+     * 
+     * @return The copy, or null if no game of the level has been started.
+     */
+    public LullabyLandSagaRulesEngine createRulesEngine(long seed)
+    {
+        return (engine == null) ? null : new LullabyLandSagaRulesEngine(engine, seed);
+    }
+    
+    /**
+     * Accessor method for getting the seed the game being played was
+     * started with, which can be passed to setRandomSeed to play it again.
+     * 
+     * @return The seed of the current game.
+     */
+    public long getGameSeed()
+    {
+        return gameSeed;
+    }
+    
+    /**
+     * Accessor method for getting the seed the board of the next game
+     * started will be dealt with, should it be started with the seed it
+     * has now, so that it can be dealt ahead of time.
+     * 
+     * @return The seed the next game's board is dealt with.
+     */
+    public long getNextDealSeed()
+    {
+        // A NEW GAME SEEDS THE GENERATOR, TAKES THE SEED OF THE GAME
+        // AFTER IT, AND THEN THE SEED OF ITS ENGINE, WHICH DEALS ITS
+        // FIRST BOARD WITH A SEED OF ITS OWN
+        long engineSeed = LullabyLandSagaRandom.nthLong(nextGameSeed, 1);
+        return LullabyLandSagaRulesEngine.getFirstDealSeed(engineSeed);
+    }
+    
+    /**
+     * Accessor method for getting the number of tiles of each type the
+     * board of the next game started will be dealt from, which are all
+     * those in the stack and the grid now, so that it can be dealt ahead
+     * of time.
+     * 
+     * @return The number of tiles of each type, indexed by tile type id,
+     * including the types the next level may not be played with.
+     */
+    public int[] getNextDealSupply()
+    {
+        int[] supply = new int[TILE_TYPES.length];
+        for (LullabyLandSagaTile tile : stackTiles)
+        {
+            supply[tile.getTileTypeId()]++;
+        }
+        for (int i = 0; i < gridColumns; i++)
+        {
+            for (int j = 0; j < gridRows; j++)
+            {
+                for (LullabyLandSagaTile tile : tileGrid[i][j])
+                {
+                    supply[tile.getTileTypeId()]++;
+                }
+            }
+        }
+        return supply;
+    }
+    
+    /**
+     * Mutator method for seeding the random number generator for the next
+     * game started. Given the same seed and the same swaps, the game plays
+     * out the same way, and so do the games started after it.
+     * 
+     * @param seed The seed to use.
+     */
+    public void setRandomSeed(long seed)
+    {
+        nextGameSeed = seed;
+    }
+    
     /**
      * Accessor method for getting the stack tiles.
      * 
@@ -405,9 +632,20 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
      * @return The moving tiles, which are the tiles currently being
      * animated as they move around the game. 
      */
-    public Iterator<LullabyLandSagaTile> getMovingTiles()
+    public LullabyLandSagaAnimationSet getMovingTiles()
+    {
+        return movingTiles;
+    }
+    
+    /**
+     * Accessor method for getting how far the game is between its last
+     * step and its next one, for drawing the moving tiles in between.
+     * 
+     * @return A fraction from 0 up to but not including 1.
+     */
+    public float getInterpolation()
     {
-        return movingTiles.iterator();
+        return interpolation;
     }
     
     public int getStackTileCount()
@@ -416,70 +654,55 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
     }
     
     /**
-     * Mutator method for setting the currently loaded level.
+     * Accessor method for getting the view version, which changes each time
+     * the board, the state of a tile at rest or the screen does.
+     * 
+     * @return The view version, which is only ever compared to an earlier
+     * one.
+     */
+    public long getViewVersion()
+    {
+        return viewVersion;
+    }
+    
+    /**
+     * Mutator method for letting the view know that what it shows has
+     * changed, which must be done each time the screen changes, and is done
+     * here each time the board or the state of a tile at rest does.
+     */
+    public void markViewChanged()
+    {
+        viewVersion++;
+    }
+    
+    /**
+     * Mutator method for setting the currently loaded level, whose grid
+     * is the one last given to initLevelGrid.
      * 
      * @param initCurrentLevel The level name currently being used
      * to play the game.
      */
     public void setCurrentLevel(String initCurrentLevel)
     {
-        currentLevel = initCurrentLevel;
-        if(currentLevel.charAt(24) == '1')
-        {
-            if(currentLevel.charAt(25) != '0')
-            {
-                turns = 6;
-                scoreObjective = 6800;
-            } else {
-                turns = 40;
-                scoreObjective = 1339540;
-                clouds = 39;
-            }
-        }
-        if(currentLevel.charAt(24) == '2')
-        {
-            turns = 15;
-            scoreObjective = 9880;
-        }
-        if(currentLevel.charAt(24) == '3')
-        {
-            turns = 18;
-            scoreObjective = 15840;
-        }
-        if(currentLevel.charAt(24) == '4')
-        {
-            turns = 15;
-            scoreObjective = 15180;
-        }
-        if(currentLevel.charAt(24) == '5')
-        {
-            turns = 20;
-            scoreObjective = 34380;
-        }
-        if(currentLevel.charAt(24) == '6')
-        {
-            turns = 16;
-            scoreObjective = 44660;
-            clouds = 12;
-        }
-        if(currentLevel.charAt(24) == '7')
-        {
-            turns = 50;
-            scoreObjective = 173360;
-            clouds = 52;
-        }
-        if(currentLevel.charAt(24) == '8')
-        {
-            turns = 20;
-            scoreObjective = 52520;
-            clouds = 17;
-        }
-        if(currentLevel.charAt(24) == '9')
-        {
-            turns = 25;
-            scoreObjective = 66000;
-            clouds = 22;
-        }
+        setLevel(new LullabyLandSagaLevel(initCurrentLevel, levelGrid, gridColumns, gridRows));
+    }
+    
+    /**
+     * Mutator method for setting the currently loaded level, along with
+     * the rules it is played by, as read from its file. Its grid must be
+     * the one last given to initLevelGrid.
+     * 
+     * @param initLevel The level currently being used to play the game.
+     */
+    public void setLevel(LullabyLandSagaLevel initLevel)
+    {
+        level = initLevel;
+        currentLevel = level.getName();
+        undoStates.clear();
+        
+        // EACH LEVEL HAS ITS OWN RULES, SO THE NEXT GAME STARTED GETS AN
+        // ENGINE FOR THEM
+        engine = null;
     }
 
     /**
@@ -584,9 +807,9 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
     public String gameTimeToText()
     {
         // CALCULATE GAME TIME USING HOURS : MINUTES : SECONDS
-        if ((startTime == null) || (endTime == null))
+        if (!timerStarted)
             return "";
-        long timeInMillis = endTime.getTimeInMillis() - startTime.getTimeInMillis();
+        long timeInMillis = (endTime - startTime) / 1000000L;
         return timeToText(timeInMillis);
     }
     
@@ -596,8 +819,8 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
         // -moveAllTilesToStack
         // -moveTiles
         // -playWinAnimation
-        // -processMove
         // -selectTile
+        // -playMove
         // -undoLastMove
 
     /**
@@ -617,15 +840,16 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
         {
             // AND SET THEM PROPERLY
             if (enable)
-                tile.setState(VISIBLE_STATE);
+                tile.setTileState(LullabyLandSagaTileState.VISIBLE);
             else
-                tile.setState(INVISIBLE_STATE);
+                tile.setTileState(LullabyLandSagaTileState.INVISIBLE);
         }        
     }
 
     /**
      * This method moves all the tiles not currently in the stack 
-     * to the stack.
+     * to the stack. Note that the engine's game is left as it is, so
+     * the tiles go back in the grid when the board is next dealt, see reset.
      */
     public void moveAllTilesToStack()
     {
@@ -636,7 +860,8 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
                 ArrayList<LullabyLandSagaTile> cellStack = tileGrid[i][j];
                 moveTiles(cellStack, stackTiles);
             }
-        }        
+        }
+        markViewChanged();
     }
 
     /**
@@ -680,7 +905,9 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
         winPath.add(getGameWidth() - WIN_PATH_COORD - 320); winPath.add(getGameHeight()-WIN_PATH_COORD-100);    //7 - lower right
         winPath.add(getGameWidth() - WIN_PATH_COORD - 260); winPath.add(getGameHeight()/2);                     //8 - right
         
-        // START THE ANIMATION FOR ALL THE TILES
+        // START THE ANIMATION FOR ALL THE TILES, WHICH GET THEIR OWN
+        // RANDOM NUMBERS SO AS NOT TO USE UP THE GAME'S
+        LullabyLandSagaRandom winRandom = random.split();
         for (int i = 0; i < stackTiles.size(); i++)
         {
             // GET EACH TILE
@@ -690,1571 +917,486 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
             movingTiles.add(tile);       
             
             // AND GET IT ON A PATH
-            tile.initWinPath(winPath);
+            tile.initWinPath(winPath, winRandom);
         }
     }    
 
     /**
-     * This method updates all the necessary state information
-     * to process the move argument.
+     * This method looks for a swap of two neighboring tiles that would
+     * make a match.
      * 
-     * @param move The move to make. Note that a move specifies
-     * the cell locations for a isNeighbor.
+     * @return A move for such a swap, or null if the player has no moves.
+     * Note that the same move is reused each time, so it is only good until
+     * the next call.
      */
-    public void processMove(LullabyLandSagaMove move, int value) throws InterruptedException
+    public LullabyLandSagaMove moveOnGrid()
     {
-        ArrayList<LullabyLandSagaTile> stack;
-        LullabyLandSagaTile tile;
-        boolean special = false;
-        
-        // 4 IN A ROW, 50/50 CHANCE OF ROW OR COLUMN WIPE dont remove
-        if(value>99 || value <-99)
+        if (engine == null)
+            return null;
+        return engine.getMoveIndex().getFirstMove(firstMove);
+    }
+    
+    /**
+     * Helper method for getting the state a tile at rest with the special
+     * state argument, as it's kept in the board, is shown in.
+     */
+    private LullabyLandSagaTileState getSpecialState(byte special)
+    {
+        if (special == LullabyLandSagaBoard.ROW_CLEAR_SPECIAL)
+            return LullabyLandSagaTileState.ROW_CLEAR;
+        else if (special == LullabyLandSagaBoard.COLUMN_CLEAR_SPECIAL)
+            return LullabyLandSagaTileState.COL_CLEAR;
+        else if (special == LullabyLandSagaBoard.WRAPPED_SPECIAL)
+            return LullabyLandSagaTileState.WRAPPED;
+        else if (special == LullabyLandSagaBoard.COLOR_BOMB_SPECIAL)
+            return LullabyLandSagaTileState.COLOR_BOMB;
+        else
+            return LullabyLandSagaTileState.VISIBLE;
+    }
+    
+    /**
+     * Helper method that puts the tile argument on top of the col, row
+     * cell's stack in the state argument, and gets it moving there at the
+     * speed argument.
+     */
+    private void placeTile(LullabyLandSagaTile tile, int col, int row,
+                            LullabyLandSagaTileState tileState, int speed)
+    {
+        tile.setTileState(tileState);
+        tile.setEnabled(tileState != LullabyLandSagaTileState.CLOUD);
+        tile.setGridCell(col, row);
+        tileGrid[col][row].add(tile);
+        tile.setTarget(calculateTileXInGrid(col, 0), calculateTileYInGrid(row, 0));
+        tile.startMovingToTarget(speed);
+        movingTiles.add(tile);
+    }
+    
+    /**
+     * Helper method that takes a tile of the type argument out of those
+     * that can be dealt.
+     */
+    private LullabyLandSagaTile takeDealtTile(int type)
+    {
+        ArrayList<LullabyLandSagaTile> tiles = dealtTiles[type];
+        return tiles.remove(tiles.size()-1);
+    }
+    
+    public boolean areTilesMoving()
+    {
+        return !movingTiles.isEmpty();
+    }
+    
+    /**
+     * This method attempts to select the selectTile argument. Note that
+     * this may be the first or second selected tile. If a tile is already
+     * selected, it will attempt to process a isNeighbor/move. Only the
+     * tiles used for matching, at the bottom of their cells, are selected.
+     * 
+     * @param selectTile The tile to select.
+     */
+    public void selectTile(LullabyLandSagaTile selectTile) throws InterruptedException
+    {
+        if(areTilesMoving() || !inProgress() || (engine == null) || engine.isOver())
         {
-            int colSpec;
-            int rowSpec;
-            if(value<0)
-            {
-                colSpec = move.col1;
-                rowSpec = move.row1;
-            } else {
-                colSpec = move.col2;
-                rowSpec = move.row2;
-            }
-            double i;
-            i = Math.random();
-            if(i>=.5)
-            {
-                tileGrid[colSpec][rowSpec].get(0).setState(ROW_CLEAR_STATE);
-            } else {
-                tileGrid[colSpec][rowSpec].get(0).setState(COL_CLEAR_STATE);
-            }
-            special = true;
+            return;
         }
         
-        // L OR T SHAPED FORMATION GETS A "WRAPPED STATE" dont remove
-        else if(value > 9 || value < -9)
-        {
-            tileGrid[move.col1][move.row1].get(0).setState(WRAPPED_STATE);
-            special = true;
-        }
+        markViewChanged();
         
-        else if(value == 7 || value == 8)
+        // IF IT'S ALREADY THE SELECTED TILE, DESELECT IT
+        if (selectTile == selectedTile)
         {
-            System.out.println("5 COMBO");
-                    special = true;
+            clearAllIncorrect();
+            deselectTile();
+            return;
         }
-        
-        if(!special)   
+
+        // NOT SELECTED SO TRY TO, AND IF IT ISN'T NEXT TO THE ONE ALREADY
+        // SELECTED, SELECT IT INSTEAD
+        if (selectedTile == null || !selectTile.isNeighbor(selectedTile))
         {
-            if(value < 0)
-            {
-                value = value/-1;
-                stack = tileGrid[move.col1][move.row1];
-            } else {
-                stack = tileGrid[move.col2][move.row2];
-            }
-                    
-                tile = stack.remove(stack.size()-1);
-                tile.setState(INVISIBLE_STATE);        
-                fillerTiles.add(tile);
-        } else {
-            if(value < 0)
+            deselectTile();
+            selectedTile = selectTile;
+            if(selectedTile.getTileState() == LullabyLandSagaTileState.VISIBLE)
             {
-                value = value/-1;
-                stack = tileGrid[move.col1][move.row1];
+                selectedTile.setTileState(LullabyLandSagaTileState.SELECTED);
             } else {
-                stack = tileGrid[move.col2][move.row2];
+                selectedTile.setTileState(LullabyLandSagaTileState.SPECIAL_SELECTED);
             }
-                    
-                tile = stack.get(stack.size()-1);
+            return;
         }
         
-        int col = tile.getGridColumn();
-        colsToAdd.add(col);
-        int row = tile.getGridRow();
-        switch(value)
+        // OTHERWISE SWAP THEM, KEEPING THE GAME AS IT IS, SO THE SWAP CAN
+        // BE UNDONE. THE ENGINE MOVES THE TILES AS IT PLAYS IT, AND A
+        // SWAP THAT MAKES NO MATCH IS PUT BACK, COSTING NOTHING
+        int col1 = selectedTile.getGridColumn();
+        int row1 = selectedTile.getGridRow();
+        int col2 = selectTile.getGridColumn();
+        int row2 = selectTile.getGridRow();
+        deselectTile();
+        LullabyLandSagaUndoState undoState = makeUndoState();
+        if (engine.playSwap(col1, row1, col2, row2))
         {
-            case 1:
-                removeTile(col+1, row);
-                removeTile(col+2, row);
-                break;
-            case 100:
-                removeTile(col+1, row);
-                removeTile(col+2, row);
-                removeTile(col-1, row);
-                break;
-            case 10:
-                removeTile(col+1, row);
-                removeTile(col+2, row);
-                removeTile(col+2, row+1);
-                removeTile(col+2, row-1);
-                break;
-            case 11:
-                removeTile(col+1, row);
-                removeTile(col+2, row);
-                removeTile(col+2, row-1);
-                removeTile(col+2, row-2);
-                break;
-            case 12:
-                removeTile(col+1, row);
-                removeTile(col+2, row);
-                removeTile(col+2, row+1);
-                removeTile(col+2, row+2);
-                break;
-            case 13:
-                removeTile(col+1, row);
-                removeTile(col+2, row);
-                removeTile(col+1, row-1);
-                removeTile(col+1, row-2);
-                break;
-            case 14:
-                removeTile(col+1, row);
-                removeTile(col+2, row);
-                removeTile(col+1, row+1);
-                removeTile(col+1, row+2);
-                break;
-            case 15:
-                removeTile(col+1, row);
-                removeTile(col+2, row);
-                removeTile(col, row-1);
-                removeTile(col, row-2);
-                break;
-            case 16:
-                removeTile(col+1, row);
-                removeTile(col+2, row);
-                removeTile(col, row+1);
-                removeTile(col, row+2);
-                break;
-            case 17:
-                removeTile(col+1, row);
-                removeTile(col+2, row);
-                removeTile(col, row+1);
-                removeTile(col, row-1);
-                break;
-            case 2:
-                removeTile(col, row+1);
-                removeTile(col, row+2);
-                break;
-            case 200:
-                removeTile(col, row+1);
-                removeTile(col, row+2);
-                removeTile(col, row-1);
-                break;
-            case 20:
-                removeTile(col, row+1);
-                removeTile(col, row+2);
-                removeTile(col+1, row+2);
-                removeTile(col-1, row+2);
-                break;
-            case 21:
-                removeTile(col, row+1);
-                removeTile(col, row+2);
-                removeTile(col+1, row+2);
-                removeTile(col+2, row+2);
-                break;
-            case 22:
-                removeTile(col, row+1);
-                removeTile(col, row+2);
-                removeTile(col-1, row+2);
-                removeTile(col-2, row+2);
-                break;
-            case 23:
-                removeTile(col, row+1);
-                removeTile(col, row+2);
-                removeTile(col+1, row+1);
-                removeTile(col+2, row+1);
-                break;
-            case 24:
-                removeTile(col, row+1);
-                removeTile(col, row+2);
-                removeTile(col-1, row+1);
-                removeTile(col-2, row+1);
-                break;
-            case 25:
-                removeTile(col, row+1);
-                removeTile(col, row+2);
-                removeTile(col+1, row);
-                removeTile(col+2, row);
-                break;
-            case 26:
-                removeTile(col, row+1);
-                removeTile(col, row+2);
-                removeTile(col-1, row);
-                removeTile(col-2, row);
-                break;
-            case 27:
-                removeTile(col, row+1);
-                removeTile(col, row+2);
-                removeTile(col+1, row);
-                removeTile(col-1, row);
-                break;
-            case 3:
-                removeTile(col-1, row);
-                removeTile(col-2, row); 
-                break;
-            case 300:
-                removeTile(col-1, row);
-                removeTile(col-2, row);
-                removeTile(col+1, row);
-                break;
-            case 30:
-                removeTile(col-1, row);
-                removeTile(col-2, row);
-                removeTile(col-2, row-1);
-                removeTile(col-2, row+1);
-                break;
-            case 31:
-                removeTile(col-1, row);
-                removeTile(col-2, row);
-                removeTile(col-2, row-2);
-                removeTile(col-2, row-1);
-                break;
-            case 32:
-                removeTile(col-1, row);
-                removeTile(col-2, row);
-                removeTile(col-2, row+1);
-                removeTile(col-2, row+2);
-                break;
-            case 33:
-                removeTile(col-1, row);
-                removeTile(col-2, row);
-                removeTile(col-1, row-1);
-                removeTile(col-1, row-2);
-                break;
-            case 34:
-                removeTile(col-1, row);
-                removeTile(col-2, row);
-                removeTile(col-1, row+1);
-                removeTile(col-1, row+2);
-                break;
-            case 35:
-                removeTile(col-1, row);
-                removeTile(col-2, row);
-                removeTile(col, row-1);
-                removeTile(col, row-2);
-                break;
-            case 37:
-                removeTile(col-1, row);
-                removeTile(col-2, row);
-                removeTile(col, row+1);
-                removeTile(col, row-1);
-                break;
-            case 4:
-                removeTile(col, row-1);
-                removeTile(col, row-2);
-                break;
-            case 400:
-                removeTile(col, row-1);
-                removeTile(col, row-2);
-                removeTile(col, row+1);
-                break;
-            case 40:
-                removeTile(col, row-1);
-                removeTile(col, row-2);
-                removeTile(col-1, row-2);
-                removeTile(col+1, row-2);
-                break;
-            case 41:
-                removeTile(col, row-1);
-                removeTile(col, row-2);
-                removeTile(col+1, row-2);
-                removeTile(col+2, row-2);
-                break;
-            case 42:
-                removeTile(col, row-1);
-                removeTile(col, row-2);
-                removeTile(col-1, row-2);
-                removeTile(col-2, row-2);
-                break;
-            case 43:
-                removeTile(col, row-1);
-                removeTile(col, row-2);
-                removeTile(col+1, row-1);
-                removeTile(col+2, row-1);
-                break;
-            case 44:
-                removeTile(col, row-1);
-                removeTile(col, row-2);
-                removeTile(col-1, row-1);
-                removeTile(col-2, row-1);
-                break;
-            case 47:
-                removeTile(col, row-1);
-                removeTile(col, row-2);
-                removeTile(col-1, row);
-                removeTile(col+1, row);
-                break;
-            case 5:
-                removeTile(col-1, row);
-                removeTile(col+1, row);
-                break;
-            case 50:
-                removeTile(col-1, row);
-                removeTile(col+1, row);
-                removeTile(col-1, row-1);
-                removeTile(col-1, row+1);
-                break;
-            case 51:
-                removeTile(col-1, row);
-                removeTile(col+1, row);
-                removeTile(col-1, row-1);
-                removeTile(col-1, row-2);
-                break;
-            case 52:
-                removeTile(col-1, row);
-                removeTile(col+1, row);
-                removeTile(col-1, row+1);
-                removeTile(col-1, row+2);
-                break;
-            case 53:
-                removeTile(col-1, row);
-                removeTile(col+1, row);
-                removeTile(col+1, row-1);
-                removeTile(col+1, row-2);
-                break;
-            case 54:
-                removeTile(col-1, row);
-                removeTile(col+1, row);
-                removeTile(col+1, row+1);
-                removeTile(col+1, row+2);
-                break;
-            case 55:
-                removeTile(col-1, row);
-                removeTile(col+1, row);
-                removeTile(col+1, row-1);
-                removeTile(col+1, row+1);
-                break;
-            case 6:
-                removeTile(col, row+1);
-                removeTile(col, row-1);
-                break;
-            case 60:
-                removeTile(col, row+1);
-                removeTile(col, row-1);
-                removeTile(col+1, row+1);
-                removeTile(col-1, row+1);
-                break;
-            case 61:
-                removeTile(col, row+1);
-                removeTile(col, row-1);
-                removeTile(col+1, row+1);
-                removeTile(col+2, row+1);
-                break;
-            case 62:
-                removeTile(col, row+1);
-                removeTile(col, row-1);
-                removeTile(col-1, row+1);
-                removeTile(col-2, row+1);
-                break;
-            case 63:
-                removeTile(col, row+1);
-                removeTile(col, row-1);
-                removeTile(col+1, row-1);
-                removeTile(col+2, row-1);
-                break;
-            case 64:
-                removeTile(col, row+1);
-                removeTile(col, row-1);
-                removeTile(col-1, row-1);
-                removeTile(col-2, row-1);
-                break;
-            case 65:
-                removeTile(col, row+1);
-                removeTile(col, row-1);
-                removeTile(col+1, row-1);
-                removeTile(col-1, row-1);
-                break;
-            case 7:
-                removeTile(col, row-2);
-                removeTile(col, row-1);
-                removeTile(col, row+1);
-                removeTile(col, row+2);
-                break;
-            case 8:
-                removeTile(col-2, row);
-                removeTile(col-1, row);
-                removeTile(col+1, row);
-                removeTile(col+2, row);
-                break;
-               
+            undoStates.push(undoState);
+            if (undoStates.size() > MAX_UNDO_STATES)
+                undoStates.removeLast();
         }
         
-        moveTilesDown();
-        
-        // AND MAKE SURE NEW TILES CAN BE SELECTED
-        selectedTile = null;   
-
+        // THE GAME ENDS WHEN THE TURNS RUN OUT, OR WHEN A BOARD IS DEALT
+        // WITH NO SWAPS, SINCE DEALING AGAIN WON'T GIVE IT ONE
+        if (engine.isOver())
+        {
+            endGameOnObjectives();
+        }
+    }
+    
+    /**
+     * Helper method that lets go of the selected tile, if there is one,
+     * putting it back in the state it has at rest.
+     */
+    private void deselectTile()
+    {
+        if (selectedTile == null)
+            return;
         
+        byte special = engine.getBoard().getSpecial(selectedTile.getGridColumn(), selectedTile.getGridRow());
+        selectedTile.setTileState(getSpecialState(special));
+        selectedTile = null;
     }
     
-    public void removeTile(int col, int row)
+    /**
+     * Helper method that ends the game as a win if the score objective has
+     * been reached and there are no clouds left, and as a loss otherwise.
+     */
+    private void endGameOnObjectives()
     {
-       try {
-        String ts = tileGrid[col][row].get(0).getState();
-        score += (60*scoreMultiplier);
-        System.out.println(score);
-        ArrayList<LullabyLandSagaTile> stack = tileGrid[col][row];
-        LullabyLandSagaTile tile = stack.remove(stack.size()-1);
-        tile.setState(INVISIBLE_STATE);
-        fillerTiles.add(tile);
-        colsToAdd.add(col);
-       
-        if(!processSpecial)
+        if(engine.isWon())
         {
-        // REMOVE A SPECIAL ROW-CLEAR INSTRUMENT
-        try{
-            if(ts.equals(COL_CLEAR_STATE)
-                    || (stateHolder.equals(COL_CLEAR_STATE)) )
-            {
-                processSpecial = true;
-                System.out.println("COLUMN CLEAR");
-                for(int i=0; i<gridRows; i++)
-                {
-                    if(i!=row)
-                    {
-                        try {
-                            removeTile(col, i);
-                        } catch(ArrayIndexOutOfBoundsException aiobe){}
-                    }
-                }
-                processSpecial = false;
-            }
-        }catch(IndexOutOfBoundsException iobe){}
+            endGameAsWin();
+        } else {
+            endGameAsLoss();
+        }
+    }
+    
+    /**
+     * This method plays the move argument for the player, just as if they
+     * had selected the two tiles to swap.
+     * 
+     * @param move The swap to make.
+     */
+    public void playMove(LullabyLandSagaMove move) throws InterruptedException
+    {
+        // FIRST LET GO OF ANYTHING THE PLAYER HAS SELECTED
+        if (selectedTile != null)
+            selectTile(selectedTile);
         
-        // REMOVE A SPECIAL COLUMN-CLEAR INSTRUMENT
-        try {
-            
-            if(ts.equals(ROW_CLEAR_STATE)
-                    || (stateHolder.equals(ROW_CLEAR_STATE)) )
+        selectTile(tileGrid[move.col1][move.row1].get(0));
+        selectTile(tileGrid[move.col2][move.row2].get(0));
+    }
+    
+    public void clearAllIncorrect() {
+        for (int i = 0; i < gridColumns; i++)
+        {
+            for (int j = 0; j < gridRows; j++)
             {
-                        
-                processSpecial = true;
-                System.out.println("ROW CLEAR");
-                for (int i = 0; i < gridColumns; i++) {
-                    try {
-                        if(i != col)
-                        {
-                            removeTile(i, row);
-                        }
-                    } catch(ArrayIndexOutOfBoundsException aiobe){}
+                ArrayList<LullabyLandSagaTile> stackSearch = tileGrid[i][j];
+                if (stackSearch.size() > 0)
+                {
+                    // GET THE FIRST TILE
+                    LullabyLandSagaTile searchTile = stackSearch.get(stackSearch.size()-1);
+                    //if(searchTile.getState().equals(INCORRECTLY_SELECTED_STATE))
+                    //    searchTile.setState(VISIBLE_STATE);
                 }
-                processSpecial = false;
             }
-        }catch(IndexOutOfBoundsException iobe){}
         }
-       }catch(IndexOutOfBoundsException iobe){}
-        // REMOVE A WRAPPED INSTRUMENT WITH BURST
-       
-       
-        
     }
     
-    public void moveTilesDown() throws InterruptedException
+    /**
+     * This method undoes the previous swap, along with everything it set
+     * off, putting the engine's game back to where it was before it, along
+     * with every tile. Swaps can be undone one after the other, up to
+     * MAX_UNDO_STATES of them. Note that nothing is undone while tiles are
+     * still moving.
+     */    
+    public void undoLastMove()
     {
-        boolean added = false;
-        float yAdjust;
-        boolean bottom = false;
-        for(int col : colsToAdd)
+        if (inProgress() && !undoStates.isEmpty() && movingTiles.isEmpty())
         {
-            yAdjust = calculateTileYInGrid(0,0);
-            int i;
-            if(currentLevel.equals("./data/./lullaland/Level3.zom"))
+            LullabyLandSagaUndoState state = undoStates.pop();
+            selectedTile = null;
+            markViewChanged();
+            
+            // PUT THE GAME BACK
+            engine.restoreSnapshot(state.snapshot);
+            LullabyLandSagaBoard board = engine.getBoard();
+            
+            // AND THE TILES BACK IN THE GRID, MOVING THOSE THAT AREN'T
+            // ALREADY WHERE THEY GO. THE TILE USED FOR MATCHING IS SHOWN
+            // AS THE BOARD HAS IT AND THE REST ARE CLOUDS
+            for (int i = 0; i < gridColumns; i++)
             {
-                if(col>0&&col<gridColumns-1)
+                for (int j = 0; j < gridRows; j++)
                 {
-                    i = gridRows-1;
-                } else{
-                    i = gridRows-2;
-                }
-            } else {
-                i = gridRows - 1;
-            }
-            for( ;i>=0; i--)
-            {
-                if(tileGrid[col][i].isEmpty())
-                {
-                    
-                    for(int j=i; j>=0; j--)
+                    int cell = (i * gridRows) + j;
+                    ArrayList<LullabyLandSagaTile> stack = tileGrid[i][j];
+                    stack.clear();
+                    for (int k = 0; k < state.cellTiles[cell].length; k++)
                     {
-                        if(!tileGrid[col][j].isEmpty())
+                        LullabyLandSagaTile tile = state.cellTiles[cell][k];
+                        if ((k == 0) && !board.isEmpty(i, j))
+                            tile.setTileState(getSpecialState(board.getSpecial(i, j)));
+                        else
+                            tile.setTileState(LullabyLandSagaTileState.CLOUD);
+                        tile.setEnabled(tile.getTileState() != LullabyLandSagaTileState.CLOUD);
+                        tile.setGridCell(i, j);
+                        stack.add(tile);
+                        
+                        float x = calculateTileXInGrid(i, k);
+                        float y = calculateTileYInGrid(j, k);
+                        if ((tile.getX() != x) || (tile.getY() != y))
                         {
-                            // REMOVE THE MOVE TILES FROM THE GRID
-                            ArrayList<LullabyLandSagaTile> stack = tileGrid[col][j];      
-                            LullabyLandSagaTile tile = stack.remove(stack.size()-1);
-
-                            yAdjust = tile.getY();
-                            bottom=true;
-                            
-                            // MAKE SURE BOTH ARE UNSELECTED
-                            if(tile.getState().equals(SELECTED_STATE) )
-                            {
-                                tile.setState(VISIBLE_STATE);
-                            } else if(tile.getState().equals(SPECIAL_SELECTED_STATE))
-                            {
-                                tile.setState(stateHolder);
-                            }
-                            float x = calculateTileXInGrid(col, 0);
-                            float y = calculateTileYInGrid(i, 0);
                             tile.setTarget(x, y);
-
-                            // SEND THEM TO THE STACK
-                            tile.startMovingToTarget(4);
-
-                            // MAKE SURE THEY MOVE
+                            tile.startMovingToTarget(MAX_TILE_VELOCITY);
                             movingTiles.add(tile);
-
-                            selectedTile = null;
-
-                            tileGrid[col][j].remove(tile);
-                            tile.setGridCell(col, i);
-                            tileGrid[col][i].add(tile);
-                            added = true;
-                            break;
                         }
                     }
-                    if(added)
-                    {
-                        added = false;
-                    } else {
-                        // REMOVE THE MOVE TILES FROM THE GRID
-                            ArrayList<LullabyLandSagaTile> stack = fillerTiles;
-                            Collections.shuffle(stack);
-                            LullabyLandSagaTile tile = stack.remove(stack.size()-1);
-
-                            // MAKE SURE BOTH ARE UNSELECTED
-                            if(tile.getState().equals(SELECTED_STATE)
-                                    || tile.getState().equals(INVISIBLE_STATE))
-                            {
-                                tile.setState(VISIBLE_STATE);
-                            } else if(tile.getState().equals(SPECIAL_SELECTED_STATE))
-                            {
-                                tile.setState(stateHolder);
-                            }
-                            float x = calculateTileXInGrid(col, 0);
-                            float y = calculateTileYInGrid(i, 0);
-                            
-                            if(bottom)
-                            {
-                                yAdjust = y-60;
-                            } else {
-                                yAdjust -= 60;
-                            }
-                            
-                            tile.setX(x);
-                            tile.setY(yAdjust);
-                            tile.setTarget(x, y);
-
-                            // SEND THEM TO THE STACK
-                            tile.startMovingToTarget(4);
-
-                            // MAKE SURE THEY MOVE
-                            movingTiles.add(tile);
-
-                            selectedTile = null;
-
-                            fillerTiles.remove(tile);
-                            tile.setGridCell(col, i);
-                            tileGrid[col][i].add(tile);
-                            break;
-                    }
-                    bottom = false;
                 }
             }
-        }
-        colsToAdd = new ArrayList<>();
-        
-        if(moveOnGrid()== null)
-        {
-            System.out.println("DM1156 - NO POSSIBLE MOVES, GRID RESHUFFLE");
-            for(int i=0; i<10; i++)
+            
+            // AND THE REST BACK OUT OF PLAY
+            for (int i = 0; i < fillerTiles.length; i++)
             {
-                reset(this.miniGame);
-                updateAll(this.miniGame);
+                restoreTiles(fillerTiles[i], state.fillerTiles[i]);
             }
-        }
-        
-        updateAll(this.miniGame);
-        
-        
-        while(matchOnGrid()!= null)
-        {
-            scoreMultiplier++;
-            System.out.println("DM1161 - COMPOUND MOVE");
-            LullabyLandSagaMove move = matchOnGrid();
-            int k = isValidMove(tileGrid[move.col1][move.row1].get(0),
-                    tileGrid[move.col2][move.row2].get(0));
-            processMove(move, k);
-            updateAll(this.miniGame);
+            restoreTiles(stackTiles, state.stackTiles);
+            
+            // PLAY THE AUDIO CUE
+            miniGame.getAudio().play(LullabyLandSagaPropertyType.UNDO_AUDIO_CUE.toString(), false);   
         }
     }
     
-    public LullabyLandSagaMove moveOnGrid()
+    /**
+     * Helper method that makes what's needed to undo the swap about to be
+     * made, meaning a snapshot of the engine's game and where every tile is.
+     * 
+     * @return The undo state, for pushing onto undoStates once the swap
+     * has been played.
+     */
+    private LullabyLandSagaUndoState makeUndoState()
     {
-        LullabyLandSagaMove move = new LullabyLandSagaMove();
-        for(int i=0; i<gridColumns-1; i++)
+        LullabyLandSagaUndoState state = new LullabyLandSagaUndoState();
+        state.snapshot = engine.takeSnapshot();
+        state.cellTiles = new LullabyLandSagaTile[gridColumns * gridRows][];
+        for (int i = 0; i < gridColumns; i++)
         {
-            for(int j=0; j<gridRows-1; j++)
+            for (int j = 0; j < gridRows; j++)
             {
-                
-                try{
-                    if(isValidMove(tileGrid[i][j].get(0), tileGrid[i+1][j].get(0)) != 0)
-                    {
-                        move.col1 = i;
-                        move.col2 = i+1;
-                        move.row1 = j;
-                        move.row2 = j;
-                        return move;
-                    }
-                    if(isValidMove(tileGrid[i][j].get(0), tileGrid[i-1][j].get(0)) != 0)
-                    {
-                        move.col1 = i;
-                        move.col2 = i-1;
-                        move.row1 = j;
-                        move.row2 = j;
-                        return move;
-                    }
-                    if(isValidMove(tileGrid[i][j].get(0), tileGrid[i][j+1].get(0)) != 0)
-                    {
-                        move.col1 = i;
-                        move.col2 = i;
-                        move.row1 = j;
-                        move.row2 = j+1;
-                        return move;
-                    }
-                    if(isValidMove(tileGrid[i][j].get(0), tileGrid[i][j-1].get(0)) != 0)
-                    {
-                        move.col1 = i;
-                        move.col2 = i;
-                        move.row1 = j;
-                        move.row2 = j-1;
-                        return move;
-                    }
-                } catch (IndexOutOfBoundsException iobe){}
+                ArrayList<LullabyLandSagaTile> stack = tileGrid[i][j];
+                state.cellTiles[(i * gridRows) + j] = stack.toArray(new LullabyLandSagaTile[stack.size()]);
             }
         }
-        return null;
+        state.fillerTiles = new LullabyLandSagaTile[fillerTiles.length][];
+        for (int i = 0; i < fillerTiles.length; i++)
+        {
+            state.fillerTiles[i] = fillerTiles[i].toArray(new LullabyLandSagaTile[fillerTiles[i].size()]);
+        }
+        state.stackTiles = stackTiles.toArray(new LullabyLandSagaTile[stackTiles.size()]);
+        return state;
     }
     
-    public LullabyLandSagaMove matchOnGrid()
+    /**
+     * Helper method for putting the tiles argument back into the list
+     * argument, out of play.
+     */
+    private void restoreTiles(ArrayList<LullabyLandSagaTile> list, LullabyLandSagaTile[] tiles)
     {
-        LullabyLandSagaMove move = new LullabyLandSagaMove();
-        for(int i=gridColumns-1; i>0; i--)
+        list.clear();
+        for (LullabyLandSagaTile tile : tiles)
         {
-            for(int j=gridRows-1; j>0; j--)
-            {
-                try{
-                    if(isValidMove(tileGrid[i][j].get(0), tileGrid[i][j].get(0)) != 0)
-                    {
-                        move.col1 = i;
-                        move.col2 = i;
-                        move.row1 = j;
-                        move.row2 = j;
-                        return move;
-                    }
-                } catch (IndexOutOfBoundsException iobe){}
-            }
-        }
-        
-        for(int i=0; i <gridRows-3; i++)
-        {
-            try{
-                String tt = tileGrid[0][i].get(0).getTileType();
-                
-                if(tt.equals(tileGrid[0][i+1].get(0).getTileType())
-                        && tt.equals(tileGrid[0][i+2].get(0).getTileType()))
-                {
-                    move.col1 = 0;
-                    move.col2 = 0;
-                    move.row1 = i;
-                    move.row2 = i;
-                    return move;
-          
-                }
-                tt = tileGrid[gridColumns-1][i].get(0).getTileType();
-                if(tt.equals(tileGrid[gridColumns-1][i+1].get(0).getTileType())
-                        && tt.equals(tileGrid[gridColumns-1][i+2].get(0).getTileType()))
-                {
-                    move.col1 = gridColumns-1;
-                    move.col2 = gridColumns-1;
-                    move.row1 = i;
-                    move.row2 = i;
-                    return move;
-                }
-            } catch (IndexOutOfBoundsException iobe){}
+            tile.setTileState(LullabyLandSagaTileState.INVISIBLE);
+            list.add(tile);
         }
-        
-        for(int i=0; i <gridColumns-1; i++)
-        {
-            try{
-                if(isValidMove(tileGrid[i][0].get(0), tileGrid[i][0].get(0)) != 0)
-                {
-                    move.col1 = i;
-                    move.col2 = i;
-                    move.row1 = 0;
-                    move.row2 = 0;
-                    return move;
-                }
-                if(isValidMove(tileGrid[i][gridRows-1].get(0), tileGrid[i][gridRows-1].get(0)) != 0)
-                {
-                    move.col1 = i;
-                    move.col2 = i;
-                    move.row1 = gridColumns-1;
-                    move.row2 = gridColumns-1;
-                    return move;
-                }
-            } catch(IndexOutOfBoundsException iobe) {}
-        }
-        
-        return null;
     }
     
-    public int isValidMove(LullabyLandSagaTile tile1, LullabyLandSagaTile tile2)
+    // LullabyLandSagaRulesListener METHODS - THE ENGINE CALLS THESE AS IT
+    // PLAYS, AND THEY MOVE THE TILES TO MATCH
+        // - tilesSwapped
+        // - specialMade
+        // - tileRemoved
+        // - tileFell
+        // - tileAdded
+        // - tilesDropped
+        // - boardDealt
+    
+    /**
+     * Called when the engine swaps the tiles used for matching in the
+     * col1, row1 and col2, row2 cells, it swaps them in the tile grid and
+     * springs them over to each other's cells.
+     */
+    @Override
+    public void tilesSwapped(int col1, int row1, int col2, int row2)
     {
-        /**
-         *       X
-         *       X
-         *       0
-         *       X
-         *       X
-         */
-        if( tile1.getGridRow() == tile2.getGridRow() )
-        {
-            String tt = tileGrid[tile1.getGridColumn()][tile1.getGridRow()].get(0).getTileType();
-            try {
-                if(tt.equals(tileGrid[tile2.getGridColumn()][tile2.getGridRow()-1].get(0).getTileType())
-                        && tt.equals(tileGrid[tile2.getGridColumn()][tile2.getGridRow()-2].get(0).getTileType())
-                        && tt.equals(tileGrid[tile2.getGridColumn()][tile2.getGridRow()+1].get(0).getTileType())
-                        && tt.equals(tileGrid[tile2.getGridColumn()][tile2.getGridRow()+2].get(0).getTileType()))
-                {
-                    return 7;
-                }
-            } catch(ArrayIndexOutOfBoundsException aiobe){} catch(IndexOutOfBoundsException iobe){}
-        }
-        
-        /**
-         *       X
-         *       X
-         *       2
-         *       X
-         *       X
-         */
-        if( tile1.getGridRow() == tile2.getGridRow() )
-        {
-            String tt = tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType();
-            try{
-                if(tt.equals(tileGrid[tile1.getGridColumn()][tile2.getGridRow()-1].get(0).getTileType())
-                        && tt.equals(tileGrid[tile1.getGridColumn()][tile1.getGridRow()-2].get(0).getTileType())
-                        && tt.equals(tileGrid[tile1.getGridColumn()][tile1.getGridRow()+1].get(0).getTileType())
-                        && tt.equals(tileGrid[tile1.getGridColumn()][tile1.getGridRow()+2].get(0).getTileType()))
-                {
-                    return -7;
-                }
-            } catch (IndexOutOfBoundsException iobe) {}
-        }
-        
-        /**
-         * 
-         *    X X 0 X X
-         * 
-         */
-        if( tile1.getGridColumn() == tile2.getGridColumn())
-        {
-            String tt = tileGrid[tile1.getGridColumn()][tile1.getGridRow()].get(0).getTileType();
-            
-            try{
-                if(tt.equals(tileGrid[tile2.getGridColumn()-1][tile2.getGridRow()].get(0).getTileType())
-                        && tt.equals(tileGrid[tile2.getGridColumn()-2][tile2.getGridRow()].get(0).getTileType())
-                        && tt.equals(tileGrid[tile2.getGridColumn()+1][tile2.getGridRow()].get(0).getTileType())
-                        && tt.equals(tileGrid[tile2.getGridColumn()+2][tile2.getGridRow()].get(0).getTileType()))
-                {
-                    return 8;
-                }
-            } catch (IndexOutOfBoundsException iobe) {}
-        }
-        
-        /**
-         * 
-         *    X X 2 X X
-         * 
-         */
-        if( tile1.getGridColumn() == tile2.getGridColumn() )
-        {
-            String tt = tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType();
-            
-            try{
-            if(tt.equals(tileGrid[tile1.getGridColumn()-1][tile1.getGridRow()].get(0).getTileType())
-                    && tt.equals(tileGrid[tile1.getGridColumn()-2][tile1.getGridRow()].get(0).getTileType())
-                    && tt.equals(tileGrid[tile1.getGridColumn()+1][tile1.getGridRow()].get(0).getTileType())
-                    && tt.equals(tileGrid[tile1.getGridColumn()+2][tile1.getGridRow()].get(0).getTileType()))
-            {
-                return -8;
-            }
-            } catch (IndexOutOfBoundsException iobe) {}
-        }
-        
-        /**
-         * 
-         *    0 X X
-         * 
-         */
-        if( (tile1.getGridColumn() != tile2.getGridColumn()+1) ){
-        try {
-            String tt = tileGrid[tile1.getGridColumn()][tile1.getGridRow()].get(0).getTileType();
-            if(tt.equals(tileGrid[tile2.getGridColumn()+1][tile2.getGridRow()].get(0).getTileType())
-                    && tt.equals(tileGrid[tile2.getGridColumn()+2][tile2.getGridRow()].get(0).getTileType()))
-            {    
-
-                 
-                //  X
-                //  X
-                //  0 X X
-                try{
-                    if(tt.equals(tileGrid[tile2.getGridColumn()][tile2.getGridRow()-1].get(0).getTileType())
-                            && tt.equals(tileGrid[tile2.getGridColumn()][tile2.getGridRow()-2].get(0).getTileType())
-                            && tile1.getGridRow() != tile2.getGridRow()-1)
-                    {
-                        return 15;
-                    }
-                } catch (IndexOutOfBoundsException iobe) {}
-                
-                //  0 X X
-                //  X
-                //  X
-                try{
-                    if(tt.equals(tileGrid[tile2.getGridColumn()][tile2.getGridRow()+1].get(0).getTileType())
-                            && tt.equals(tileGrid[tile2.getGridColumn()][tile2.getGridRow()+2].get(0).getTileType())
-                            && tile1.getGridRow() != tile2.getGridRow()+1)
-                    {
-                        return 16;
-                    }
-                } catch (IndexOutOfBoundsException iobe) {}
-                
-                //  X                                   
-                //  0 X X
-                //  X
-                try{
-                    if(tt.equals(tileGrid[tile2.getGridColumn()][tile2.getGridRow()+1].get(0).getTileType())
-                            && tt.equals(tileGrid[tile2.getGridColumn()][tile2.getGridRow()-1].get(0).getTileType())
-                            && tile1.getGridColumn() == tile2.getGridColumn()-1)
-                    {
-                        return 17;
-                    }
-                } catch (IndexOutOfBoundsException iobe) {}
-                
-                try{
-                    if(tt.equals(tileGrid[tile2.getGridColumn()-1][tile2.getGridRow()].get(0).getTileType())
-                            && tile1.getGridRow() != tile2.getGridRow())
-                    {
-                        return 100;
-                    }
-                }catch(IndexOutOfBoundsException iobe){}
-                
-                return 1;
-            }
-        }catch(ArrayIndexOutOfBoundsException aiobe){}
-        }
-        
-        /**
-         * 
-         *    0
-         *    X
-         *    X
-         */
-        if( (tile1.getGridRow()!= tile2.getGridRow()+1) )
-        {
-        try {
-            String tt = tileGrid[tile1.getGridColumn()][tile1.getGridRow()].get(0).getTileType();
-            if(tt.equals(tileGrid[tile2.getGridColumn()][tile2.getGridRow()+1].get(0).getTileType())
-                    && tt.equals(tileGrid[tile2.getGridColumn()][tile2.getGridRow()+2].get(0).getTileType()))
-            {
-                
-                
-                // X X 0
-                //     X
-                //     X
-                try{
-                    if(tt.equals(tileGrid[tile2.getGridColumn()-1][tile2.getGridRow()].get(0).getTileType())
-                            && tt.equals(tileGrid[tile2.getGridColumn()-2][tile2.getGridRow()].get(0).getTileType()))
-                    {
-                        if((tile1.getGridColumn() != tile2.getGridColumn() || tile1.getGridRow() != tile2.getGridRow()+1)
-                                && (tile1.getGridColumn() != tile2.getGridColumn()-1 || tile1.getGridRow() != tile2.getGridRow())
-                                && tile1.getGridColumn() != tile2.getGridColumn()-1)
-                        {
-                            return 26;
-                        }
-                    }
-                } catch (IndexOutOfBoundsException iobe) {}
-                
-                //  0 X X
-                //  X
-                //  X
-                try{
-                    if(tt.equals(tileGrid[tile2.getGridColumn()+1][tile2.getGridRow()].get(0).getTileType())
-                            && tt.equals(tileGrid[tile2.getGridColumn()+2][tile2.getGridRow()].get(0).getTileType())
-                            && tile1.getGridColumn() != tile2.getGridColumn() +1)
-                    {
-                        return 25;
-                    }
-                } catch (IndexOutOfBoundsException iobe) {}
-                
-                // X 0 X
-                //   X
-                //   X
-                try{
-                    if(tt.equals(tileGrid[tile2.getGridColumn()-1][tile2.getGridRow()].get(0).getTileType())
-                            && tt.equals(tileGrid[tile2.getGridColumn()+1][tile2.getGridRow()].get(0).getTileType())
-                            && tile1.getGridRow() == tile2.getGridRow()-1)
-                    {
-                        return 27;
-                    }
-                } catch (IndexOutOfBoundsException iobe) {}
-                
-                try{
-                    if(tt.equals(tileGrid[tile2.getGridColumn()][tile2.getGridRow()-1].get(0).getTileType())
-                            && tile1.getGridColumn() != tile2.getGridColumn())
-                    {
-                        return 200;
-                    }
-                }catch(IndexOutOfBoundsException iobe){}
-                return 2;
-            }
-        } catch(ArrayIndexOutOfBoundsException aiobe){} catch(IndexOutOfBoundsException iobe){}
-        }
-        
-        /**
-         * 
-         *   2 X X
-         * 
-         */
-        if( (tile1.getGridColumn() != tile2.getGridColumn()-1)  ){
-            try{
-            if(tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile1.getGridColumn()+1][tile1.getGridRow()].get(0).getTileType())
-                    && tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile1.getGridColumn()+2][tile1.getGridRow()].get(0).getTileType()))
-            {   
-                String tt = tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType();
-                
-                
-                //  X
-                //  X
-                //  2 X X
-                try{
-                    if(tt.equals(tileGrid[tile1.getGridColumn()][tile1.getGridRow()-1].get(0).getTileType())
-                            && tt.equals(tileGrid[tile1.getGridColumn()][tile1.getGridRow()-2].get(0).getTileType())
-                            && tile2.getGridRow() != tile1.getGridRow()-1)
-                    {
-                        return -15;
-                    }
-                } catch (IndexOutOfBoundsException iobe) {}
-                
-                //  2 X X
-                //  X
-                //  X
-                try{
-                    if(tt.equals(tileGrid[tile1.getGridColumn()][tile1.getGridRow()+1].get(0).getTileType())
-                            && tt.equals(tileGrid[tile1.getGridColumn()][tile1.getGridRow()+2].get(0).getTileType())
-                            && tile2.getGridRow() != tile1.getGridRow()+1)
-                    {
-                        return -16;
-                    }
-                } catch (IndexOutOfBoundsException iobe) {}
-                
-                //  X
-                //  2 X X
-                //  X
-                try{
-                    if(tt.equals(tileGrid[tile1.getGridColumn()][tile1.getGridRow()-1].get(0).getTileType())
-                            && tt.equals(tileGrid[tile1.getGridColumn()][tile1.getGridRow()+1].get(0).getTileType())
-                            && tile2.getGridColumn() == tile1.getGridColumn()-1)
-                    {
-                        return -17;
-                    }
-                } catch (IndexOutOfBoundsException iobe) {}
-                
-                try{
-                    if(tt.equals(tileGrid[tile1.getGridColumn()-1][tile1.getGridRow()].get(0).getTileType())
-                            && tile1.getGridRow() != tile2.getGridRow())
-                    {
-                        return -100;
-                    }
-                }catch(IndexOutOfBoundsException iobe){}
-                return -1;
-            }
-            } catch (IndexOutOfBoundsException iobe) {}
-        }
-        
-        /**
-         * 
-         *      2
-         *      X
-         *      X
-         */
-        if(  (tile1.getGridRow()!= tile2.getGridRow()-1) )
-        {
-        try {
-            String tt = tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType();
-            if(tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile1.getGridColumn()][tile1.getGridRow()+1].get(0).getTileType())
-                    && tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile1.getGridColumn()][tile1.getGridRow()+2].get(0).getTileType()))
-            {   
-                
-                
-                //  2 X X
-                //  X
-                //  X
-                try{
-                    if(tt.equals(tileGrid[tile1.getGridColumn()+1][tile1.getGridRow()].get(0).getTileType())
-                            && tt.equals(tileGrid[tile1.getGridColumn()+2][tile1.getGridRow()].get(0).getTileType())
-                            && tile2.getGridColumn() != tile1.getGridColumn() +1)
-                    {
-                        return -25;
-                    }
-                } catch (IndexOutOfBoundsException iobe) {}
-                
-                // X X 2
-                //     X
-                //     X
-                try{
-                    if(tt.equals(tileGrid[tile1.getGridColumn()-1][tile1.getGridRow()].get(0).getTileType())
-                            && tt.equals(tileGrid[tile1.getGridColumn()-2][tile1.getGridRow()].get(0).getTileType())
-                            && tile2.getGridColumn() != tile1.getGridColumn()-1)
-                    {
-                        return -26;
-                    }
-                } catch (IndexOutOfBoundsException iobe) {}
-                
-                //  X 2 X
-                //    X
-                //    X
-                try{
-                    if(tt.equals(tileGrid[tile1.getGridColumn()-1][tile1.getGridRow()].get(0).getTileType())
-                            && tt.equals(tileGrid[tile1.getGridColumn()+1][tile1.getGridRow()].get(0).getTileType())
-                            && tile2.getGridRow() == tile1.getGridRow()-1)
-                    {
-                        return -27;
-                    }
-                } catch (IndexOutOfBoundsException iobe) {}
-                
-                try{
-                    if(tt.equals(tileGrid[tile1.getGridColumn()][tile1.getGridRow()-1].get(0).getTileType())
-                            & tile1.getGridColumn() != tile2.getGridColumn())
-                    {
-                        return -200;
-                    }
-                }catch(IndexOutOfBoundsException iobe){}
-                return -2;
-            }
-        } catch(ArrayIndexOutOfBoundsException aiobe){}
-        }
-        
-        
-        /**
-         * 
-         *    X X 0
-         * 
-         */
-        if( (tile1.getGridColumn() != tile2.getGridColumn()-1) ){
-        try {
-            if(tileGrid[tile1.getGridColumn()][tile1.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile2.getGridColumn()-1][tile2.getGridRow()].get(0).getTileType())
-                    && tileGrid[tile1.getGridColumn()][tile1.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile2.getGridColumn()-2][tile2.getGridRow()].get(0).getTileType()))
-            { 
-                String tt = tileGrid[tile1.getGridColumn()][tile1.getGridRow()].get(0).getTileType();
-                
-                
-                
-                //        X
-                //    X X 0
-                //        X
-                try{
-                    if(tt.equals(tileGrid[tile2.getGridColumn()][tile2.getGridRow()+1].get(0).getTileType())
-                            && tt.equals(tileGrid[tile2.getGridColumn()][tile2.getGridRow()-1].get(0).getTileType())
-                            && tile1.getGridColumn() == tile2.getGridColumn()-1)
-                    {
-                        return 37;
-                    }
-                } catch (IndexOutOfBoundsException iobe) {}
-                
-                //        X
-                //        X
-                //    X X 0
-                try{
-                    if(tt.equals(tileGrid[tile2.getGridColumn()][tile2.getGridRow()-1].get(0).getTileType())
-                            && tt.equals(tileGrid[tile2.getGridColumn()][tile2.getGridRow()-2].get(0).getTileType())
-                            && tile1.getGridRow() == tile2.getGridRow()-1)
-                    {
-                        return 35;
-                    }
-                } catch (IndexOutOfBoundsException iobe) {}
-                
-                try{
-                    if(tt.equals(tileGrid[tile2.getGridColumn()+1][tile2.getGridRow()].get(0).getTileType())
-                            && tile1.getGridRow() != tile2.getGridRow())
-                    {
-                        return 300;
-                    }
-                }catch(IndexOutOfBoundsException iobe){}
-                return 3;
-            }
-        }catch(ArrayIndexOutOfBoundsException aiobe){}
-        }
-        
-        /**
-         * 
-         *    X
-         *    X
-         *    0
-         * 
-         */
-        if( (tile1.getGridRow()!= tile2.getGridRow()-1) )
-        {
-            try {
-            if(tileGrid[tile1.getGridColumn()][tile1.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile2.getGridColumn()][tile2.getGridRow()-1].get(0).getTileType())
-                    && tileGrid[tile1.getGridColumn()][tile1.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile2.getGridColumn()][tile2.getGridRow()-2].get(0).getTileType()))
-            {   
-                String tt = tileGrid[tile1.getGridColumn()][tile1.getGridRow()].get(0).getTileType();
-                
-                
-                
-                //   X
-                //   X
-                // X 0 X
-                try{
-                    if(tt.equals(tileGrid[tile2.getGridColumn()-1][tile2.getGridRow()].get(0).getTileType())
-                            && tt.equals(tileGrid[tile2.getGridColumn()+1][tile2.getGridRow()].get(0).getTileType())
-                            && tile1.getGridRow() == tile2.getGridRow()+1)
-                    {
-                        return 47;
-                    }
-                } catch (IndexOutOfBoundsException iobe) {}
-                
-                try{
-                    if(tt.equals(tileGrid[tile2.getGridColumn()][tile2.getGridRow()+1].get(0).getTileType())
-                            && tile1.getGridColumn() != tile2.getGridColumn())
-                    {
-                        return 400;
-                    }
-                }catch(IndexOutOfBoundsException iobe){}
-                return 4;
-            }
-            } catch(ArrayIndexOutOfBoundsException aiobe){}
-        }
-        
-        /**
-         * 
-         *    X X 2
-         * 
-         */
-        if( (tile1.getGridColumn() != tile2.getGridColumn()+1) ){
-        try {
-            if(tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile1.getGridColumn()-1][tile1.getGridRow()].get(0).getTileType())
-                    && tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile1.getGridColumn()-2][tile1.getGridRow()].get(0).getTileType()))
-            {     
-                String tt = tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType();
-                
-                //        X
-                //    X X 2
-                //        X
-                try{
-                    if(tt.equals(tileGrid[tile1.getGridColumn()][tile1.getGridRow()+1].get(0).getTileType())
-                            && tt.equals(tileGrid[tile1.getGridColumn()][tile1.getGridRow()-1].get(0).getTileType())
-                            && tile2.getGridColumn() == tile1.getGridColumn()+1) 
-                    {
-                        return -37;
-                    }
-                } catch (IndexOutOfBoundsException iobe) {}
-                
-                //        X
-                //        X
-                //    X X 2
-                try{
-                    if(tt.equals(tileGrid[tile1.getGridColumn()][tile1.getGridRow()-1].get(0).getTileType())
-                            && tt.equals(tileGrid[tile1.getGridColumn()][tile1.getGridRow()-2].get(0).getTileType())
-                            && tile2.getGridRow() != tile1.getGridRow()-1) 
-                    {
-                        return -35;
-                    }
-                } catch (IndexOutOfBoundsException iobe) {}
-                
-                try{
-                    if(tt.equals(tileGrid[tile1.getGridColumn()+1][tile1.getGridRow()].get(0).getTileType())
-                            && tile1.getGridRow() != tile2.getGridRow())
-                    {
-                        return -300;
-                    }
-                }catch(IndexOutOfBoundsException iobe){}
-                return -3;
-            }
-        } catch(ArrayIndexOutOfBoundsException aiobe){}
-        }
-        
-        /**
-         * 
-         *    X
-         *    X
-         *    2
-         */
-        try{
-        if( (tile1.getGridRow()!= tile2.getGridRow()+1) )
-        {
-            if(tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile1.getGridColumn()][tile1.getGridRow()-1].get(0).getTileType())
-                    && tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile1.getGridColumn()][tile1.getGridRow()-2].get(0).getTileType()))
-            {   
-                String tt = tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType();
-                
-                
-                //   X
-                //   X
-                // X 2 X
-                try{
-                    if(tt.equals(tileGrid[tile1.getGridColumn()-1][tile1.getGridRow()].get(0).getTileType())
-                            && tt.equals(tileGrid[tile1.getGridColumn()+1][tile1.getGridRow()].get(0).getTileType())
-                            && tile2.getGridRow() == tile1.getGridRow()+1)
-                    {
-                        return -47;
-                    }
-                } catch (IndexOutOfBoundsException iobe) {}
-                
-                try{
-                    if(tt.equals(tileGrid[tile1.getGridColumn()][tile1.getGridRow()+1].get(0).getTileType())
-                            && tile1.getGridColumn() != tile2.getGridColumn())
-                    {
-                        return -400;
-                    }
-                }catch(IndexOutOfBoundsException iobe){}
-                return -4;
-            }
-        }
-        } catch (ArrayIndexOutOfBoundsException aiobe) {}
-        /**
-         * 
-         *    X 0 X
-         * 
-         */
-        if( (tile1.getGridColumn() != tile2.getGridColumn()+1 && tile1.getGridColumn() != tile2.getGridColumn()-1) ){
-            if(tileGrid[tile1.getGridColumn()][tile1.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile2.getGridColumn()+1][tile2.getGridRow()].get(0).getTileType())
-                    && tileGrid[tile1.getGridColumn()][tile1.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile2.getGridColumn()-1][tile2.getGridRow()].get(0).getTileType()))
-            {
-                String tt = tileGrid[tile1.getGridColumn()][tile1.getGridRow()].get(0).getTileType();
-                 
-                return 5;
-            }
-        }
-        
-        /**
-         * 
-         *    X
-         *    0
-         *    X
-         * 
-         */
-        if( (tile1.getGridRow() != tile2.getGridRow()+1 && tile1.getGridRow() != tile2.getGridRow()-1) ){
-            if(tileGrid[tile1.getGridColumn()][tile1.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile2.getGridColumn()][tile2.getGridRow()+1].get(0).getTileType())
-                    && tileGrid[tile1.getGridColumn()][tile1.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile2.getGridColumn()][tile2.getGridRow()-1].get(0).getTileType()))
-            {  
-                String tt = tileGrid[tile1.getGridColumn()][tile1.getGridRow()].get(0).getTileType();
-                
-                return 6;
-            }
-        }
-        
-        /**
-         * 
-         *    X 2 X
-         * 
-         */
-        if( (tile1.getGridColumn() != tile2.getGridColumn()+1 && tile1.getGridColumn() != tile2.getGridColumn()-1) ){
-            if(tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile1.getGridColumn()+1][tile1.getGridRow()].get(0).getTileType())
-                    && tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile1.getGridColumn()-1][tile1.getGridRow()].get(0).getTileType()))
-            {    
-                String tt = tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType();
-               
-                return -5;
-            }
-        }
-        
-        /**
-         * 
-         *    X
-         *    2
-         *    X
-         * 
-         */
-        if(  (tile1.getGridRow() != tile2.getGridRow()+1 && tile1.getGridRow() != tile2.getGridRow()-1) ){
-            if(tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile1.getGridColumn()][tile1.getGridRow()+1].get(0).getTileType())
-                    && tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType().equals(
-                    tileGrid[tile1.getGridColumn()][tile1.getGridRow()-1].get(0).getTileType()))
-            {   
-                String tt = tileGrid[tile2.getGridColumn()][tile2.getGridRow()].get(0).getTileType();
-                
-                return -6;
-            }
-        }
-        return 0;
+        LullabyLandSagaTile tile1 = tileGrid[col1][row1].get(0);
+        LullabyLandSagaTile tile2 = tileGrid[col2][row2].get(0);
+        tileGrid[col1][row1].set(0, tile2);
+        tileGrid[col2][row2].set(0, tile1);
+        tile1.setGridCell(col2, row2);
+        tile2.setGridCell(col1, row1);
+        tile1.setTarget(calculateTileXInGrid(col2, 0), calculateTileYInGrid(row2, 0));
+        tile2.setTarget(calculateTileXInGrid(col1, 0), calculateTileYInGrid(row1, 0));
+        tile1.startMovingToTarget(4, LullabyLandSagaEasing.SPRING);
+        tile2.startMovingToTarget(4, LullabyLandSagaEasing.SPRING);
+        movingTiles.add(tile1);
+        movingTiles.add(tile2);
+        markViewChanged();
     }
     
-    public boolean areTilesMoving()
+    /**
+     * Called when the engine makes the tile used for matching in the
+     * col, row cell special, it shows it as such.
+     */
+    @Override
+    public void specialMade(int col, int row, byte special)
     {
-        Iterator<LullabyLandSagaTile> movingList = getMovingTiles();
-        while (movingList.hasNext())
-        {
-            System.out.println("WAIT!! Tiles are moving!");
-            return true;
-        }
-        return false;
+        tileGrid[col][row].get(0).setTileState(getSpecialState(special));
+        markViewChanged();
     }
     
     /**
-     * This method attempts to select the selectTile argument. Note that
-     * this may be the first or second selected tile. If a tile is already
-     * selected, it will attempt to process a isNeighbor/move.
-     * 
-     * @param selectTile The tile to select.
+     * Called when the engine removes the top tile of the col, row cell, it
+     * puts that tile with the filler tiles, out of sight.
      */
-    public void selectTile(LullabyLandSagaTile selectTile) throws InterruptedException
+    @Override
+    public void tileRemoved(int col, int row)
     {
-        if(areTilesMoving())
-        {
-            return;
-        }
-        
-        scoreMultiplier = 1;
-        
-        // IF IT'S ALREADY THE SELECTED TILE, DESELECT IT
-        if (selectTile == selectedTile)
+        ArrayList<LullabyLandSagaTile> stack = tileGrid[col][row];
+        LullabyLandSagaTile tile = stack.remove(stack.size()-1);
+        tile.setTileState(LullabyLandSagaTileState.INVISIBLE);
+        tile.setEnabled(false);
+        fillerTiles[tile.getTileTypeId()].add(tile);
+        markViewChanged();
+    }
+    
+    /**
+     * Called when the engine moves the tile used for matching in the
+     * col, fromRow cell down into the col, toRow cell, it moves it under
+     * that cell's clouds, and adds it to the batch of tiles to drop.
+     */
+    @Override
+    public void tileFell(int col, int fromRow, int toRow)
+    {
+        LullabyLandSagaTile tile = tileGrid[col][fromRow].remove(0);
+        tileGrid[col][toRow].add(0, tile);
+        tile.setGridCell(col, toRow);
+        tile.setTarget(calculateTileXInGrid(col, 0), calculateTileYInGrid(toRow, 0));
+        droppedTiles[droppedCount] = tile;
+        droppedCount++;
+        markViewChanged();
+    }
+    
+    /**
+     * Called when the engine fills the col, row cell with a tile of the
+     * type argument from the filler pool, it takes one from the filler
+     * tiles and puts it under that cell's clouds, adding it to the batch
+     * of tiles to drop.
+     */
+    @Override
+    public void tileAdded(int col, int row, int type)
+    {
+        ArrayList<LullabyLandSagaTile> fillers = fillerTiles[type];
+        LullabyLandSagaTile tile = fillers.remove(fillers.size()-1);
+        tile.setTileState(LullabyLandSagaTileState.VISIBLE);
+        tile.setEnabled(true);
+        tileGrid[col][row].add(0, tile);
+        tile.setGridCell(col, row);
+        tile.setTarget(calculateTileXInGrid(col, 0), calculateTileYInGrid(row, 0));
+        droppedTiles[droppedCount] = tile;
+        droppedCount++;
+        addedTiles[addedCount] = tile;
+        addedCount++;
+        addedCounts[col]++;
+        markViewChanged();
+    }
+    
+    /**
+     * Called when the engine has filled all the cells left empty, it sends
+     * the tiles dropped into them on their way as one batch. The filler
+     * tiles start as far above their cells as there are of them in their
+     * column, so they fall in together.
+     */
+    @Override
+    public void tilesDropped()
+    {
+        for (int i = 0; i < addedCount; i++)
         {
-            clearAllIncorrect();
-            selectedTile = null;
-            if(selectTile.getState().equals(SELECTED_STATE))
-            {
-                selectTile.setState(VISIBLE_STATE);
-            } else if(selectTile.getState().equals(SPECIAL_SELECTED_STATE))
-            {
-                selectTile.setState(stateHolder);
-            }
-            return;
+            LullabyLandSagaTile tile = addedTiles[i];
+            tile.setX(tile.getTargetX());
+            tile.setY(tile.getTargetY() - (addedCounts[tile.getGridColumn()] * TILE_IMAGE_HEIGHT));
         }
-
-        // NOT SELECTED SO TRY TO
-        if (selectedTile == null)
+        for (int i = 0; i < droppedCount; i++)
         {
-            selectedTile = selectTile;
-            if(selectedTile.getState().equals(VISIBLE_STATE))
-            {
-                selectedTile.setState(SELECTED_STATE);
-            } else {
-                    stateHolder = selectedTile.getState();
-                    selectedTile.setState(SPECIAL_SELECTED_STATE);
-            }
-            return;
+            droppedTiles[i].startMovingToTarget(4, LullabyLandSagaEasing.EASE_OUT);
         }
-        // THEY DON'T MATCH, GIVE SOME AUDIO FEEDBACK
-        else
+        movingTiles.addAll(droppedTiles, droppedCount);
+        Arrays.fill(addedCounts, 0);
+        addedCount = 0;
+        droppedCount = 0;
+    }
+    
+    /**
+     * Called when the engine deals all the tiles again, it takes all the
+     * tiles in the grid and the stack and sends those dealt to their cells,
+     * leaving the rest in the stack.
+     */
+    @Override
+    public void boardDealt()
+    {
+        // GATHER ALL THE TILES THAT CAN BE DEALT, BY TYPE
+        for (int i = 0; i < gridColumns; i++)
         {
-            if(!selectTile.isNeighbor(selectedTile))
+            for (int j = 0; j < gridRows; j++)
             {
-                if(selectedTile.getState().equals(SELECTED_STATE))
+                for (LullabyLandSagaTile tile : tileGrid[i][j])
                 {
-                    selectedTile.setState(VISIBLE_STATE);
-                } else if(selectedTile.getState().equals(SPECIAL_SELECTED_STATE))
-                {
-                    selectedTile.setState(stateHolder);
-                }
-                selectedTile = selectTile;
-                if(selectedTile.getState().equals(VISIBLE_STATE)
-                        || selectedTile.getState().equals(INVISIBLE_STATE))
-                {
-                    selectedTile.setState(SELECTED_STATE);
-                } else {
-                        stateHolder = selectedTile.getState();
-                        selectedTile.setState(SPECIAL_SELECTED_STATE);
-                }
-                return;
-            } else {
-                
-                LullabyLandSagaMove move = new LullabyLandSagaMove();
-                move.col2 = selectTile.getGridColumn();
-                move.row2 = selectTile.getGridRow();
-                move.col1 = selectedTile.getGridColumn();
-                move.row1 = selectedTile.getGridRow();
-                
-                int valid = isValidMove(selectedTile, selectTile);
-                
-                // REMOVE THE MOVE TILES FROM THE GRID
-                ArrayList<LullabyLandSagaTile> stack1 = tileGrid[move.col1][move.row1];
-                ArrayList<LullabyLandSagaTile> stack2 = tileGrid[move.col2][move.row2];        
-                LullabyLandSagaTile tile1 = stack1.remove(stack1.size()-1);
-                LullabyLandSagaTile tile2 = stack2.remove(stack2.size()-1);
-                
-                // MAKE SURE BOTH ARE UNSELECTED
-                if(tile1.getState().equals(SELECTED_STATE))
-                {
-                    tile1.setState(VISIBLE_STATE);
-                } else if(tile1.getState().equals(SPECIAL_SELECTED_STATE)) {
-                    tile1.setState(stateHolder);
-                }
-                float x = tile1.getX();
-                float y = tile1.getY();
-                float x2 = tile2.getX();
-                float y2 = tile2.getY();
-                tile1.setTarget(tile2.getX(), tile2.getY());
-                if(tile2.getState().equals(SELECTED_STATE))
-                {
-                    tile2.setState(VISIBLE_STATE);
-                } else if(tile2.getState().equals(SPECIAL_SELECTED_STATE)) {
-                    tile2.setState(stateHolder);
-                }
-                tile2.setTarget(x, y);
-
-                // SEND THEM TO THE STACK
-                tile1.startMovingToTarget(4);
-                tile2.startMovingToTarget(4);
-
-                // MAKE SURE THEY MOVE
-                movingTiles.add(tile1);
-                movingTiles.add(tile2);
-                
-                selectedTile = null;
-                
-                tileGrid[move.col1][move.row1].remove(tile1);
-                tile2.setGridCell(move.col1, move.row1);
-                tileGrid[move.col1][move.row1].add(tile2);
-                
-                tileGrid[move.col2][move.row2].remove(tile2);
-                tile1.setGridCell(move.col2, move.row2);
-                tileGrid[move.col2][move.row2].add(tile1);
-                
-                
-                if(valid != 0){
-                    turns--;
-                    processMove(move, valid);
-                } else {
-                    stack1.add(tile1);
-                    stack2.add(tile2);
-                    tile1.setTarget(x, y);
-                    tile2.setTarget(x2, y2);
-                    
-                    // SEND THEM TO THE STACK
-                    tile1.startMovingToTarget(4);
-                    tile2.startMovingToTarget(4);
-                    
-                    // MAKE SURE THEY MOVE
-                    movingTiles.add(tile1);
-                    movingTiles.add(tile2);
-
-                    selectedTile = null;
-
-                    tileGrid[move.col1][move.row1].remove(tile2);
-                    tile1.setGridCell(move.col1, move.row1);
-                    tileGrid[move.col1][move.row1].add(tile1);
-
-                    tileGrid[move.col2][move.row2].remove(tile1);
-                    tile2.setGridCell(move.col2, move.row2);
-                    tileGrid[move.col2][move.row2].add(tile2);
-                    
+                    dealtTiles[tile.getTileTypeId()].add(tile);
                 }
+                tileGrid[i][j].clear();
             }
         }
-        
-        if(turns == 0)
+        for (LullabyLandSagaTile tile : stackTiles)
         {
-            if(score-scoreObjective >=0 && clouds == 0)
-            {
-                endGameAsWin();
-            } else {
-                endGameAsLoss();
-            }
+            dealtTiles[tile.getTileTypeId()].add(tile);
         }
+        stackTiles.clear();
+        selectedTile = null;
         
-        if(moveOnGrid() == null)
-        {
-            reset(this.miniGame);
-        }
-        while(matchOnGrid() != null)
-        {
-            System.out.println("DM2649 - COMBO MOVE");
-            LullabyLandSagaMove move = matchOnGrid();
-            int k = isValidMove(tileGrid[move.col1][move.row1].get(0),
-                    tileGrid[move.col2][move.row2].get(0));
-            processMove(move, k);
-        }
-        updateAll(this.miniGame);
-    }
-    
-    public void clearAllIncorrect() {
+        // NOW LET'S PUT THE TILES IN THE GRID, THE ONE USED FOR MATCHING
+        // AT THE BOTTOM OF EACH CELL AND ITS CLOUDS ON TOP OF IT
+        LullabyLandSagaBoard board = engine.getBoard();
         for (int i = 0; i < gridColumns; i++)
         {
             for (int j = 0; j < gridRows; j++)
             {
-                ArrayList<LullabyLandSagaTile> stackSearch = tileGrid[i][j];
-                if (stackSearch.size() > 0)
+                if (!board.isEmpty(i, j))
                 {
-                    // GET THE FIRST TILE
-                    LullabyLandSagaTile searchTile = stackSearch.get(stackSearch.size()-1);
-                    //if(searchTile.getState().equals(INCORRECTLY_SELECTED_STATE))
-                    //    searchTile.setState(VISIBLE_STATE);
+                    LullabyLandSagaTileState tileState = getSpecialState(board.getSpecial(i, j));
+                    placeTile(takeDealtTile(board.getType(i, j)), i, j, tileState, 6);
+                }
+                for (int k = 0; k < engine.getCloudCount(i, j); k++)
+                {
+                    placeTile(takeDealtTile(engine.getCloudType(i, j, k)), i, j,
+                            LullabyLandSagaTileState.CLOUD, 6);
                 }
             }
         }
-    }
-    
-    /**
-     * This method undoes the previous move, sending the two tiles on top
-     * of the tile stack back to the game grid.
-     */    
-    public void undoLastMove()
-    {
-        if (inProgress() && stackTiles.size() > 1)
+        
+        // THE TILES NOT DEALT STAY IN THE STACK
+        for (int i = 0; i < dealtTiles.length; i++)
         {
-            // TAKE THE TOP 2 TILES
-            LullabyLandSagaTile topTile = stackTiles.remove(stackTiles.size()-1);
-            LullabyLandSagaTile nextToTopTile = stackTiles.remove(stackTiles.size() - 1);
-            
-            // SET THEIR DESTINATIONS
-            float boundaryLeft = miniGame.getBoundaryLeft();
-            float boundaryTop = miniGame.getBoundaryTop();
-            
-            // FIRST TILE 1
-            int col = topTile.getGridColumn();
-            int row = topTile.getGridRow();
-            int z = tileGrid[col][row].size();
-            float targetX = this.calculateTileXInGrid(col, z);
-            float targetY = this.calculateTileYInGrid(row, z);
-            topTile.setTarget(targetX, targetY);
-            movingTiles.add(topTile);
-            topTile.startMovingToTarget(MAX_TILE_VELOCITY);
-            tileGrid[col][row].add(topTile);
-            
-            // AND THEN TILE 2
-            col = nextToTopTile.getGridColumn();
-            row = nextToTopTile.getGridRow();
-            z = tileGrid[col][row].size();
-            targetX = this.calculateTileXInGrid(col, z);
-            targetY = this.calculateTileYInGrid(row, z);
-            nextToTopTile.setTarget(targetX, targetY);
-            movingTiles.add(nextToTopTile);
-            nextToTopTile.startMovingToTarget(MAX_TILE_VELOCITY);
-            tileGrid[col][row].add(nextToTopTile);
-            
-            // PLAY THE AUDIO CUE
-            miniGame.getAudio().play(LullabyLandSagaPropertyType.UNDO_AUDIO_CUE.toString(), false);   
+            stackTiles.addAll(dealtTiles[i]);
+            dealtTiles[i].clear();
         }
+        markViewChanged();
     }
     
     // OVERRIDDEN METHODS
@@ -2286,12 +1428,13 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
         // CHECK THE TOP OF THE STACK AT col, row
         try {
             ArrayList<LullabyLandSagaTile> tileStack = tileGrid[col][row];
-            if (tileStack.size() > 0)
+            if ((engine != null) && !engine.getBoard().isEmpty(col, row))
             {
-                // GET AND TRY TO SELECT THE TOP TILE IN THAT CELL, IF THERE IS ONE
+                // IF THE TOP TILE IN THAT CELL WAS CLICKED, TRY TO SELECT
+                // THE ONE AT THE BOTTOM, WHICH IS THE ONE USED FOR MATCHING
                 LullabyLandSagaTile testTile = tileStack.get(tileStack.size()-1);
                 if (testTile.containsPoint(x, y))
-                    selectTile(testTile);
+                    selectTile(tileStack.get(0));
             }
         } catch (ArrayIndexOutOfBoundsException aiobe){} catch (InterruptedException ex) {
             Logger.getLogger(LullabyLandSagaDataModel.class.getName()).log(Level.SEVERE, null, ex);
@@ -2313,10 +1456,9 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
         ((LullabyLandSagaMiniGame)miniGame).getPlayerRecord().addWin(currentLevel, 100L);
         ((LullabyLandSagaMiniGame)miniGame).savePlayerRecord();
         
-            if( Integer.parseInt(currentLevel.substring(24,25)) == latestLevel)
+            if( level.getNumber() == latestLevel)
             {
                 latestLevel++;
-                System.out.println(currentLevel.substring(24,25));
                 ((LullabyLandSagaMiniGame)miniGame).incrementLevelPermissions();
             }
                 ((LullabyLandSagaMiniGame)miniGame).switchToLevelWinScreen();
@@ -2344,13 +1486,38 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
         enableTiles(false);
     }
     /**
-     * Called when a game is started, the game grid is reset.
+     * Called when a game is started, the game grid is reset. Called while
+     * a game is under way, it deals the tiles again instead.
      * 
      * @param game 
      */
     @Override
     public void reset(MiniGame game)
     {
+        // WITHOUT THE RULES FOR THE LEVEL THERE'S NO GAME TO PLAY
+        if ((level == null) || !level.hasRules())
+            return;
+        
+        // A RESHUFFLE IS UNDONE ALONG WITH THE SWAP BEFORE IT
+        if (inProgress() && (engine != null))
+        {
+            deselectTile();
+            engine.reshuffle();
+            if (engine.isOver())
+                endGameOnObjectives();
+            return;
+        }
+        
+        // A NEW GAME CAN'T BE UNDONE. EACH NEW GAME GETS ITS OWN SEED,
+        // WHICH IS WHERE THE NEXT GAME'S SEED COMES FROM, AND ITS ENGINE
+        // GETS ONE TOO, SO THAT THE BOARD IT STARTS WITH CAN BE DEALT
+        // AHEAD OF TIME, SEE getNextDealSeed
+        undoStates.clear();
+        selectedTile = null;
+        gameSeed = nextGameSeed;
+        random.setSeed(gameSeed);
+        nextGameSeed = random.nextLong();
+        long engineSeed = random.nextLong();
         
         // PUT ALL THE TILES IN ONE PLACE AND MAKE THEM VISIBLE
         moveAllTilesToStack();
@@ -2358,46 +1525,83 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
         {
             tile.setX(TILE_STACK_X);
             tile.setY(TILE_STACK_Y);
-            tile.setState(VISIBLE_STATE);
+            tile.setTileState(LullabyLandSagaTileState.VISIBLE);
         }        
+        
+        // THE BOARD IS DEALT FROM THE TILES IN THE STACK, ONLY THE LEVEL'S
+        // OWN TILE TYPES, AND THE CELLS LEFT EMPTY ARE FILLED IN FROM THE
+        // FILLER TILES
+        int[] dealSupply = new int[TILE_TYPES.length];
+        int[] fillerSupply = new int[TILE_TYPES.length];
+        for (LullabyLandSagaTile tile : stackTiles)
+        {
+            dealSupply[tile.getTileTypeId()]++;
+        }
+        for (int i = 0; i < TILE_TYPES.length; i++)
+        {
+            if (!level.usesTileType(i))
+                dealSupply[i] = 0;
+            fillerSupply[i] = fillerTiles[i].size();
+        }
+        
+        // START THE GAME WITH THE BOARD DEALT AHEAD OF TIME, IF THERE IS
+        // ONE, AND PUT THE TILES WHERE IT DEALT THEM
+        LullabyLandSagaLevelCache levelCache = ((LullabyLandSagaMiniGame)miniGame).getFileManager().getLevelCache();
+        int[][] deal = levelCache.takeDeal(currentLevel,
+                LullabyLandSagaRulesEngine.getFirstDealSeed(engineSeed), dealSupply);
+        engine = new LullabyLandSagaRulesEngine(level, dealSupply, fillerSupply, engineSeed, deal);
+        engine.setListener(this);
+        boardDealt();
+        
+        // AND START ALL UPDATES
+        beginGame();
+        
+        // A BOARD WITH NO MOVE CAN'T BE PLAYED, AND DEALING AGAIN WON'T
+        // GIVE IT ONE, SO THE GAME ENDS HERE
+        if (engine.isOver())
+            endGameOnObjectives();
+    }    
 
-        // RANDOMLY ORDER THEM
-        Collections.shuffle(stackTiles);
-                    
-        // NOW LET'S REMOVE THEM FROM THE STACK
-        // AND PUT THE TILES IN THE GRID        
+    /**
+     * Called as part of each update, this method applies the rules that
+     * keep the tiles in line with the board. Tiles stacked on top of others
+     * are clouds, which can't be selected, and the tiles in the stack are
+     * out of play and so aren't shown.
+     * 
+     * @param game The game being updated.
+     */
+    private void applyBoardRules(MiniGame game)
+    {
         for (int i = 0; i < gridColumns; i++)
         {
             for (int j = 0; j < gridRows; j++)
             {
-                for (int k = 0; k < levelGrid[i][j]; k++)
+                ArrayList<LullabyLandSagaTile> stack = tileGrid[i][j];
+                for (int k = 1; k < stack.size(); k++)
                 {
-                    // TAKE THE TILE OUT OF THE STACK
-                    try{
-                    LullabyLandSagaTile tile = stackTiles.remove(stackTiles.size()-1);
-                    
-                    
-                    // PUT IT IN THE GRID
-                    tileGrid[i][j].add(tile);
-                    tile.setGridCell(i, j);
-                    
-                    // WE'LL ANIMATE IT GOING TO THE GRID, SO FIGURE
-                    // OUT WHERE IT'S GOING AND GET IT MOVING
-                    float x = calculateTileXInGrid(i, k);
-                    float y = calculateTileYInGrid(j, k);
-                    tile.setTarget(x, y);
-                    tile.startMovingToTarget(6);
-                    movingTiles.add(tile);
-                    } catch(ArrayIndexOutOfBoundsException aiobe){}
+                    LullabyLandSagaTile tile = stack.get(k);
+                    if (tile.getTileState() != LullabyLandSagaTileState.CLOUD)
+                    {
+                        tile.setTileState(LullabyLandSagaTileState.CLOUD);
+                        tile.setEnabled(false);
+                        markViewChanged();
+                    }
                 }
             }
-        }        
-        // AND START ALL UPDATES
-        beginGame();
+        }
         
-        // CLEAR ANY WIN OR LOSS DISPLAY\
-    }    
-
+        for (int i = 0; i < stackTiles.size(); i++)
+        {
+            LullabyLandSagaTile tile = stackTiles.get(i);
+            if (tile.getTileState() != LullabyLandSagaTileState.INVISIBLE)
+            {
+                tile.setTileState(LullabyLandSagaTileState.INVISIBLE);
+                tile.setEnabled(false);
+                markViewChanged();
+            }
+        }
+    }
+    
     /**
      * Called each frame, this method updates all the game objects.
      * 
@@ -2411,28 +1615,31 @@ public class LullabyLandSagaDataModel extends MiniGameDataModel
         {
             game.beginUsingData();
         
-            // WE ONLY NEED TO UPDATE AND MOVE THE MOVING TILES
-            for (int i = 0; i < movingTiles.size(); i++)
+            // WE ONLY NEED TO UPDATE AND MOVE THE MOVING TILES, THOSE
+            // THAT REACH THEIR DESTINATIONS ARE DROPPED FROM THE SET. THEY
+            // ARE MOVED ONCE FOR EACH STEP OF THE CLOCK, HOWEVER MANY HAVE
+            // PASSED SINCE THE LAST FRAME, SO THEY MOVE AT THE SAME SPEED
+            // NO MATTER HOW OFTEN WE GET TO DRAW THEM
+            int steps = clock.advance(System.nanoTime());
+            int moving = movingTiles.size();
+            for (int i = 0; i < steps; i++)
             {
-                // GET THE NEXT TILE
-                LullabyLandSagaTile tile = movingTiles.get(i);
+                movingTiles.update(game);
+            }
+            interpolation = clock.getInterpolation();
             
-                // THIS WILL UPDATE IT'S POSITION USING ITS VELOCITY
-                tile.update(game);
+            // THE TILES THAT STOPPED ARE NOW AT REST IN THE VIEW
+            if (movingTiles.size() != moving)
+                markViewChanged();
             
-                // IF IT'S REACHED ITS DESTINATION, REMOVE IT
-                // FROM THE LIST OF MOVING TILES
-                if (!tile.isMovingToTarget())
-                {
-                    movingTiles.remove(tile);
-                }
-            }
+            // KEEP THE TILES IN LINE WITH THE RULES OF THE BOARD
+            applyBoardRules(game);
         
             // IF THE GAME IS STILL ON, THE TIMER SHOULD CONTINUE
             if (inProgress())
             {
                 // KEEP THE GAME TIMER GOING IF THE GAME STILL IS
-                endTime = new GregorianCalendar();
+                endTime = System.nanoTime();
             }
         }
         finally
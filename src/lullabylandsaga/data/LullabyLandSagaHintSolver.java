@@ -0,0 +1,224 @@
+package lullabylandsaga.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class finds the swap expected to score the most over the next few
+ * turns, for giving the player a hint or playing for them. It searches the
+ * swaps that could follow one another using expectimax: at the player's
+ * turn it takes the best swap, and since the tiles that fill the grid in
+ * after a swap are random, it scores each swap by the average of playing
+ * it several times over with different tiles falling in.
+ *
+ * The search goes one swap deeper at a time until it runs out of time, so
+ * it can be given however long can be spared and always has an answer.
+ * Positions it has already scored are kept in a transposition table
+ * keyed by their Zobrist hash, so those reached more than once, including
+ * by the shallower searches before, aren't scored again. The engine keeps
+ * the hash up to date as it plays, so looking a position up costs next to
+ * nothing. Note the hash doesn't cover the filler pool, so positions that
+ * differ only in it are taken to be worth the same.
+ *
+ * A solver may only be used by one thread at a time.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaHintSolver
+{
+    // THE TRANSPOSITION TABLE HAS 2^TABLE_BITS ENTRIES
+    private static final int TABLE_BITS = 16;
+
+    // HOW DEEP TO SEARCH AND HOW MANY TIMES TO PLAY EACH SWAP
+    private int maxDepth;
+    private int samples;
+
+    // FOR PICKING THE TILES THAT FALL IN WHEN A SWAP IS SAMPLED
+    private LullabyLandSagaRandom random;
+
+    // THE TRANSPOSITION TABLE, FOR EACH ENTRY THE HASH OF THE POSITION,
+    // HOW MUCH MORE IT'S EXPECTED TO SCORE, AND HOW DEEP THAT WAS SEARCHED,
+    // WHERE A DEPTH OF 0 MEANS THE ENTRY IS EMPTY
+    private long[] tableKeys;
+    private double[] tableValues;
+    private byte[] tableDepths;
+
+    // WHEN THE SEARCH MUST STOP, IN NANOSECONDS, AND IF IT HAS
+    private long deadline;
+    private boolean timedOut;
+
+    // HOW THE LAST SEARCH WENT
+    private double lastExpectedScore;
+    private int lastDepth;
+
+    /**
+     * Constructor for initializing a solver.
+     *
+     * @param initMaxDepth The most swaps ahead to search, at least 1.
+     *
+     * @param initSamples How many times to play each swap to find out what
+     * it's expected to score, at least 1.
+     *
+     * @param seed The seed for picking the tiles that fall in.
+     */
+    public LullabyLandSagaHintSolver(int initMaxDepth, int initSamples, long seed)
+    {
+        maxDepth = Math.max(1, Math.min(initMaxDepth, Byte.MAX_VALUE));
+        samples = Math.max(1, initSamples);
+        random = new LullabyLandSagaRandom(seed);
+        tableKeys = new long[1 << TABLE_BITS];
+        tableValues = new double[1 << TABLE_BITS];
+        tableDepths = new byte[1 << TABLE_BITS];
+    }
+
+    // ACCESSOR METHODS
+
+    /**
+     * Accessor method for getting the score the last swap found is
+     * expected to lead to, as far ahead as the search looked.
+     *
+     * @return The expected score.
+     */
+    public double getLastExpectedScore()
+    {
+        return lastExpectedScore;
+    }
+
+    /**
+     * Accessor method for getting how many swaps ahead the last search
+     * got through before it ran out of time.
+     *
+     * @return The depth of the last search, or 0 if it didn't finish even
+     * one swap ahead.
+     */
+    public int getLastDepth()
+    {
+        return lastDepth;
+    }
+
+    // SEARCH METHODS
+
+    /**
+     * This method finds the swap expected to score the most in the game
+     * argument, searching for no longer than the time budget argument.
+     *
+     * @param engine The game to find a swap for, which isn't changed.
+     *
+     * @param budgetMillis How long to search for, in milliseconds.
+     *
+     * @return The best swap found, or null if there are none. If the time
+     * runs out before even the first depth is searched, this is the first
+     * swap on the board.
+     */
+    public LullabyLandSagaMove findBestMove(LullabyLandSagaRulesEngine engine, long budgetMillis)
+    {
+        lastDepth = 0;
+        lastExpectedScore = engine.getScore();
+        ArrayList<LullabyLandSagaMove> moves = engine.getMoveIndex().getAllMoves();
+        if (moves.isEmpty() || engine.isOver())
+            return null;
+
+        LullabyLandSagaMove bestMove = moves.get(0);
+        if (moves.size() == 1)
+            return bestMove;
+
+        // WHAT THE TABLE HOLDS WAS FOUND WITH OTHER TILES FALLING IN
+        Arrays.fill(tableDepths, (byte)0);
+        deadline = System.nanoTime() + (budgetMillis * 1000000L);
+        timedOut = false;
+
+        // ONE SWAP DEEPER EACH TIME, KEEPING THE ANSWER FROM THE LAST
+        // SEARCH THAT FINISHED
+        int depthLimit = Math.min(maxDepth, engine.getTurns());
+        for (int depth = 1; depth <= depthLimit; depth++)
+        {
+            LullabyLandSagaMove depthBestMove = null;
+            double depthBestValue = Double.NEGATIVE_INFINITY;
+            for (LullabyLandSagaMove move : moves)
+            {
+                double value = expectedGain(engine, move, depth);
+                if (timedOut)
+                    break;
+                if (value > depthBestValue)
+                {
+                    depthBestValue = value;
+                    depthBestMove = move;
+                }
+            }
+            if (timedOut)
+                break;
+
+            bestMove = depthBestMove;
+            lastDepth = depth;
+            lastExpectedScore = engine.getScore() + depthBestValue;
+        }
+        return bestMove;
+    }
+
+    // HELPER METHODS
+
+    /**
+     * The chance part of the search, it finds how much playing the move
+     * argument is expected to score, along with the best that can be
+     * expected in the swaps after it, by averaging over several plays
+     * with different tiles falling in.
+     */
+    private double expectedGain(LullabyLandSagaRulesEngine engine, LullabyLandSagaMove move, int depth)
+    {
+        double total = 0;
+        for (int i = 0; i < samples; i++)
+        {
+            if (System.nanoTime() > deadline)
+            {
+                timedOut = true;
+                return 0;
+            }
+            LullabyLandSagaRulesEngine child = new LullabyLandSagaRulesEngine(engine, random.nextLong());
+            child.playMove(move);
+            total += (child.getScore() - engine.getScore()) + bestGain(child, depth - 1);
+            if (timedOut)
+                return 0;
+        }
+        return total / samples;
+    }
+
+    /**
+     * The player's part of the search, it finds the most the game argument
+     * can be expected to score in its next depth swaps.
+     */
+    private double bestGain(LullabyLandSagaRulesEngine engine, int depth)
+    {
+        if ((depth == 0) || engine.isOver())
+            return 0;
+        if (System.nanoTime() > deadline)
+        {
+            timedOut = true;
+            return 0;
+        }
+
+        // MAYBE WE'VE BEEN HERE BEFORE
+        long key = engine.getHash();
+        int slot = (int)(key & ((1 << TABLE_BITS) - 1));
+        if ((tableDepths[slot] >= depth) && (tableKeys[slot] == key))
+            return tableValues[slot];
+
+        ArrayList<LullabyLandSagaMove> moves = engine.getMoveIndex().getAllMoves();
+        double best = 0;
+        for (LullabyLandSagaMove move : moves)
+        {
+            best = Math.max(best, expectedGain(engine, move, depth));
+            if (timedOut)
+                return 0;
+        }
+
+        // KEEP THE DEEPEST SEARCH OF EACH SLOT, BUT ALWAYS MAKE ROOM
+        // FOR A NEW POSITION
+        if ((tableKeys[slot] != key) || (tableDepths[slot] <= depth))
+        {
+            tableKeys[slot] = key;
+            tableValues[slot] = best;
+            tableDepths[slot] = (byte)depth;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,466 @@
+package lullabylandsaga.data;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lullabylandsaga.LullabyLandSagaConstants;
+
+/**
+ * This class is a level as it is stored in its .zom file, meaning its
+ * grid layout, along with the rules it is played by, meaning the turns
+ * the player gets, the score they must reach, and the clouds they must
+ * clear to win, the tile types it is played with, and the columns new
+ * tiles fall into. It has nothing to do with how the level is drawn, so
+ * it can be loaded and played without a display.
+ *
+ * A version 2 .zom file holds all of this, so a level can be added or
+ * changed without changing any code. It is laid out as follows, with all
+ * numbers big-endian:
+ *
+ *  - int ZOM_MAGIC, which no version 1 file can start with
+ *  - short version, then short flags, which are reserved and 0 for now
+ *  - int columns, then int rows
+ *  - int metadata length, the number of bytes from here to the grid
+ *  - int turns, int score objective and int clouds, where 0 turns
+ *    means the level has no rules
+ *  - byte palette size, then a byte for each tile type id played with
+ *  - a byte for each column, 1 if new tiles fall into it, 0 if not
+ *  - a byte for each cell, column by column, the number of tiles
+ *    stacked in it at the start, 0 for a cell that isn't part of the
+ *    level, with any tiles over the first being clouds
+ *
+ * Since the metadata says how long it is, metadata added after the
+ * spawn flags by a later version 2 file is skipped rather than misread.
+ *
+ * A version 1 .zom file has just the number of columns, the number of
+ * rows and the number of tiles in each cell, all as ints. Those are still
+ * read, with their rules found by the level number taken from the name of
+ * the file, like Level7.zom, all the tile types played with, and new
+ * tiles falling into every column.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaLevel
+{
+    // EVERY .zom FILE FROM VERSION 2 ON STARTS WITH THIS, "LLZM". A VERSION
+    // 1 FILE STARTS WITH ITS NUMBER OF COLUMNS, WHICH IS NEVER THIS BIG
+    public static final int ZOM_MAGIC = 0x4C4C5A4D;
+    
+    // THE NEWEST VERSION OF THE FORMAT, WHICH IS THE ONE WRITTEN
+    public static final int ZOM_VERSION = 2;
+
+    // THE BYTES OF METADATA THE NEWEST VERSION HAS BEFORE THE PALETTE
+    private static final int FIXED_METADATA_LENGTH = 13;
+
+    // THE RULES OF EACH VERSION 1 LEVEL. EACH ROW IS
+    // { LEVEL NUMBER, TURNS, SCORE OBJECTIVE, CLOUDS }
+    private static final int[][] LEVEL_RULES = {
+        { 1,    6,      6800,       0 },
+        { 2,    15,     9880,       0 },
+        { 3,    18,     15840,      0 },
+        { 4,    15,     15180,      0 },
+        { 5,    20,     34380,      0 },
+        { 6,    16,     44660,      12 },
+        { 7,    50,     173360,     52 },
+        { 8,    20,     52520,      17 },
+        { 9,    25,     66000,      22 },
+        { 10,   40,     1339540,    39 }
+    };
+
+    // HOW THE LEVEL NUMBER IS FOUND IN THE NAME OF ITS FILE
+    private static final Pattern LEVEL_NAME_PATTERN = Pattern.compile("Level(\\d+)\\.zom$");
+
+    // THE LEVEL'S NAME, USUALLY THE PATH TO ITS FILE, AND ITS NUMBER,
+    // WHICH IS 0 IF THE NAME DOESN'T HAVE ONE
+    private String name;
+    private int number;
+
+    // THE NUMBER OF TILES STACKED IN EACH CELL AT THE START OF THE LEVEL
+    private int[][] grid;
+    private int columns;
+    private int rows;
+
+    // THE RULES THE LEVEL IS PLAYED BY
+    private boolean hasRules;
+    private int turns;
+    private int scoreObjective;
+    private int clouds;
+
+    // THE TILE TYPE IDS THE LEVEL IS PLAYED WITH, AND FOR EACH COLUMN
+    // WHETHER NEW TILES FALL INTO IT
+    private int[] palette;
+    private boolean[] spawnColumns;
+
+    /**
+     * Constructor for initializing a level from a version 1 file, its
+     * rules are looked up using the level number in its name, and it is
+     * played with every tile type and new tiles fall into every column.
+     *
+     * @param initName The name of the level, usually the path to its file.
+     *
+     * @param initGrid The number of tiles stacked in each cell.
+     *
+     * @param initColumns The number of columns in the grid.
+     *
+     * @param initRows The number of rows in the grid.
+     */
+    public LullabyLandSagaLevel(String initName, int[][] initGrid, int initColumns, int initRows)
+    {
+        name = initName;
+        number = parseLevelNumber(name);
+        grid = initGrid;
+        columns = initColumns;
+        rows = initRows;
+
+        hasRules = false;
+        for (int[] rules : LEVEL_RULES)
+        {
+            if (rules[0] == number)
+            {
+                hasRules = true;
+                turns = rules[1];
+                scoreObjective = rules[2];
+                clouds = rules[3];
+            }
+        }
+
+        palette = new int[LullabyLandSagaConstants.TILE_TYPES.length];
+        for (int i = 0; i < palette.length; i++)
+        {
+            palette[i] = i;
+        }
+        spawnColumns = new boolean[columns];
+        Arrays.fill(spawnColumns, true);
+    }
+
+    /**
+     * Constructor for initializing a level with all of its metadata.
+     *
+     * @param initName The name of the level, usually the path to its file.
+     *
+     * @param initGrid The number of tiles stacked in each cell.
+     *
+     * @param initColumns The number of columns in the grid.
+     *
+     * @param initRows The number of rows in the grid.
+     *
+     * @param initTurns The turns the player gets, or 0 if the level has
+     * no rules.
+     *
+     * @param initScoreObjective The score the player must reach.
+     *
+     * @param initClouds The number of clouds the player must clear.
+     *
+     * @param initPalette The tile type ids the level is played with.
+     *
+     * @param initSpawnColumns For each column, whether new tiles fall
+     * into it.
+     */
+    public LullabyLandSagaLevel(String initName, int[][] initGrid, int initColumns, int initRows,
+                                int initTurns, int initScoreObjective, int initClouds,
+                                int[] initPalette, boolean[] initSpawnColumns)
+    {
+        name = initName;
+        number = parseLevelNumber(name);
+        grid = initGrid;
+        columns = initColumns;
+        rows = initRows;
+        hasRules = initTurns > 0;
+        turns = initTurns;
+        scoreObjective = initScoreObjective;
+        clouds = initClouds;
+        palette = initPalette;
+        spawnColumns = initSpawnColumns;
+    }
+
+    /**
+     * This method reads a level out of the buffer argument, which must
+     * hold a .zom file of any version from its position on, reading
+     * straight from the buffer in a single pass. The buffer must be
+     * big-endian, which buffers are unless told otherwise, and is left
+     * positioned after the level.
+     *
+     * @param levelName The name of the level, usually the path to its file.
+     *
+     * @param buffer The buffer to read the level from.
+     *
+     * @return The level that was read.
+     *
+     * @throws IOException If the buffer doesn't hold a level, or holds one
+     * of a version newer than this one.
+     */
+    public static LullabyLandSagaLevel parse(String levelName, ByteBuffer buffer)
+            throws IOException
+    {
+        try
+        {
+            int magic = buffer.getInt();
+            if (magic != ZOM_MAGIC)
+            {
+                // A VERSION 1 FILE, WHICH STARTS WITH ITS NUMBER OF COLUMNS
+                int initColumns = magic;
+                int initRows = buffer.getInt();
+                checkDimensions(initColumns, initRows);
+                int[][] initGrid = new int[initColumns][initRows];
+                for (int i = 0; i < initColumns; i++)
+                {
+                    for (int j = 0; j < initRows; j++)
+                    {
+                        initGrid[i][j] = buffer.getInt();
+                    }
+                }
+                return new LullabyLandSagaLevel(levelName, initGrid, initColumns, initRows);
+            }
+
+            int version = buffer.getShort() & 0xFFFF;
+            buffer.getShort();
+            if (version != ZOM_VERSION)
+                throw new IOException("Unsupported .zom version " + version + " in " + levelName);
+            int initColumns = buffer.getInt();
+            int initRows = buffer.getInt();
+            checkDimensions(initColumns, initRows);
+
+            // THE METADATA, AFTER WHICH THE GRID IS FOUND BY ITS LENGTH
+            int metadataLength = buffer.getInt();
+            if (metadataLength < FIXED_METADATA_LENGTH + initColumns)
+                throw new IOException("Bad .zom metadata length " + metadataLength + " in " + levelName);
+            int gridStart = buffer.position() + metadataLength;
+            int initTurns = buffer.getInt();
+            int initScoreObjective = buffer.getInt();
+            int initClouds = buffer.getInt();
+            int[] initPalette = new int[buffer.get() & 0xFF];
+            for (int i = 0; i < initPalette.length; i++)
+            {
+                initPalette[i] = buffer.get() & 0xFF;
+            }
+            boolean[] initSpawnColumns = new boolean[initColumns];
+            for (int i = 0; i < initColumns; i++)
+            {
+                initSpawnColumns[i] = buffer.get() != 0;
+            }
+            if (buffer.position() > gridStart)
+                throw new IOException("Bad .zom metadata length " + metadataLength + " in " + levelName);
+            buffer.position(gridStart);
+
+            // AND NOW ALL THE CELL VALUES
+            int[][] initGrid = new int[initColumns][initRows];
+            for (int i = 0; i < initColumns; i++)
+            {
+                for (int j = 0; j < initRows; j++)
+                {
+                    initGrid[i][j] = buffer.get() & 0xFF;
+                }
+            }
+            return new LullabyLandSagaLevel(levelName, initGrid, initColumns, initRows,
+                    initTurns, initScoreObjective, initClouds, initPalette, initSpawnColumns);
+        }
+        catch(BufferUnderflowException bue)
+        {
+            throw new IOException("Level " + levelName + " ends too soon");
+        }
+        catch(IllegalArgumentException iae)
+        {
+            // THE GRID WOULD START PAST THE END OF THE BUFFER
+            throw new IOException("Level " + levelName + " ends too soon");
+        }
+    }
+
+    /**
+     * This method writes this level to the stream argument in the newest
+     * version of the .zom format, such that parse reads it back the same.
+     *
+     * @param dos The stream to write the level to.
+     *
+     * @throws IOException If the stream can't be written to, or the level
+     * has more than 255 tiles in a cell or tile types in its palette.
+     */
+    public void write(DataOutputStream dos) throws IOException
+    {
+        if (palette.length > 255)
+            throw new IOException("Too many tile types in " + name);
+        dos.writeInt(ZOM_MAGIC);
+        dos.writeShort(ZOM_VERSION);
+        dos.writeShort(0);
+        dos.writeInt(columns);
+        dos.writeInt(rows);
+
+        // THE METADATA
+        dos.writeInt(FIXED_METADATA_LENGTH + palette.length + columns);
+        dos.writeInt(hasRules ? turns : 0);
+        dos.writeInt(scoreObjective);
+        dos.writeInt(clouds);
+        dos.writeByte(palette.length);
+        for (int i = 0; i < palette.length; i++)
+        {
+            dos.writeByte(palette[i]);
+        }
+        for (int i = 0; i < columns; i++)
+        {
+            dos.writeByte(spawnColumns[i] ? 1 : 0);
+        }
+
+        // AND THE GRID
+        for (int i = 0; i < columns; i++)
+        {
+            for (int j = 0; j < rows; j++)
+            {
+                if ((grid[i][j] < 0) || (grid[i][j] > 255))
+                    throw new IOException("Too many tiles in a cell of " + name);
+                dos.writeByte(grid[i][j]);
+            }
+        }
+    }
+
+    /**
+     * Helper method that makes sure the dimensions of a level being read
+     * make sense, so a bad file doesn't make a huge grid.
+     */
+    private static void checkDimensions(int initColumns, int initRows) throws IOException
+    {
+        if ((initColumns <= 0) || (initRows <= 0) || (initColumns > 255) || (initRows > 255))
+            throw new IOException("Bad level dimensions: " + initColumns + " x " + initRows);
+    }
+
+    /**
+     * This method finds the level number in the name of a level file.
+     *
+     * @param levelName The name of the level, like ./data/./lullaland/Level7.zom.
+     *
+     * @return The level number, or 0 if the name doesn't have one.
+     */
+    public static int parseLevelNumber(String levelName)
+    {
+        Matcher matcher = LEVEL_NAME_PATTERN.matcher(levelName);
+        if (!matcher.find())
+            return 0;
+        try
+        {
+            return Integer.parseInt(matcher.group(1));
+        }
+        catch(NumberFormatException nfe)
+        {
+            return 0;
+        }
+    }
+
+    // ACCESSOR METHODS
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getNumber()
+    {
+        return number;
+    }
+
+    /**
+     * Accessor method for getting the grid layout of this level. Note that
+     * this is not a copy, and so it is only meant for reading.
+     *
+     * @return The number of tiles stacked in each cell, by column and row.
+     */
+    public int[][] getGrid()
+    {
+        return grid;
+    }
+
+    public int getColumns()
+    {
+        return columns;
+    }
+
+    public int getRows()
+    {
+        return rows;
+    }
+
+    /**
+     * Accessor method for testing if the rules of this level are known,
+     * which they aren't for a level with no turns in its file, or for a
+     * version 1 level whose name has no known level number.
+     *
+     * @return true if the level has rules, false otherwise.
+     */
+    public boolean hasRules()
+    {
+        return hasRules;
+    }
+
+    public int getTurns()
+    {
+        return turns;
+    }
+
+    public int getScoreObjective()
+    {
+        return scoreObjective;
+    }
+
+    /**
+     * Accessor method for getting the number of clouds this level is
+     * designed to have, as listed in its rules.
+     *
+     * @return The number of clouds to clear.
+     */
+    public int getClouds()
+    {
+        return clouds;
+    }
+
+    /**
+     * Accessor method for testing if the col, row cell is part of the
+     * level, meaning it has tiles in it at the start.
+     *
+     * @return true if tiles are played in that cell, false otherwise.
+     */
+    public boolean isPlayable(int col, int row)
+    {
+        return grid[col][row] > 0;
+    }
+
+    /**
+     * Accessor method for getting the tile type ids this level is played
+     * with. Note that this is not a copy, and so it is only meant for
+     * reading.
+     *
+     * @return The ids of the tile types played with.
+     */
+    public int[] getPalette()
+    {
+        return palette;
+    }
+
+    /**
+     * Accessor method for testing if this level is played with tiles of
+     * the type argument.
+     *
+     * @return true if the type is in the level's palette, false otherwise.
+     */
+    public boolean usesTileType(int type)
+    {
+        for (int i = 0; i < palette.length; i++)
+        {
+            if (palette[i] == type)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Accessor method for testing if new tiles fall into the col column
+     * when tiles are removed from it. In a column they don't, the cells
+     * left at the top stay empty.
+     *
+     * @return true if new tiles fall into the column, false otherwise.
+     */
+    public boolean spawnsIn(int col)
+    {
+        return spawnColumns[col];
+    }
+}
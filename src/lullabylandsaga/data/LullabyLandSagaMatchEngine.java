@@ -0,0 +1,242 @@
+package lullabylandsaga.data;
+
+import java.util.Arrays;
+
+/**
+ * This class finds tile matches using a table of match patterns instead of
+ * hand-written checks. Each pattern is a set of cell offsets that, together
+ * with the cell a tile lands in, must all hold the same tile type. The table
+ * is compiled once into flat arrays and a swap is then tested in a single
+ * pass, reading a bounded number of cells and never relying on exceptions
+ * for bounds checking.
+ *
+ * The grid is a primitive array of tile type ids stored column by column,
+ * meaning the cell at col, row is found at col * rows + row. The codes
+ * returned are the ones the rules engine uses to remove the matched tiles.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaMatchEngine
+{
+    // A CELL WITH NO TILE IN IT, WHICH NEVER MATCHES ANYTHING
+    public static final int EMPTY_CELL = -1;
+
+    // THE FURTHEST ANY PATTERN REACHES FROM THE CELL IT IS ANCHORED ON,
+    // NOTE THAT ALL PATTERN CELLS ARE IN THE ANCHOR'S ROW OR COLUMN
+    public static final int PATTERN_REACH = 2;
+
+    // THE PATTERN TABLE. EACH ROW IS { CODE, SWAP ONLY, dCol, dRow, ... }
+    // WHERE THE OFFSETS ARE RELATIVE TO THE CELL THE TILE LANDS IN. SWAP
+    // ONLY PATTERNS ARE NOT REPORTED WHEN TESTING A CELL IN PLACE. PATTERNS
+    // ARE GROUPED BY THE SHAPE THEY GROW FROM, BIGGEST SHAPES FIRST
+    private static final int[][][] PATTERN_GROUPS = {
+        // 0 - FIVE IN A COLUMN
+        {   { 7,   0,   0,-2,  0,-1,  0, 1,  0, 2 } },
+
+        // 1 - FIVE IN A ROW
+        {   { 8,   0,  -2, 0, -1, 0,  1, 0,  2, 0 } },
+
+        // 2 - 0 X X, AND THE L AND T SHAPES BUILT ON IT
+        {   { 15,  0,   1, 0,  2, 0,  0,-1,  0,-2 },
+            { 16,  0,   1, 0,  2, 0,  0, 1,  0, 2 },
+            { 17,  1,   1, 0,  2, 0,  0, 1,  0,-1 },
+            { 100, 1,   1, 0,  2, 0, -1, 0 },
+            { 1,   0,   1, 0,  2, 0 } },
+
+        // 3 - 0 ABOVE X X
+        {   { 26,  0,   0, 1,  0, 2, -1, 0, -2, 0 },
+            { 25,  0,   0, 1,  0, 2,  1, 0,  2, 0 },
+            { 27,  1,   0, 1,  0, 2, -1, 0,  1, 0 },
+            { 200, 1,   0, 1,  0, 2,  0,-1 },
+            { 2,   0,   0, 1,  0, 2 } },
+
+        // 4 - X X 0
+        {   { 37,  1,  -1, 0, -2, 0,  0, 1,  0,-1 },
+            { 35,  1,  -1, 0, -2, 0,  0,-1,  0,-2 },
+            { 300, 1,  -1, 0, -2, 0,  1, 0 },
+            { 3,   0,  -1, 0, -2, 0 } },
+
+        // 5 - X X ABOVE 0
+        {   { 47,  1,   0,-1,  0,-2, -1, 0,  1, 0 },
+            { 400, 1,   0,-1,  0,-2,  0, 1 },
+            { 4,   0,   0,-1,  0,-2 } },
+
+        // 6 - X 0 X
+        {   { 5,   0,  -1, 0,  1, 0 } },
+
+        // 7 - X ABOVE 0 ABOVE X
+        {   { 6,   0,   0,-1,  0, 1 } }
+    };
+
+    // THE ORDER IN WHICH THE GROUPS ARE TESTED. A SIDE OF 1 MEANS THE SELECTED
+    // TILE LANDS IN THE TARGET CELL, -1 MEANS THE TARGET TILE LANDS IN THE
+    // SELECTED CELL, WHICH MAKES FOR THE NEGATIVE CODES
+    private static final int[][] SCAN_ORDER = {
+        { 0, 1 }, { 0, -1 }, { 1, 1 }, { 1, -1 },
+        { 2, 1 }, { 3, 1 },  { 2, -1 }, { 3, -1 },
+        { 4, 1 }, { 5, 1 },  { 4, -1 }, { 5, -1 },
+        { 6, 1 }, { 7, 1 },  { 6, -1 }, { 7, -1 }
+    };
+
+    // THE COMPILED TABLE, ONE ENTRY PER PATTERN IN SCAN ORDER
+    private int[] codes;
+    private int[] sides;
+    private boolean[] swapOnly;
+    private int[] offsetStarts;
+    private int[] offsetEnds;
+    private int[] offsetCols;
+    private int[] offsetRows;
+
+    // THE OFFSETS OF EACH PATTERN BY ITS CODE, AS { dCol, dRow, ... }
+    private static final int MAX_CODE = 400;
+    private int[][] offsetsByCode;
+
+    /**
+     * Constructor for initializing this engine, it compiles the pattern
+     * table into the flat arrays that are scanned for each test.
+     */
+    public LullabyLandSagaMatchEngine()
+    {
+        // FIRST COUNT WHAT WE NEED
+        int numPatterns = 0;
+        int numOffsets = 0;
+        for (int[] order : SCAN_ORDER)
+        {
+            for (int[] pattern : PATTERN_GROUPS[order[0]])
+            {
+                numPatterns++;
+                numOffsets += (pattern.length - 2) / 2;
+            }
+        }
+        codes = new int[numPatterns];
+        sides = new int[numPatterns];
+        swapOnly = new boolean[numPatterns];
+        offsetStarts = new int[numPatterns];
+        offsetEnds = new int[numPatterns];
+        offsetCols = new int[numOffsets];
+        offsetRows = new int[numOffsets];
+        offsetsByCode = new int[MAX_CODE + 1][];
+
+        // AND THEN FILL IT IN
+        int p = 0;
+        int o = 0;
+        for (int[] order : SCAN_ORDER)
+        {
+            for (int[] pattern : PATTERN_GROUPS[order[0]])
+            {
+                codes[p] = pattern[0] * order[1];
+                sides[p] = order[1];
+                swapOnly[p] = pattern[1] == 1;
+                offsetStarts[p] = o;
+                for (int i = 2; i < pattern.length; i += 2)
+                {
+                    offsetCols[o] = pattern[i];
+                    offsetRows[o] = pattern[i+1];
+                    o++;
+                }
+                offsetEnds[p] = o;
+                offsetsByCode[pattern[0]] = Arrays.copyOfRange(pattern, 2, pattern.length);
+                p++;
+            }
+        }
+    }
+
+    /**
+     * This method tests swapping the tile at col1, row1 with the tile at
+     * col2, row2 and returns the code of the first pattern the swap would
+     * complete. Note that when both cells are the same this instead tests
+     * for a match already sitting in that cell.
+     *
+     * @param types The grid of tile type ids, stored column by column.
+     *
+     * @param columns The number of columns in the grid.
+     *
+     * @param rows The number of rows in the grid.
+     *
+     * @return The match code, positive when the first tile lands in the
+     * second cell and makes the match, negative when it's the second tile
+     * landing in the first cell, and 0 if there is no match.
+     */
+    public int findMatch(int[] types, int columns, int rows,
+                            int col1, int row1, int col2, int row2)
+    {
+        boolean inPlace = (col1 == col2) && (row1 == row2);
+        for (int p = 0; p < codes.length; p++)
+        {
+            // WHEN TESTING IN PLACE BOTH SIDES ARE THE SAME
+            if (inPlace && ((sides[p] < 0) || swapOnly[p]))
+                continue;
+
+            // FIGURE OUT WHERE THE TILE LANDS AND WHERE IT CAME FROM
+            int anchorCol, anchorRow, otherCol, otherRow;
+            if (sides[p] > 0)
+            {
+                anchorCol = col2;   anchorRow = row2;
+                otherCol = col1;    otherRow = row1;
+            }
+            else
+            {
+                anchorCol = col1;   anchorRow = row1;
+                otherCol = col2;    otherRow = row2;
+            }
+            int type = types[(otherCol * rows) + otherRow];
+            if (type == EMPTY_CELL)
+                continue;
+
+            if (matchesPattern(p, types, columns, rows, type, anchorCol, anchorRow, otherCol, otherRow))
+                return codes[p];
+        }
+        return 0;
+    }
+
+    /**
+     * This method tests for a match already sitting in the cell at
+     * col, row, meaning one that doesn't need a swap.
+     *
+     * @return The match code anchored on that cell, or 0 if there is none.
+     */
+    public int findMatchInPlace(int[] types, int columns, int rows, int col, int row)
+    {
+        return findMatch(types, columns, rows, col, row, col, row);
+    }
+
+    /**
+     * Accessor method for getting the cells a match covers other than the
+     * one it is anchored on, which are the tiles removed when it is made.
+     *
+     * @param code The match code, either positive or negative.
+     *
+     * @return The offsets of those cells from the anchor cell, as
+     * { dCol, dRow, ... }, or null if no pattern has that code. Note that
+     * these are shared and so are only meant for reading.
+     */
+    public int[] getMatchOffsets(int code)
+    {
+        code = Math.abs(code);
+        if (code > MAX_CODE)
+            return null;
+        return offsetsByCode[code];
+    }
+
+    /**
+     * Helper method that tests all the cells of one compiled pattern. Note
+     * that the cell the tile came from can never be part of the pattern,
+     * since after the swap it holds the other tile.
+     */
+    private boolean matchesPattern(int p, int[] types, int columns, int rows, int type,
+                                    int anchorCol, int anchorRow, int otherCol, int otherRow)
+    {
+        for (int o = offsetStarts[p]; o < offsetEnds[p]; o++)
+        {
+            int col = anchorCol + offsetCols[o];
+            int row = anchorRow + offsetRows[o];
+            if ((col < 0) || (col >= columns) || (row < 0) || (row >= rows))
+                return false;
+            if ((col == otherCol) && (row == otherRow))
+                return false;
+            if (types[(col * rows) + row] != type)
+                return false;
+        }
+        return true;
+    }
+}
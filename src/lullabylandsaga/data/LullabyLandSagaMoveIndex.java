@@ -0,0 +1,248 @@
+package lullabylandsaga.data;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * This class keeps an index of all the swaps available to the player on
+ * a board, meaning all the pairs of neighboring tiles that would make a
+ * match if swapped. Rather than testing every swap each time it is asked,
+ * it only retests the swaps near the cells that have changed since it was
+ * last brought up to date, which it does lazily when queried.
+ *
+ * Each swap is identified by an edge id, the index of its left or top cell
+ * times two, plus one for a swap down rather than to the right. The valid
+ * swaps are kept in a dense array, with a slot array giving the position of
+ * each edge in it, so adding and removing a swap costs the same no matter
+ * how many there are.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaMoveIndex
+{
+    // THE TWO DIRECTIONS A SWAP CAN BE INDEXED BY
+    private static final int RIGHT = 0;
+    private static final int DOWN = 1;
+
+    // MARKS AN EDGE THAT IS NOT A VALID SWAP
+    private static final int NO_SLOT = -1;
+
+    // THE BOARD WE ARE INDEXING AND THE ENGINE WE TEST SWAPS WITH
+    private LullabyLandSagaBoard board;
+    private LullabyLandSagaMatchEngine matchEngine;
+
+    // THE VALID SWAPS, THE FIRST moveCount OF THEM ARE IN USE
+    private int[] moves;
+    private int moveCount;
+
+    // FOR EACH EDGE, ITS POSITION IN moves, OR NO_SLOT
+    private int[] slots;
+
+    // ONE BIT PER CELL, USED FOR THE CELLS WHOSE SWAPS NEED RETESTING
+    private long[] region;
+
+    /**
+     * Constructor for initializing an index of the swaps on the board
+     * argument. Note that the index doesn't look at the board until it is
+     * first queried.
+     *
+     * @param initBoard The board whose swaps are to be indexed.
+     *
+     * @param initMatchEngine The engine used to test swaps.
+     */
+    public LullabyLandSagaMoveIndex(LullabyLandSagaBoard initBoard,
+                                    LullabyLandSagaMatchEngine initMatchEngine)
+    {
+        board = initBoard;
+        matchEngine = initMatchEngine;
+        int numEdges = board.getColumns() * board.getRows() * 2;
+        moves = new int[numEdges];
+        moveCount = 0;
+        slots = new int[numEdges];
+        for (int i = 0; i < numEdges; i++)
+        {
+            slots[i] = NO_SLOT;
+        }
+        region = new long[board.getBitSetLength()];
+    }
+
+    /**
+     * Constructor for making a copy of the index argument for a copy of
+     * the board it indexes. The copy picks up where the original left
+     * off, since the board copy has the same cells marked as changed.
+     *
+     * @param index The index to copy.
+     *
+     * @param boardCopy The copy of the board the index argument indexes.
+     */
+    public LullabyLandSagaMoveIndex(LullabyLandSagaMoveIndex index,
+                                    LullabyLandSagaBoard boardCopy)
+    {
+        board = boardCopy;
+        matchEngine = index.matchEngine;
+        moves = index.moves.clone();
+        moveCount = index.moveCount;
+        slots = index.slots.clone();
+        region = new long[index.region.length];
+    }
+
+    // QUERY METHODS
+        // -getMoveCount
+        // -getFirstMove
+        // -getRandomMove
+        // -getAllMoves
+
+    /**
+     * Accessor method for getting the number of swaps available.
+     *
+     * @return The number of swaps that would make a match.
+     */
+    public int getMoveCount()
+    {
+        update();
+        return moveCount;
+    }
+
+    /**
+     * Accessor method for getting the swap at the front of the index,
+     * which is the first one in the list getAllMoves gives. It is filled
+     * into the move argument, so nothing is made each time it's asked for.
+     *
+     * @param move The move to fill in with the swap.
+     *
+     * @return The move argument, filled in with a swap that would make a
+     * match, or null if there are none.
+     */
+    public LullabyLandSagaMove getFirstMove(LullabyLandSagaMove move)
+    {
+        update();
+        if (moveCount == 0)
+            return null;
+        return toMove(moves[0], move);
+    }
+
+    /**
+     * Accessor method for getting one of the available swaps at random.
+     *
+     * @param random The random number generator used to pick the swap.
+     *
+     * @return A random swap that would make a match, or null if there
+     * are none.
+     */
+    public LullabyLandSagaMove getRandomMove(Random random)
+    {
+        update();
+        if (moveCount == 0)
+            return null;
+        return toMove(moves[random.nextInt(moveCount)], new LullabyLandSagaMove());
+    }
+
+    /**
+     * Accessor method for getting all the available swaps.
+     *
+     * @return A list of all the swaps that would make a match, in no
+     * particular order.
+     */
+    public ArrayList<LullabyLandSagaMove> getAllMoves()
+    {
+        update();
+        ArrayList<LullabyLandSagaMove> allMoves = new ArrayList(moveCount);
+        for (int i = 0; i < moveCount; i++)
+        {
+            allMoves.add(toMove(moves[i], new LullabyLandSagaMove()));
+        }
+        return allMoves;
+    }
+
+    // HELPER METHODS
+
+    /**
+     * Brings the index up to date by retesting all the swaps that a
+     * changed cell may have an effect on. A swap's result depends on the
+     * cells within the match engine's reach of either of its two cells,
+     * so those are the cells whose swaps get retested.
+     */
+    private void update()
+    {
+        if (!board.hasChangedCells())
+            return;
+
+        for (int w = 0; w < region.length; w++)
+        {
+            region[w] = 0;
+        }
+        board.getChangedRegion(LullabyLandSagaMatchEngine.PATTERN_REACH, region);
+        board.clearChangedCells();
+
+        int rows = board.getRows();
+        for (int w = 0; w < region.length; w++)
+        {
+            long word = region[w];
+            while (word != 0)
+            {
+                int bit = Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                int cell = (w << 6) + bit;
+                int col = cell / rows;
+                int row = cell % rows;
+
+                // THE FOUR SWAPS THIS CELL IS A PART OF
+                testEdge(col, row, RIGHT);
+                testEdge(col, row, DOWN);
+                if (col > 0)
+                    testEdge(col - 1, row, RIGHT);
+                if (row > 0)
+                    testEdge(col, row - 1, DOWN);
+            }
+        }
+    }
+
+    /**
+     * Tests the swap of the col, row cell with its neighbor in the dir
+     * direction, adding it to or removing it from the index accordingly.
+     */
+    private void testEdge(int col, int row, int dir)
+    {
+        int col2 = (dir == RIGHT) ? col + 1 : col;
+        int row2 = (dir == DOWN) ? row + 1 : row;
+        if ((col2 >= board.getColumns()) || (row2 >= board.getRows()))
+            return;
+
+        boolean valid = !board.isEmpty(col, row)
+                && !board.isEmpty(col2, row2)
+                && (matchEngine.findMatch(board.getTypes(), board.getColumns(), board.getRows(),
+                                            col, row, col2, row2) != 0);
+
+        int edge = (board.getIndex(col, row) * 2) + dir;
+        if (valid && (slots[edge] == NO_SLOT))
+        {
+            slots[edge] = moveCount;
+            moves[moveCount] = edge;
+            moveCount++;
+        }
+        else if (!valid && (slots[edge] != NO_SLOT))
+        {
+            // MOVE THE LAST SWAP INTO THE HOLE LEFT BEHIND
+            int slot = slots[edge];
+            int last = moves[moveCount - 1];
+            moves[slot] = last;
+            slots[last] = slot;
+            slots[edge] = NO_SLOT;
+            moveCount--;
+        }
+    }
+
+    /**
+     * Fills in the move argument with the swap with the edge id argument,
+     * returning it.
+     */
+    private LullabyLandSagaMove toMove(int edge, LullabyLandSagaMove move)
+    {
+        int cell = edge / 2;
+        move.col1 = cell / board.getRows();
+        move.row1 = cell % board.getRows();
+        move.col2 = ((edge % 2) == RIGHT) ? move.col1 + 1 : move.col1;
+        move.row2 = ((edge % 2) == DOWN) ? move.row1 + 1 : move.row1;
+        return move;
+    }
+}
@@ -0,0 +1,157 @@
+package lullabylandsaga.data;
+
+import java.util.Random;
+
+/**
+ * This class is the random number generator all the game's random choices
+ * are made with. It is a SplitMix64 generator, whose whole state is a
+ * single long that goes up by a fixed odd amount for each number made,
+ * which is then scrambled into the number. That makes it fast, and makes
+ * its state easy to keep and put back, so a game played from a kept state
+ * makes the same random choices again.
+ *
+ * It can also be split, which makes a new generator whose numbers have
+ * nothing to do with its own, so each game, animation or simulation thread
+ * can be given a stream of its own, all from one seed, rather than sharing
+ * one generator, or worse, the one behind Math.random.
+ *
+ * It extends Random so that it can be used wherever one is, but unlike
+ * Random it isn't thread-safe, so each thread needs its own.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaRandom extends Random
+{
+    private static final long serialVersionUID = 1L;
+
+    // THE STATE GOES UP BY THIS FOR EACH NUMBER MADE, 2^64 OVER THE GOLDEN RATIO
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    // THE STATE OF THE GENERATOR
+    private long state;
+
+    /**
+     * Constructor for initializing a generator with the seed argument,
+     * which makes the same numbers each time it is given the same seed.
+     *
+     * @param seed The seed, which becomes the generator's state.
+     */
+    public LullabyLandSagaRandom(long seed)
+    {
+        super(seed);
+        state = seed;
+    }
+
+    // ACCESSOR METHODS
+
+    /**
+     * Accessor method for getting the state of this generator, which it
+     * can be put back to using setState.
+     *
+     * @return The generator's state.
+     */
+    public long getState()
+    {
+        return state;
+    }
+
+    // MUTATOR METHODS
+
+    /**
+     * Mutator method for putting this generator in the state argument, so
+     * that it makes the same numbers it did after it was last in it.
+     *
+     * @param initState The state, as gotten from getState.
+     */
+    public void setState(long initState)
+    {
+        state = initState;
+    }
+
+    /**
+     * Mutator method for seeding this generator, which is the same as
+     * putting it in the seed argument's state.
+     *
+     * @param seed The new seed.
+     */
+    @Override
+    public void setSeed(long seed)
+    {
+        state = seed;
+    }
+
+    // RANDOM NUMBER METHODS
+
+    /**
+     * This method finds the number a generator seeded with the seed
+     * argument makes after making index others, without making them, which
+     * is good for seeding many streams from one seed, like one per game,
+     * such that each can be made on its own, in any order.
+     *
+     * @param seed The seed of the generator.
+     *
+     * @param index How many numbers come before the one wanted.
+     *
+     * @return The number.
+     */
+    public static long nthLong(long seed, long index)
+    {
+        return mix(seed + ((index + 1) * GOLDEN_GAMMA));
+    }
+
+    /**
+     * This method makes a new generator with a seed taken from this one,
+     * so that its numbers have nothing to do with this one's.
+     *
+     * @return The new generator.
+     */
+    public LullabyLandSagaRandom split()
+    {
+        return new LullabyLandSagaRandom(nextLong());
+    }
+
+    /**
+     * This method makes the next random long, which all the other
+     * random numbers are made from.
+     *
+     * @return Any long, each as likely as the others.
+     */
+    @Override
+    public long nextLong()
+    {
+        state += GOLDEN_GAMMA;
+        return mix(state);
+    }
+
+    @Override
+    public double nextDouble()
+    {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    @Override
+    public boolean nextBoolean()
+    {
+        return nextLong() < 0;
+    }
+
+    /**
+     * This method makes the random bits the rest of the methods inherited
+     * from Random, like nextInt, make their numbers from.
+     */
+    @Override
+    protected int next(int bits)
+    {
+        return (int)(nextLong() >>> (64 - bits));
+    }
+
+    /**
+     * Helper method that scrambles the state argument into a number.
+     */
+    private static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,976 @@
+package lullabylandsaga.data;
+
+import java.util.Arrays;
+
+/**
+ * This class plays the game by its rules alone, with no sprites, canvas,
+ * timer or sound, so that it can be run without a display. It is built
+ * from a level, the tiles available of each type and a seed, and plays a
+ * swap at a time, resolving each one along with all the cascades it sets
+ * off before returning. Given the same level, tiles and seed it always
+ * plays the same game, which makes it good for playing out huge numbers
+ * of games to balance the levels and to catch changes to the rules.
+ *
+ * It plays on the board, match engine, move index and board generator,
+ * and these are its rules, which are the game's:
+ *  - A swap that makes no match is put back and costs no turn.
+ *  - Each tile removed scores 60 times the multiplier, which starts at 1
+ *    for each swap and goes up by 1 for each cascade.
+ *  - Four in a line leaves a row or column clearing tile where it was
+ *    anchored, an L or T shape leaves a wrapped tile, and five in a line
+ *    leaves a color bomb. What these clear when they're cleared, and
+ *    what those clear in turn, is worked out by the cascade resolver.
+ *  - Tiles fall past the cells that aren't part of the level, and the
+ *    cells left empty are filled from the pool of filler tiles, which the
+ *    tiles removed go back into, in the columns the level spawns tiles in.
+ *  - Only the tile types in the level's palette are played with.
+ *  - When there are no swaps left, all the tiles are dealt again.
+ *  - The game is over when the turns run out, or when the tiles are dealt
+ *    and there are too few of any type to make a swap, and it is won if
+ *    the score objective has been reached and there are no clouds left.
+ *
+ * A cell's clouds are the tiles stacked on top of the one used for
+ * matching. Removing a tile from a cell with clouds removes its top cloud
+ * instead, and clouds stay in their cells as the tiles under them fall.
+ *
+ * A listener can be told of each change to the tiles as it is made, in
+ * the order made, which is how the data model plays its game on an engine
+ * and moves its tile sprites to match.
+ *
+ * The engine keeps a Zobrist hash of its position, meaning its tiles,
+ * clouds and turns left, up to date as it plays, and can take a snapshot
+ * of its whole game to be put back to later, which costs little since the
+ * snapshot shares the board's tiles until they change.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaRulesEngine
+{
+    // THE POINTS SCORED FOR EACH TILE REMOVED, BEFORE THE MULTIPLIER
+    public static final int POINTS_PER_TILE = 60;
+
+    // THE LEVEL BEING PLAYED
+    private LullabyLandSagaLevel level;
+    private int columns;
+    private int rows;
+
+    // THE TILES USED FOR MATCHING, AND FOR EACH CELL THE TYPES OF THE
+    // CLOUDS STACKED ON IT, THE FIRST cloudCounts[cell] OF THEM IN USE.
+    // A CELL'S CLOUD TYPES ARE NEVER CHANGED, ONLY REPLACED, SO THEY
+    // CAN BE SHARED WITH COPIES AND SNAPSHOTS
+    private LullabyLandSagaBoard board;
+    private int[][] clouds;
+    private int[] cloudCounts;
+
+    // THE KEYS FOR HASHING POSITIONS, AND THE HASH OF THE CLOUDS NOW
+    private LullabyLandSagaZobrist zobrist;
+    private long cloudHash;
+
+    // THESE FIND MATCHES, WORK OUT WHAT THEY CLEAR, KEEP TRACK OF THE
+    // SWAPS AND DEAL BOARDS
+    private LullabyLandSagaMatchEngine matchEngine;
+    private LullabyLandSagaCascadeResolver resolver;
+    private LullabyLandSagaMoveIndex moveIndex;
+    private LullabyLandSagaBoardGenerator boardGenerator;
+    private LullabyLandSagaRandom random;
+
+    // THE TILES OF EACH TYPE THE GAME STARTS WITH, BOTH FOR DEALING
+    // AND FOR FILLING IN THE CELLS LEFT EMPTY
+    private int[] dealSupply;
+    private int[] fillerSupply;
+
+    // THE TILES OF EACH TYPE NOT DEALT, AND THOSE IN THE FILLER POOL
+    private int[] undealt;
+    private int[] fillers;
+    private int fillerCount;
+
+    // THE STATE OF THE GAME, WHICH ENDS EARLY IF A BOARD IS DEALT THAT
+    // HAS NO SWAPS
+    private int score;
+    private int scoreMultiplier;
+    private int turns;
+    private boolean outOfMoves;
+
+    // SOME COUNTS FOR THOSE STUDYING THE GAMES PLAYED
+    private int swapCount;
+    private int cascadeCount;
+    private int reshuffleCount;
+    private int lastCascadeDepth;
+
+    // TOLD OF EACH CHANGE TO THE TILES, IF THERE IS ONE
+    private LullabyLandSagaRulesListener listener;
+
+    // ONE BIT PER COLUMN THAT NEEDS TILES MOVED DOWN INTO IT, AND ONE
+    // BIT PER CELL A CASCADE MAY BE ANCHORED ON
+    private long[] colsToFill;
+    private long[] matchRegion;
+
+    /**
+     * Constructor for initializing an engine for the level argument, it
+     * deals the first board, so it is ready to be played.
+     *
+     * @param initLevel The level to play, which must have rules.
+     *
+     * @param initDealSupply The number of tiles of each type to deal the
+     * board from, indexed by tile type id.
+     *
+     * @param initFillerSupply The number of tiles of each type that start
+     * in the filler pool, indexed by tile type id.
+     *
+     * @param seed The seed for all the random choices made.
+     */
+    public LullabyLandSagaRulesEngine(LullabyLandSagaLevel initLevel,
+                                        int[] initDealSupply,
+                                        int[] initFillerSupply,
+                                        long seed)
+    {
+        this(initLevel, initDealSupply, initFillerSupply, seed, null);
+    }
+
+    /**
+     * Constructor for initializing an engine for the level argument that
+     * starts with the firstDeal argument, a board dealt ahead of time, like
+     * by the level cache. It then plays just as if it had dealt that board
+     * itself.
+     *
+     * @param initLevel The level to play, which must have rules.
+     *
+     * @param initDealSupply The number of tiles of each type to deal the
+     * board from, indexed by tile type id.
+     *
+     * @param initFillerSupply The number of tiles of each type that start
+     * in the filler pool, indexed by tile type id.
+     *
+     * @param seed The seed for all the random choices made.
+     *
+     * @param firstDeal The board to start with, as the board generator
+     * deals it from the deal supply, with those not in the level's palette
+     * left out, using getFirstDealSeed(seed). It must have a move. If null
+     * the engine deals the board itself.
+     */
+    public LullabyLandSagaRulesEngine(LullabyLandSagaLevel initLevel,
+                                        int[] initDealSupply,
+                                        int[] initFillerSupply,
+                                        long seed,
+                                        int[][] firstDeal)
+    {
+        if (!initLevel.hasRules())
+            throw new IllegalArgumentException("No rules for level " + initLevel.getName());
+        if (initDealSupply.length != initFillerSupply.length)
+            throw new IllegalArgumentException("Deal and filler supplies have different tile types");
+
+        level = initLevel;
+        columns = level.getColumns();
+        rows = level.getRows();
+        dealSupply = initDealSupply.clone();
+        fillerSupply = initFillerSupply.clone();
+
+        // ONLY THE LEVEL'S OWN TILE TYPES ARE PLAYED WITH
+        for (int type = 0; type < dealSupply.length; type++)
+        {
+            if (!level.usesTileType(type))
+            {
+                dealSupply[type] = 0;
+                fillerSupply[type] = 0;
+            }
+        }
+
+        board = new LullabyLandSagaBoard(columns, rows);
+        clouds = new int[columns * rows][];
+        cloudCounts = new int[columns * rows];
+        zobrist = board.getZobrist();
+        matchEngine = new LullabyLandSagaMatchEngine();
+        resolver = new LullabyLandSagaCascadeResolver(board);
+        moveIndex = new LullabyLandSagaMoveIndex(board, matchEngine);
+        boardGenerator = new LullabyLandSagaBoardGenerator(matchEngine);
+        random = new LullabyLandSagaRandom(seed);
+
+        undealt = new int[dealSupply.length];
+        fillers = new int[fillerSupply.length];
+        colsToFill = new long[(columns + 63) >> 6];
+        matchRegion = new long[board.getBitSetLength()];
+
+        newGame(firstDeal);
+    }
+
+    /**
+     * Constructor for making a copy of the engine argument, game and all,
+     * which can then be played on without changing the original, like to
+     * see where a swap would lead. The copy gets a random number generator
+     * and board generator of its own, so it makes its own random choices,
+     * and can be played on another thread. It has no listener.
+     *
+     * @param engine The engine to copy.
+     *
+     * @param seed The seed for the copy's random choices.
+     */
+    public LullabyLandSagaRulesEngine(LullabyLandSagaRulesEngine engine, long seed)
+    {
+        level = engine.level;
+        columns = engine.columns;
+        rows = engine.rows;
+        dealSupply = engine.dealSupply;
+        fillerSupply = engine.fillerSupply;
+
+        board = new LullabyLandSagaBoard(engine.board);
+        clouds = engine.clouds.clone();
+        cloudCounts = engine.cloudCounts.clone();
+        zobrist = engine.zobrist;
+        cloudHash = engine.cloudHash;
+        matchEngine = engine.matchEngine;
+        resolver = new LullabyLandSagaCascadeResolver(board);
+        moveIndex = new LullabyLandSagaMoveIndex(engine.moveIndex, board);
+        boardGenerator = new LullabyLandSagaBoardGenerator(matchEngine);
+        random = new LullabyLandSagaRandom(seed);
+
+        undealt = engine.undealt.clone();
+        fillers = engine.fillers.clone();
+        fillerCount = engine.fillerCount;
+        colsToFill = new long[engine.colsToFill.length];
+        matchRegion = new long[engine.matchRegion.length];
+
+        score = engine.score;
+        scoreMultiplier = engine.scoreMultiplier;
+        turns = engine.turns;
+        outOfMoves = engine.outOfMoves;
+        swapCount = engine.swapCount;
+        cascadeCount = engine.cascadeCount;
+        reshuffleCount = engine.reshuffleCount;
+        lastCascadeDepth = engine.lastCascadeDepth;
+    }
+
+    /**
+     * This method starts the level over, dealing a new board and putting
+     * the score and turns back to where the level starts them.
+     */
+    public void newGame()
+    {
+        newGame(null);
+    }
+
+    /**
+     * Starts the level over with the firstDeal argument, or a board dealt
+     * now if it is null.
+     */
+    private void newGame(int[][] firstDeal)
+    {
+        score = 0;
+        scoreMultiplier = 1;
+        turns = level.getTurns();
+        outOfMoves = false;
+        swapCount = 0;
+        cascadeCount = 0;
+        reshuffleCount = 0;
+        lastCascadeDepth = 0;
+
+        System.arraycopy(fillerSupply, 0, fillers, 0, fillers.length);
+        fillerCount = 0;
+        for (int count : fillers)
+        {
+            fillerCount += count;
+        }
+
+        // EACH DEAL IS MADE WITH A GENERATOR OF ITS OWN, SO THE ONE TAKEN
+        // FROM ELSEWHERE IS MADE WITH THE SAME NUMBERS
+        LullabyLandSagaRandom dealRandom = random.split();
+        int[] supply = dealSupply.clone();
+        if (firstDeal == null)
+        {
+            deal(boardGenerator.generate(level.getGrid(), columns, rows, supply, dealRandom),
+                    boardGenerator.lastDealHasMove(), supply);
+        }
+        else
+        {
+            // THE GENERATOR WOULD HAVE TAKEN THE TILES IT DEALT OUT OF THE SUPPLY
+            for (int[] cellDeal : firstDeal)
+            {
+                for (int type : cellDeal)
+                {
+                    supply[type]--;
+                }
+            }
+            deal(firstDeal, true, supply);
+        }
+    }
+
+    /**
+     * This method finds the seed the first board of an engine built with
+     * the seed argument is dealt with, which is what a board must be dealt
+     * with ahead of time to be given to it.
+     *
+     * @param seed The seed the engine is built with.
+     *
+     * @return The seed its first board is dealt with.
+     */
+    public static long getFirstDealSeed(long seed)
+    {
+        return LullabyLandSagaRandom.nthLong(seed, 0);
+    }
+
+    // ACCESSOR METHODS
+
+    public LullabyLandSagaLevel getLevel()
+    {
+        return level;
+    }
+
+    /**
+     * Accessor method for getting the board of tiles used for matching.
+     * Note that it is the one being played on, so it is only meant for
+     * reading.
+     *
+     * @return The board.
+     */
+    public LullabyLandSagaBoard getBoard()
+    {
+        return board;
+    }
+
+    /**
+     * Accessor method for getting the index of the swaps the player can
+     * make, which is how a player is simulated picking a swap.
+     *
+     * @return The move index for the board.
+     */
+    public LullabyLandSagaMoveIndex getMoveIndex()
+    {
+        return moveIndex;
+    }
+
+    public int getScore()
+    {
+        return score;
+    }
+
+    public int getTurns()
+    {
+        return turns;
+    }
+
+    /**
+     * Accessor method for getting the number of tile types in play.
+     *
+     * @return The number of tile types, whose ids are 0 up to this.
+     */
+    public int getTileTypeCount()
+    {
+        return dealSupply.length;
+    }
+
+    public int getSwapCount()
+    {
+        return swapCount;
+    }
+
+    public int getCascadeCount()
+    {
+        return cascadeCount;
+    }
+
+    public int getReshuffleCount()
+    {
+        return reshuffleCount;
+    }
+
+    /**
+     * Accessor method for getting how many cascades the last swap set off,
+     * one after the other.
+     *
+     * @return The number of cascades that followed the last swap played.
+     */
+    public int getLastCascadeDepth()
+    {
+        return lastCascadeDepth;
+    }
+
+    /**
+     * Accessor method for getting the number of clouds stacked on the
+     * col, row cell.
+     *
+     * @return The number of clouds on that cell.
+     */
+    public int getCloudCount(int col, int row)
+    {
+        return cloudCounts[(col * rows) + row];
+    }
+
+    /**
+     * Accessor method for getting the type of the k-th cloud stacked on
+     * the col, row cell, counting up from the one just above the tile used
+     * for matching.
+     *
+     * @return The type of that cloud.
+     */
+    public int getCloudType(int col, int row, int k)
+    {
+        return clouds[(col * rows) + row][k];
+    }
+
+    /**
+     * Accessor method for getting the number of clouds left on the board.
+     *
+     * @return The number of clouds the player still has to clear.
+     */
+    public int getCloudCount()
+    {
+        int count = 0;
+        for (int i = 0; i < cloudCounts.length; i++)
+        {
+            count += cloudCounts[i];
+        }
+        return count;
+    }
+
+    /**
+     * Accessor method for getting the Zobrist hash of the position the
+     * game is in, meaning its tiles, clouds and turns left. It doesn't
+     * cover the score or the tiles off the board.
+     *
+     * @return The hash of the position.
+     */
+    public long getHash()
+    {
+        return board.getHash() ^ cloudHash ^ zobrist.getTurnKey(turns);
+    }
+
+    /**
+     * Accessor method for testing if the game is over, which it is once
+     * the turns run out, or once a board is dealt with no swaps on it.
+     *
+     * @return true if no more swaps can be played, false otherwise.
+     */
+    public boolean isOver()
+    {
+        return (turns <= 0) || outOfMoves;
+    }
+
+    /**
+     * Accessor method for testing if the game has been won.
+     *
+     * @return true if the game is over with the score objective reached
+     * and no clouds left, false otherwise.
+     */
+    public boolean isWon()
+    {
+        return isOver()
+                && (score >= level.getScoreObjective())
+                && (getCloudCount() == 0);
+    }
+
+    /**
+     * Mutator method for setting the listener told of each change to the
+     * tiles as it is made.
+     *
+     * @param initListener The listener, or null for none.
+     */
+    public void setListener(LullabyLandSagaRulesListener initListener)
+    {
+        listener = initListener;
+    }
+
+    // MUTATOR METHODS, FOR PICKING UP A GAME BEING PLAYED ELSEWHERE
+
+    /**
+     * Mutator method for setting what's in the col, row cell.
+     *
+     * @param type The type of the tile used for matching, or EMPTY.
+     *
+     * @param special The special state of that tile.
+     *
+     * @param cloudTypes The types of the clouds stacked on it, from the
+     * bottom up.
+     */
+    public void setCell(int col, int row, int type, byte special, int[] cloudTypes)
+    {
+        board.setCell(col, row, type, special);
+        setClouds((col * rows) + row, cloudTypes.clone());
+    }
+
+    /**
+     * Mutator method for setting the tiles not on the board.
+     *
+     * @param initUndealt The number of tiles of each type not dealt.
+     *
+     * @param initFillers The number of tiles of each type in the filler pool.
+     */
+    public void setTileSupply(int[] initUndealt, int[] initFillers)
+    {
+        // THE BOARD BEING PICKED UP REPLACES THE ONE DEALT, WHICH MAY
+        // NOT HAVE HAD A MOVE
+        outOfMoves = false;
+        System.arraycopy(initUndealt, 0, undealt, 0, undealt.length);
+        System.arraycopy(initFillers, 0, fillers, 0, fillers.length);
+        fillerCount = 0;
+        for (int count : fillers)
+        {
+            fillerCount += count;
+        }
+    }
+
+    public void setScore(int initScore)
+    {
+        score = initScore;
+    }
+
+    public void setTurns(int initTurns)
+    {
+        turns = initTurns;
+    }
+
+    // SNAPSHOT METHODS
+
+    /**
+     * This method takes a snapshot of the whole game, which it can be put
+     * back to with restoreSnapshot, any number of times. The random choices
+     * made after it is put back are the same ones made after it was taken.
+     *
+     * @return The snapshot of the game as it is now.
+     */
+    public LullabyLandSagaSnapshot takeSnapshot()
+    {
+        LullabyLandSagaSnapshot snapshot = new LullabyLandSagaSnapshot();
+        snapshot.board = new LullabyLandSagaBoard(board);
+        snapshot.clouds = clouds.clone();
+        snapshot.cloudCounts = cloudCounts.clone();
+        snapshot.cloudHash = cloudHash;
+        snapshot.undealt = undealt.clone();
+        snapshot.fillers = fillers.clone();
+        snapshot.fillerCount = fillerCount;
+        snapshot.score = score;
+        snapshot.turns = turns;
+        snapshot.outOfMoves = outOfMoves;
+        snapshot.swapCount = swapCount;
+        snapshot.cascadeCount = cascadeCount;
+        snapshot.reshuffleCount = reshuffleCount;
+        snapshot.lastCascadeDepth = lastCascadeDepth;
+        snapshot.randomState = random.getState();
+        snapshot.hash = getHash();
+        return snapshot;
+    }
+
+    /**
+     * This method puts the game back to how it was when the snapshot
+     * argument was taken.
+     *
+     * @param snapshot A snapshot taken of this engine's game.
+     */
+    public void restoreSnapshot(LullabyLandSagaSnapshot snapshot)
+    {
+        board.restore(snapshot.board);
+        System.arraycopy(snapshot.clouds, 0, clouds, 0, clouds.length);
+        System.arraycopy(snapshot.cloudCounts, 0, cloudCounts, 0, cloudCounts.length);
+        cloudHash = snapshot.cloudHash;
+        System.arraycopy(snapshot.undealt, 0, undealt, 0, undealt.length);
+        System.arraycopy(snapshot.fillers, 0, fillers, 0, fillers.length);
+        fillerCount = snapshot.fillerCount;
+        score = snapshot.score;
+        turns = snapshot.turns;
+        outOfMoves = snapshot.outOfMoves;
+        swapCount = snapshot.swapCount;
+        cascadeCount = snapshot.cascadeCount;
+        reshuffleCount = snapshot.reshuffleCount;
+        lastCascadeDepth = snapshot.lastCascadeDepth;
+        random.setState(snapshot.randomState);
+    }
+
+    // GAME METHODS
+
+    /**
+     * This method plays the swap of the tiles at col1, row1 and col2, row2,
+     * resolving the match it makes and all the cascades that follow.
+     *
+     * @return true if the swap made a match and so was played, false if
+     * it was put back, or couldn't be made at all.
+     */
+    public boolean playSwap(int col1, int row1, int col2, int row2)
+    {
+        if (isOver())
+            return false;
+        if (!isInGrid(col1, row1) || !isInGrid(col2, row2))
+            return false;
+        if ((Math.abs(col1 - col2) + Math.abs(row1 - row2)) != 1)
+            return false;
+        if (board.isEmpty(col1, row1) || board.isEmpty(col2, row2))
+            return false;
+
+        // A SWAP THAT MAKES NO MATCH IS PUT BACK, COSTING NOTHING
+        int code = matchEngine.findMatch(board.getTypes(), columns, rows, col1, row1, col2, row2);
+        if (code == 0)
+            return false;
+
+        turns--;
+        swapCount++;
+        scoreMultiplier = 1;
+        lastCascadeDepth = 0;
+        board.swapCells(col1, row1, col2, row2);
+        if (listener != null)
+            listener.tilesSwapped(col1, row1, col2, row2);
+        removeMatch(code, col1, row1, col2, row2);
+        settle();
+        return true;
+    }
+
+    /**
+     * This method plays the move argument, see playSwap.
+     *
+     * @return true if the move made a match and so was played, false if
+     * it was put back, or couldn't be made at all.
+     */
+    public boolean playMove(LullabyLandSagaMove move)
+    {
+        return playSwap(move.col1, move.row1, move.col2, move.row2);
+    }
+
+    /**
+     * This method deals the board again using all the tiles dealt before,
+     * which is done when the player has no swaps left, and may be done
+     * whenever the player asks for it.
+     */
+    public void reshuffle()
+    {
+        int[] supply = undealt.clone();
+        for (int i = 0; i < columns; i++)
+        {
+            for (int j = 0; j < rows; j++)
+            {
+                int cell = (i * rows) + j;
+                if (!board.isEmpty(i, j))
+                    supply[board.getType(i, j)]++;
+                for (int k = 0; k < cloudCounts[cell]; k++)
+                {
+                    supply[clouds[cell][k]]++;
+                }
+            }
+        }
+        reshuffleCount++;
+        int[][] deal = boardGenerator.generate(level.getGrid(), columns, rows, supply, random.split());
+        deal(deal, boardGenerator.lastDealHasMove(), supply);
+    }
+
+    // HELPER METHODS
+
+    /**
+     * Puts the deal argument, as the board generator deals it, on the
+     * board, keeping the undealt argument, the tiles not dealt, for when
+     * the board is dealt again. Should the board have no swaps, dealing
+     * again won't help, so the game is over.
+     */
+    private void deal(int[][] deal, boolean hasMove, int[] supply)
+    {
+        if (!hasMove)
+            outOfMoves = true;
+        board.clear();
+        for (int i = 0; i < columns; i++)
+        {
+            for (int j = 0; j < rows; j++)
+            {
+                int cell = (i * rows) + j;
+                int[] cellDeal = deal[cell];
+                if (cellDeal.length == 0)
+                {
+                    setClouds(cell, new int[0]);
+                    continue;
+                }
+                board.setCell(i, j, cellDeal[0], LullabyLandSagaBoard.NO_SPECIAL);
+                setClouds(cell, Arrays.copyOfRange(cellDeal, 1, cellDeal.length));
+            }
+        }
+        System.arraycopy(supply, 0, undealt, 0, undealt.length);
+
+        // THE GENERATOR NEVER DEALS A MATCH
+        board.clearDirtyCells();
+        if (listener != null)
+            listener.boardDealt();
+    }
+
+    /**
+     * Removes the tiles of the match with the code argument, made by
+     * swapping col1, row1 with col2, row2, or sitting in place when both
+     * cells are the same, along with all the tiles the specials it sets
+     * off clear. The tile the match is anchored on may instead be made
+     * special, in which case it stays.
+     */
+    private void removeMatch(int code, int col1, int row1, int col2, int row2)
+    {
+        int col = (code < 0) ? col1 : col2;
+        int row = (code < 0) ? row1 : row2;
+        int value = Math.abs(code);
+        int type = board.getType(col, row);
+
+        // THE SPECIALS UNDER CLOUDS DON'T GO OFF
+        resolver.begin();
+        for (int i = 0; i < cloudCounts.length; i++)
+        {
+            if (cloudCounts[i] > 0)
+                resolver.cover(i / rows, i % rows);
+        }
+
+        // 4 IN A ROW, 50/50 CHANCE OF ROW OR COLUMN WIPE
+        byte special = LullabyLandSagaBoard.NO_SPECIAL;
+        if (value > 99)
+        {
+            special = random.nextBoolean()
+                    ? LullabyLandSagaBoard.ROW_CLEAR_SPECIAL
+                    : LullabyLandSagaBoard.COLUMN_CLEAR_SPECIAL;
+        }
+        // L OR T SHAPED FORMATION GETS A WRAPPED STATE
+        else if (value > 9)
+        {
+            special = LullabyLandSagaBoard.WRAPPED_SPECIAL;
+        }
+        // FIVE IN A ROW MAKES A COLOR BOMB
+        else if ((value == 7) || (value == 8))
+        {
+            special = LullabyLandSagaBoard.COLOR_BOMB_SPECIAL;
+        }
+
+        if (special != LullabyLandSagaBoard.NO_SPECIAL)
+        {
+            board.setCell(col, row, type, special);
+            resolver.keep(col, row);
+            if (listener != null)
+                listener.specialMade(col, row, special);
+        }
+        else
+        {
+            resolver.clear(col, row);
+        }
+
+        // AND THEN THE REST OF THE TILES IN THE MATCH
+        int[] offsets = matchEngine.getMatchOffsets(value);
+        if (offsets != null)
+        {
+            for (int i = 0; i < offsets.length; i += 2)
+            {
+                resolver.clear(col + offsets[i], row + offsets[i+1]);
+            }
+        }
+        resolver.resolve();
+
+        // NOW CLEAR THEM ALL, SCORING ALL BUT THE ANCHOR
+        int anchor = (col * rows) + row;
+        long[] clearCells = resolver.getClearCells();
+        for (int w = 0; w < clearCells.length; w++)
+        {
+            long word = clearCells[w];
+            while (word != 0)
+            {
+                int cell = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                if (cell != anchor)
+                    score += POINTS_PER_TILE * scoreMultiplier;
+                removeLayer(cell / rows, cell % rows);
+            }
+        }
+        addColumnToFill(col);
+    }
+
+    /**
+     * Replaces the clouds on the cell argument with the cloud types
+     * argument, keeping the hash of the clouds up to date.
+     */
+    private void setClouds(int cell, int[] cloudTypes)
+    {
+        cloudHash ^= zobrist.getCloudKey(cell, cloudCounts[cell])
+                ^ zobrist.getCloudKey(cell, cloudTypes.length);
+        clouds[cell] = cloudTypes;
+        cloudCounts[cell] = cloudTypes.length;
+    }
+
+    /**
+     * Removes the top tile of the col, row cell without scoring it, which
+     * is its top cloud if it has any, putting it in the filler pool.
+     */
+    private void removeLayer(int col, int row)
+    {
+        int cell = (col * rows) + row;
+        if (cloudCounts[cell] > 0)
+        {
+            cloudHash ^= zobrist.getCloudKey(cell, cloudCounts[cell])
+                    ^ zobrist.getCloudKey(cell, cloudCounts[cell] - 1);
+            cloudCounts[cell]--;
+            addFiller(clouds[cell][cloudCounts[cell]]);
+        }
+        else
+        {
+            addFiller(board.getType(col, row));
+            board.clearCell(col, row);
+        }
+        if (listener != null)
+            listener.tileRemoved(col, row);
+        addColumnToFill(col);
+    }
+
+    /**
+     * Moves the tiles down into the cells left empty and fills the rest
+     * from the filler pool, and then removes each match this leaves, over
+     * and over until there are none.
+     */
+    private void settle()
+    {
+        fillColumns();
+        while (true)
+        {
+            if (moveIndex.getMoveCount() == 0)
+                reshuffle();
+
+            int cell = findCascade();
+            if (cell < 0)
+                break;
+
+            int col = cell / rows;
+            int row = cell % rows;
+            int code = matchEngine.findMatchInPlace(board.getTypes(), columns, rows, col, row);
+            scoreMultiplier++;
+            cascadeCount++;
+            lastCascadeDepth++;
+            removeMatch(code, col, row, col, row);
+            fillColumns();
+        }
+    }
+
+    /**
+     * Moves the tiles down into the empty cells of each column that has
+     * had tiles removed, filling the cells left at the top from the
+     * filler pool, in the columns the level has new tiles fall into. Tiles
+     * fall past the cells that aren't part of the level.
+     */
+    private void fillColumns()
+    {
+        for (int col = nextColumnToFill(0); col >= 0; col = nextColumnToFill(col + 1))
+        {
+            // ONE POINTER FOR THE NEXT CELL TO FILL AND ONE FOR THE NEXT
+            // TILE TO FALL INTO IT, NEITHER OF WHICH EVER GOES BACK DOWN
+            int j = rows - 1;
+            for (int i = rows - 1; i >= 0; i--)
+            {
+                if (!level.isPlayable(col, i) || !board.isEmpty(col, i))
+                    continue;
+
+                if (j >= i)
+                    j = i - 1;
+                while ((j >= 0) && (!level.isPlayable(col, j) || board.isEmpty(col, j)))
+                {
+                    j--;
+                }
+                if (j >= 0)
+                {
+                    board.setCell(col, i, board.getType(col, j), board.getSpecial(col, j));
+                    board.clearCell(col, j);
+                    if (listener != null)
+                        listener.tileFell(col, j, i);
+                }
+                else
+                {
+                    // WHEN THE POOL RUNS DRY, OR THE LEVEL HAS NO NEW TILES
+                    // FALL INTO THIS COLUMN, THE CELL STAYS EMPTY
+                    if (!level.spawnsIn(col))
+                        break;
+                    int type = takeFiller();
+                    if (type == LullabyLandSagaBoard.EMPTY)
+                        break;
+                    board.setCell(col, i, type, LullabyLandSagaBoard.NO_SPECIAL);
+                    if (listener != null)
+                        listener.tileAdded(col, i, type);
+                }
+            }
+        }
+        Arrays.fill(colsToFill, 0);
+        if (listener != null)
+            listener.tilesDropped();
+    }
+
+    /**
+     * Looks for a match sitting in the grid, testing only the cells near
+     * those that have changed since the grid last held no matches, bottom
+     * right first.
+     *
+     * @return The cell the match is anchored on, or -1 if there is none.
+     */
+    private int findCascade()
+    {
+        if (!board.hasDirtyCells())
+            return -1;
+
+        Arrays.fill(matchRegion, 0);
+        board.getDirtyRegion(LullabyLandSagaMatchEngine.PATTERN_REACH, matchRegion);
+        int[] types = board.getTypes();
+        for (int w = matchRegion.length - 1; w >= 0; w--)
+        {
+            long word = matchRegion[w];
+            while (word != 0)
+            {
+                int bit = 63 - Long.numberOfLeadingZeros(word);
+                word &= ~(1L << bit);
+                int cell = (w << 6) + bit;
+                if (matchEngine.findMatchInPlace(types, columns, rows, cell / rows, cell % rows) != 0)
+                    return cell;
+            }
+        }
+        board.clearDirtyCells();
+        return -1;
+    }
+
+    /**
+     * Puts a tile of the type argument in the filler pool.
+     */
+    private void addFiller(int type)
+    {
+        if (type == LullabyLandSagaBoard.EMPTY)
+            return;
+        fillers[type]++;
+        fillerCount++;
+    }
+
+    /**
+     * Takes a tile out of the filler pool at random, each tile in the
+     * pool being as likely as any other.
+     *
+     * @return The type of the tile taken, or EMPTY if the pool is empty.
+     */
+    private int takeFiller()
+    {
+        if (fillerCount == 0)
+            return LullabyLandSagaBoard.EMPTY;
+        int pick = random.nextInt(fillerCount);
+        for (int type = 0; type < fillers.length; type++)
+        {
+            if (pick < fillers[type])
+            {
+                fillers[type]--;
+                fillerCount--;
+                return type;
+            }
+            pick -= fillers[type];
+        }
+        return LullabyLandSagaBoard.EMPTY;
+    }
+
+    private boolean isInGrid(int col, int row)
+    {
+        return (col >= 0) && (col < columns) && (row >= 0) && (row < rows);
+    }
+
+    private void addColumnToFill(int col)
+    {
+        colsToFill[col >> 6] |= 1L << col;
+    }
+
+    /**
+     * Finds the first column at or after col that needs tiles moved down.
+     *
+     * @return That column, or -1 if there is none.
+     */
+    private int nextColumnToFill(int col)
+    {
+        for (int w = col >> 6; w < colsToFill.length; w++)
+        {
+            long word = colsToFill[w];
+            if (w == (col >> 6))
+                word &= -1L << col;
+            if (word != 0)
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,60 @@
+package lullabylandsaga.data;
+
+/**
+ * This interface is for what's told of each change a rules engine makes
+ * to its tiles, as it makes it, which is how the data model keeps its tile
+ * sprites in step with the engine it plays on. A cell's tiles are the one
+ * used for matching, at the bottom, and the clouds stacked on top of it.
+ *
+ * @author Thomas Marion
+ */
+public interface LullabyLandSagaRulesListener
+{
+    /**
+     * Called when the tiles used for matching in the col1, row1 and
+     * col2, row2 cells have been swapped, leaving their clouds where they
+     * were.
+     */
+    public void tilesSwapped(int col1, int row1, int col2, int row2);
+
+    /**
+     * Called when the tile used for matching in the col, row cell has been
+     * made special, rather than being removed with the rest of its match.
+     *
+     * @param special The special state it now has, see LullabyLandSagaBoard.
+     */
+    public void specialMade(int col, int row, byte special);
+
+    /**
+     * Called when the top tile of the col, row cell, which is its top
+     * cloud if it has any, has been removed and put in the filler pool.
+     */
+    public void tileRemoved(int col, int row);
+
+    /**
+     * Called when the tile used for matching in the col, fromRow cell has
+     * fallen into the col, toRow cell below it, which had none, leaving
+     * the clouds of both cells where they were.
+     */
+    public void tileFell(int col, int fromRow, int toRow);
+
+    /**
+     * Called when a tile of the type argument has been taken out of the
+     * filler pool and put in the col, row cell, which had no tile used for
+     * matching, under whatever clouds it has.
+     */
+    public void tileAdded(int col, int row, int type);
+
+    /**
+     * Called once the tiles that fell or were added since the last call
+     * are all in place, meaning the cells left empty have been filled.
+     */
+    public void tilesDropped();
+
+    /**
+     * Called when all the tiles have been dealt again, which is when a
+     * game is started over and when the player has no swaps left. What
+     * was dealt is found in the engine's board and clouds.
+     */
+    public void boardDealt();
+}
@@ -0,0 +1,72 @@
+package lullabylandsaga.data;
+
+/**
+ * This class is a snapshot of a game played by a rules engine, everything
+ * needed to put the game back to how it was when the snapshot was taken,
+ * down to the random choices that come after it. Snapshots are taken and
+ * restored only by the engine, see takeSnapshot and restoreSnapshot, and
+ * share what they can with it, so they are cheap to keep around, like for
+ * undoing swaps or for searching the swaps that could be played.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaSnapshot
+{
+    // THE TILES, SHARED WITH THE ENGINE'S BOARD UNTIL THEY CHANGE
+    LullabyLandSagaBoard board;
+
+    // THE CLOUDS, AND THE HASH OF THEM
+    int[][] clouds;
+    int[] cloudCounts;
+    long cloudHash;
+
+    // THE TILES OFF THE BOARD
+    int[] undealt;
+    int[] fillers;
+    int fillerCount;
+
+    // THE STATE OF THE GAME
+    int score;
+    int turns;
+    boolean outOfMoves;
+    int swapCount;
+    int cascadeCount;
+    int reshuffleCount;
+    int lastCascadeDepth;
+
+    // THE STATE OF THE ENGINE'S RANDOM NUMBER GENERATOR
+    long randomState;
+
+    // THE HASH OF THE POSITION
+    long hash;
+
+    /**
+     * Package-private constructor, snapshots are made by takeSnapshot.
+     */
+    LullabyLandSagaSnapshot()
+    {
+    }
+
+    // ACCESSOR METHODS
+
+    /**
+     * Accessor method for getting the Zobrist hash of the position the
+     * snapshot was taken in, the same as the engine's getHash was then.
+     *
+     * @return The hash of the position.
+     */
+    public long getHash()
+    {
+        return hash;
+    }
+
+    public int getScore()
+    {
+        return score;
+    }
+
+    public int getTurns()
+    {
+        return turns;
+    }
+}
@@ -0,0 +1,56 @@
+package lullabylandsaga.data;
+
+import lullabylandsaga.ui.LullabyLandSagaTile;
+
+/**
+ * This class is what the data model keeps of a game so that a swap can be
+ * undone, meaning a snapshot of the rules engine's game and where every
+ * tile sprite was. The states the tiles were in come from the engine's
+ * board once it is put back. The tiles themselves aren't copied, only
+ * where they were, and the snapshot shares its tiles with the engine's
+ * board until they change, so keeping one costs little.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaUndoState
+{
+    // THE ENGINE'S GAME AS IT WAS
+    LullabyLandSagaSnapshot snapshot;
+
+    // FOR EACH CELL, ITS STACK OF TILES FROM THE BOTTOM UP
+    LullabyLandSagaTile[][] cellTiles;
+
+    // THE TILES THAT WERE OUT OF THE GRID, THE FILLER TILES BY TYPE
+    LullabyLandSagaTile[][] fillerTiles;
+    LullabyLandSagaTile[] stackTiles;
+
+    /**
+     * Package-private constructor, undo states are made by the data model.
+     */
+    LullabyLandSagaUndoState()
+    {
+    }
+
+    // ACCESSOR METHODS
+
+    /**
+     * Accessor method for getting the Zobrist hash of the position the
+     * game was in when this state was kept, see LullabyLandSagaRulesEngine.
+     *
+     * @return The hash of the position.
+     */
+    public long getHash()
+    {
+        return snapshot.hash;
+    }
+
+    public int getScore()
+    {
+        return snapshot.score;
+    }
+
+    public int getTurns()
+    {
+        return snapshot.turns;
+    }
+}
@@ -0,0 +1,149 @@
+package lullabylandsaga.data;
+
+import java.util.Random;
+
+/**
+ * This class holds the random keys used to hash positions of the game
+ * into a single long, Zobrist style. Each thing a position can have, like
+ * a tile of some type in some cell, has its own random key, and a
+ * position's hash is all the keys for what it has xor'ed together. Since
+ * xor undoes itself, a hash can be kept up to date as a position changes
+ * by xor'ing out the keys of what was there and xor'ing in the keys of
+ * what is there now. Two different positions have the same hash only by
+ * a chance of about 1 in 2^64.
+ *
+ * The keys are made from a fixed seed, so a position hashes the same in
+ * every run of the game.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaZobrist
+{
+    // THE SEED ALL THE KEYS ARE MADE FROM
+    private static final long KEY_SEED = 0x5A0B1A4BL;
+
+    // THE MOST TILE TYPES THERE ARE KEYS FOR
+    public static final int MAX_TILE_TYPES = 16;
+
+    // THE MOST CLOUDS AND TURNS WITH KEYS OF THEIR OWN, ANY MORE SHARE
+    // THE KEY OF THE LAST ONE
+    public static final int MAX_CLOUDS = 8;
+    public static final int MAX_TURNS = 128;
+
+    // THE SIZE OF THE BOARDS HASHED
+    private int numCells;
+
+    // THE KEYS, FOR EACH CELL ONE PER TILE TYPE, ONE PER SPECIAL STATE
+    // AND ONE PER NUMBER OF CLOUDS, AND THEN ONE PER NUMBER OF TURNS LEFT
+    private long[] typeKeys;
+    private long[] specialKeys;
+    private long[] cloudKeys;
+    private long[] turnKeys;
+
+    /**
+     * Constructor for making the keys for boards of the given size.
+     *
+     * @param initNumCells The number of cells in the board.
+     */
+    public LullabyLandSagaZobrist(int initNumCells)
+    {
+        numCells = initNumCells;
+        Random random = new Random(KEY_SEED);
+        typeKeys = makeKeys(random, numCells * MAX_TILE_TYPES);
+        specialKeys = makeKeys(random, numCells * LullabyLandSagaBoard.SPECIAL_STATES);
+        cloudKeys = makeKeys(random, numCells * (MAX_CLOUDS + 1));
+        turnKeys = makeKeys(random, MAX_TURNS + 1);
+    }
+
+    // ACCESSOR METHODS
+
+    /**
+     * Accessor method for getting the number of cells these keys are for.
+     *
+     * @return The number of cells in the boards hashed.
+     */
+    public int getNumCells()
+    {
+        return numCells;
+    }
+
+    /**
+     * Accessor method for getting the key for a tile in a cell. Note that
+     * an empty cell has no key, which is the same as a key of 0.
+     *
+     * @param cell The cell's index in the board.
+     *
+     * @param type The tile's type id, or EMPTY.
+     *
+     * @param special The tile's special state.
+     *
+     * @return The key for that tile in that cell.
+     */
+    public long getTileKey(int cell, int type, byte special)
+    {
+        if ((type < 0) || (type >= MAX_TILE_TYPES))
+            return 0;
+        return typeKeys[(cell * MAX_TILE_TYPES) + type]
+                ^ specialKeys[(cell * LullabyLandSagaBoard.SPECIAL_STATES) + special];
+    }
+
+    /**
+     * Accessor method for getting the key for the number of clouds on a
+     * cell. Note that no clouds has no key.
+     */
+    public long getCloudKey(int cell, int clouds)
+    {
+        if (clouds <= 0)
+            return 0;
+        return cloudKeys[(cell * (MAX_CLOUDS + 1)) + Math.min(clouds, MAX_CLOUDS)];
+    }
+
+    /**
+     * Accessor method for getting the key for the number of turns left.
+     */
+    public long getTurnKey(int turns)
+    {
+        return turnKeys[Math.max(0, Math.min(turns, MAX_TURNS))];
+    }
+
+    /**
+     * This method hashes the position the rules engine argument is in from
+     * scratch, meaning its tiles, clouds and turns left. The engine keeps
+     * its hash up to date as it plays, see its getHash, so this is only
+     * needed to check that it has.
+     *
+     * @param engine The game to hash, which must be for a board of the
+     * size these keys were made for.
+     *
+     * @return The hash of its position.
+     */
+    public long hash(LullabyLandSagaRulesEngine engine)
+    {
+        LullabyLandSagaBoard board = engine.getBoard();
+        int rows = board.getRows();
+        long hash = getTurnKey(engine.getTurns());
+        for (int col = 0; col < board.getColumns(); col++)
+        {
+            for (int row = 0; row < rows; row++)
+            {
+                int cell = (col * rows) + row;
+                hash ^= getTileKey(cell, board.getType(col, row), board.getSpecial(col, row));
+                hash ^= getCloudKey(cell, engine.getCloudCount(col, row));
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Helper method for making count random keys.
+     */
+    private static long[] makeKeys(Random random, int count)
+    {
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++)
+        {
+            keys[i] = random.nextLong();
+        }
+        return keys;
+    }
+}
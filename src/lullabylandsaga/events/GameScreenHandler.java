@@ -24,18 +24,23 @@ public class GameScreenHandler implements ActionListener
     // HERE'S THE GAME WE'LL UPDATE
     private LullabyLandSagaMiniGame game;
     
+    // WHETHER TO PLAY THE LAST LEVEL PLAYED AGAIN, RATHER THAN THE
+    // LEVEL PICKED ON THE SCORE SCREEN
+    private boolean playAgain;
     
     /**
-     * This constructor just stores the game and the level to
+     * This constructor just stores the game and which level to
      * load for later.
      *     
      * @param initGame The game to update.
      * 
-     * @param initLevelFile The level to load when the user requests it. 
+     * @param initPlayAgain true to load the level last played, false
+     * to load the one picked on the score screen.
      */
-    public GameScreenHandler(  LullabyLandSagaMiniGame initGame)
+    public GameScreenHandler(  LullabyLandSagaMiniGame initGame, boolean initPlayAgain)
     {
         game = initGame;
+        playAgain = initPlayAgain;
     }
     
     /**
@@ -50,12 +55,14 @@ public class GameScreenHandler implements ActionListener
     @Override
     public void actionPerformed(ActionEvent ae)
     {
-        String levelFile = "./data/./lullaland/Level5.zom";
-        System.out.println("<<<<<<<<<" + levelFile);
         // GET THE GAME'S DATA MODEL, WHICH IS ALREADY LOCKED FOR US
             LullabyLandSagaDataModel data = (LullabyLandSagaDataModel)game.getDataModel();
+            String levelFile = game.getLevelFile(game.getCurrentLevel());
+            if (playAgain && (data.getCurrentLevel() != null))
+                levelFile = data.getCurrentLevel();
         
-            // UPDATE THE DATA
+            // UPDATE THE DATA, WITH THE LEVEL MOST LIKELY READIED WHILE
+            // THE PLAYER WAS ON THE SCORE SCREEN, SO THIS TAKES NO TIME
             LullabyLandSagaFileManager fileManager = game.getFileManager();
             fileManager.loadLevel(levelFile);
             
@@ -2,15 +2,21 @@ package lullabylandsaga.events;
 
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import static lullabylandsaga.LullabyLandSagaConstants.GAME_SCREEN_STATE;
+import javax.swing.SwingUtilities;
+import lullabylandsaga.LullabyLandSaga.LullabyLandSagaPropertyType;
+import static lullabylandsaga.LullabyLandSagaConstants.*;
 import lullabylandsaga.data.LullabyLandSagaDataModel;
+import lullabylandsaga.data.LullabyLandSagaHintSolver;
 import lullabylandsaga.data.LullabyLandSagaMove;
+import lullabylandsaga.data.LullabyLandSagaRulesEngine;
 import lullabylandsaga.ui.LullabyLandSagaMiniGame;
-import lullabylandsaga.ui.LullabyLandSagaTile;
 import mini_game.MiniGameDataModel;
+import properties_manager.PropertiesManager;
 
 /**
  * This event handler lets us provide additional custom responses
@@ -22,6 +28,12 @@ public class LullabyLandKeyHandler extends KeyAdapter
 {
     // THE MAHJONG GAME ON WHICH WE'LL RESPOND
     private LullabyLandSagaMiniGame game;
+    
+    // THE SOLVER THAT FINDS THE HINTS AND THE THREAD IT RUNS ON, ALONG
+    // WITH WHETHER IT'S BUSY, WHICH IS ONLY USED ON THE EVENT THREAD
+    private LullabyLandSagaHintSolver hintSolver;
+    private ExecutorService hintExecutor;
+    private boolean hintPending;
 
     /**
      * This constructor simply inits the object by 
@@ -33,6 +45,21 @@ public class LullabyLandKeyHandler extends KeyAdapter
     public LullabyLandKeyHandler(LullabyLandSagaMiniGame initGame)
     {
         game = initGame;
+        hintSolver = new LullabyLandSagaHintSolver(HINT_MAX_DEPTH, HINT_SAMPLES, System.nanoTime());
+        hintPending = false;
+        
+        // THE SOLVER GETS A THREAD OF ITS OWN, WHICH WON'T KEEP THE
+        // APPLICATION RUNNING ONCE THE WINDOW CLOSES
+        hintExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "Hint Solver");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
     
     /**
@@ -45,24 +72,46 @@ public class LullabyLandKeyHandler extends KeyAdapter
     @Override
     public void keyPressed(KeyEvent ke)
     {
-        // CHEAT BY ONE MOVE. NOTE THAT IF WE HOLD THE C
-        // KEY DOWN IT WILL CONTINUALLY CHEAT
+        // CHEAT BY ONE MOVE, THE BEST ONE THE SOLVER CAN FIND. NOTE THAT
+        // IF WE HOLD THE C KEY DOWN IT WILL CONTINUALLY CHEAT
         if (ke.getKeyCode() == KeyEvent.VK_C)
         {
             LullabyLandSagaDataModel data = (LullabyLandSagaDataModel)game.getDataModel();
-            ArrayList<LullabyLandSagaTile> stack[][] = data.getTileGrid();
             
-            if(data.areTilesMoving())
+            // THE GAME THREAD UPDATES THE DATA WHILE WE LOOK AT IT, SO
+            // WE NEED EXCLUSIVE ACCESS TO IT
+            try
             {
-                return;
+                game.beginUsingData();
+                
+                // ONE HINT AT A TIME, AND ONLY ONCE THE TILES HAVE SETTLED
+                if(data.areTilesMoving() || hintPending)
+                {
+                    return;
+                }
+                
+                // THE SOLVER WORKS ON A COPY OF THE GAME, SO IT CAN SEARCH
+                // ON ITS OWN THREAD WHILE THE GAME CARRIES ON
+                LullabyLandSagaRulesEngine engine = data.createRulesEngine(System.nanoTime());
+                if (engine != null)
+                {
+                    requestHint(data, engine);
+                    return;
+                }
+                
+                // WITHOUT THE RULES FOR THE LEVEL, JUST PLAY THE FIRST MOVE
+                LullabyLandSagaMove move = data.moveOnGrid();
+                if (move != null)
+                    try {
+                    data.playMove(move);
+                } catch (InterruptedException ex) {
+                    Logger.getLogger(LullabyLandKeyHandler.class.getName()).log(Level.SEVERE, null, ex);
+                }
             }
-            // FIND A MOVE IF THERE IS ONE
-            LullabyLandSagaMove move = data.moveOnGrid();
-            if (move != null)
-                try {
-                data.processMove(move, data.isValidMove(stack[move.col1][move.row1].get(0), stack[move.col2][move.row2].get(0)));
-            } catch (InterruptedException ex) {
-                Logger.getLogger(LullabyLandKeyHandler.class.getName()).log(Level.SEVERE, null, ex);
+            finally
+            {
+                // RELEASE THE LOCK
+                game.endUsingData();
             }
         }
         
@@ -78,12 +127,9 @@ public class LullabyLandKeyHandler extends KeyAdapter
         //PRESSING R RESHUFFLES THE GRID
         if(ke.getKeyCode() == KeyEvent.VK_R)
         {
-            for(int i=0; i<10; i++)
-            {
-                LullabyLandSagaDataModel data = (LullabyLandSagaDataModel)game.getDataModel();
-                data.reset(game);
-                data.updateAll(game);
-            }
+            LullabyLandSagaDataModel data = (LullabyLandSagaDataModel)game.getDataModel();
+            data.reset(game);
+            data.updateAll(game);
         }
         //PRESSING L LOSES THE GAME
         if(ke.getKeyCode() == KeyEvent.VK_L)
@@ -109,4 +155,108 @@ public class LullabyLandKeyHandler extends KeyAdapter
             }
         }
     }
+    
+    /**
+     * This method has the solver search for the best move in the game
+     * argument on its own thread, within the time budget, and then makes
+     * the move back on the event thread, as long as the game hasn't moved
+     * on in the meantime. Note that it must be called with the data locked,
+     * so the board it notes is the one the engine was copied from.
+     * 
+     * @param data The data model the move is made in.
+     * 
+     * @param engine A copy of the game as it is now.
+     */
+    private void requestHint(final LullabyLandSagaDataModel data,
+                             final LullabyLandSagaRulesEngine engine)
+    {
+        final long budget = getHintTimeBudget();
+        final int turns = data.getTurns();
+        final long boardHash = data.getBoard().getHash();
+        hintPending = true;
+        hintExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                LullabyLandSagaMove move = null;
+                try
+                {
+                    move = hintSolver.findBestMove(engine, budget);
+                }
+                finally
+                {
+                    final LullabyLandSagaMove hint = move;
+                    SwingUtilities.invokeLater(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            hintPending = false;
+                            applyHint(data, hint, turns, boardHash);
+                        }
+                    });
+                }
+            }
+        });
+    }
+    
+    /**
+     * This method makes the move the solver found, if there is one and
+     * the game is still where it was when the solver started, with the
+     * same turns left and the same tiles on the board, which it isn't if
+     * the board has been dealt again in the meantime.
+     */
+    private void applyHint(LullabyLandSagaDataModel data, LullabyLandSagaMove move,
+                           int turns, long boardHash)
+    {
+        if (move == null)
+            return;
+        
+        // THE GAME MAY BE UPDATING ON ITS OWN THREAD, SO WE CHECK WHERE
+        // IT IS AND MAKE THE MOVE WITH EXCLUSIVE ACCESS TO THE DATA
+        try
+        {
+            game.beginUsingData();
+            if (!game.isCurrentScreenState(GAME_SCREEN_STATE)
+                    || !data.inProgress()
+                    || data.areTilesMoving()
+                    || (data.getBoard() == null)
+                    || (data.getTurns() != turns)
+                    || (data.getBoard().getHash() != boardHash))
+            {
+                return;
+            }
+            try {
+                data.playMove(move);
+            } catch (InterruptedException ex) {
+                Logger.getLogger(LullabyLandKeyHandler.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        finally
+        {
+            // RELEASE THE LOCK
+            game.endUsingData();
+        }
+    }
+    
+    /**
+     * This method gets how long the solver may search for, from the
+     * HINT_TIME_BUDGET property if it's set.
+     * 
+     * @return The time budget, in milliseconds.
+     */
+    private long getHintTimeBudget()
+    {
+        String budget = PropertiesManager.getPropertiesManager().getProperty(
+                LullabyLandSagaPropertyType.HINT_TIME_BUDGET);
+        try
+        {
+            return (budget == null) ? DEFAULT_HINT_TIME_BUDGET : Long.parseLong(budget.trim());
+        }
+        catch(NumberFormatException nfe)
+        {
+            return DEFAULT_HINT_TIME_BUDGET;
+        }
+    }
 }
\ No newline at end of file
@@ -7,12 +7,17 @@ import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
 import lullabylandsaga.LullabyLandSaga.LullabyLandSagaPropertyType;
 import lullabylandsaga.data.LullabyLandLevelRecord;
 import lullabylandsaga.data.LullabyLandSagaDataModel;
+import lullabylandsaga.data.LullabyLandSagaLevel;
 import lullabylandsaga.data.LullabyLandSagaRecord;
 import lullabylandsaga.ui.LullabyLandSagaMiniGame;
 import properties_manager.PropertiesManager;
+import static lullabylandsaga.LullabyLandSagaConstants.*;
 
 /**
  * This class provides services for efficiently loading and saving
@@ -25,6 +30,13 @@ public class LullabyLandSagaFileManager
     // WE'LL LET THE GAME KNOW WHEN DATA LOADING IS COMPLETE
     private LullabyLandSagaMiniGame miniGame;
     
+    // THE LEVEL PACK OPENED FOR EACH LEVEL DIRECTORY, OR null FOR ONE
+    // WITHOUT A PACK, SO EACH IS ONLY LOOKED FOR ONCE
+    private HashMap<String, LullabyLandSagaLevelPack> levelPacks;
+    
+    // THE LEVELS READ, AND THOSE READIED AHEAD OF TIME
+    private LullabyLandSagaLevelCache levelCache;
+    
     /**
      * Constructor for initializing this file manager, it simply keeps
      * the game for later.
@@ -35,6 +47,19 @@ public class LullabyLandSagaFileManager
     {
         // KEEP IT FOR LATER
         miniGame = initMiniGame;
+        levelPacks = new HashMap();
+        levelCache = new LullabyLandSagaLevelCache(this);
+    }
+    
+    /**
+     * Accessor method for getting the cache of levels, which also holds
+     * the boards dealt for them ahead of time.
+     * 
+     * @return The level cache.
+     */
+    public LullabyLandSagaLevelCache getLevelCache()
+    {
+        return levelCache;
     }
 
     /**
@@ -45,49 +70,15 @@ public class LullabyLandSagaFileManager
      */
     public void loadLevel(String levelFile)
     {
-        // LOAD THE RAW DATA SO WE CAN USE IT
-        // OUR LEVEL FILES WILL HAVE THE DIMENSIONS FIRST,
-        // FOLLOWED BY THE GRID VALUES
         try
         {
-            File fileToOpen = new File(levelFile);
-
-            // LET'S USE A FAST LOADING TECHNIQUE. WE'LL LOAD ALL OF THE
-            // BYTES AT ONCE INTO A BYTE ARRAY, AND THEN PICK THAT APART.
-            // THIS IS FAST BECAUSE IT ONLY HAS TO DO FILE READING ONCE
-            byte[] bytes = new byte[Long.valueOf(fileToOpen.length()).intValue()];
-            ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-            FileInputStream fis = new FileInputStream(fileToOpen);
-            BufferedInputStream bis = new BufferedInputStream(fis);
-            
-            // HERE IT IS, THE ONLY READY REQUEST WE NEED
-            bis.read(bytes);
-            bis.close();
-            
-            // NOW WE NEED TO LOAD THE DATA FROM THE BYTE ARRAY
-            DataInputStream dis = new DataInputStream(bais);
-            
-            // NOTE THAT WE NEED TO LOAD THE DATA IN THE SAME
-            // ORDER AND FORMAT AS WE SAVED IT
-            
-            // FIRST READ THE GRID DIMENSIONS
-            int initGridColumns = dis.readInt();
-            int initGridRows = dis.readInt();
-            int[][] newGrid = new int[initGridColumns][initGridRows];
-            
-            // AND NOW ALL THE CELL VALUES
-            for (int i = 0; i < initGridColumns; i++)
-            {                        
-                for (int j = 0; j < initGridRows; j++)
-                {
-                    newGrid[i][j] = dis.readInt();
-                }
-            }
+            // GET THE LEVEL, WHICH MAY ALREADY HAVE BEEN READ
+            LullabyLandSagaLevel level = levelCache.getLevel(levelFile);
             
             // EVERYTHING WENT AS PLANNED SO LET'S MAKE IT PERMANENT
             LullabyLandSagaDataModel dataModel = (LullabyLandSagaDataModel)miniGame.getDataModel();
-            dataModel.initLevelGrid(newGrid, initGridColumns, initGridRows);
-            dataModel.setCurrentLevel(levelFile);
+            dataModel.initLevelGrid(level.getGrid(), level.getColumns(), level.getRows());
+            dataModel.setLevel(level);
             
             miniGame.updateBoundaries();
         }
@@ -98,6 +89,110 @@ public class LullabyLandSagaFileManager
         }
     }    
     
+    /**
+     * This method starts getting the levelFile level ready in the
+     * background, so that loading it later takes no time. Along with
+     * reading it, the board it starts with is dealt, for the next game
+     * started with the tiles the game has now.
+     * 
+     * @param levelFile Level to get ready.
+     */
+    public void prefetchLevel(String levelFile)
+    {
+        LullabyLandSagaDataModel dataModel = (LullabyLandSagaDataModel)miniGame.getDataModel();
+        levelCache.prefetch(levelFile, dataModel.getNextDealSeed(), dataModel.getNextDealSupply());
+    }
+    
+    /**
+     * This method reads the level in the levelFile argument, without
+     * loading it into the game. If the level's directory has a level pack
+     * with the level in it, the level is read straight out of the pack,
+     * which is mapped into memory the first time, so that switching
+     * levels costs almost nothing. Otherwise, or if the level in the pack
+     * is damaged, or its own file has been changed since the pack was
+     * made, it is read from its own file. This may be called from any
+     * thread.
+     * 
+     * @param levelFile Level to read.
+     * 
+     * @return The level read.
+     * 
+     * @throws IOException If the level can't be read or doesn't parse.
+     */
+    public LullabyLandSagaLevel readLevel(String levelFile) throws IOException
+    {
+        File fileToOpen = new File(levelFile);
+        LullabyLandSagaLevelPack pack = getLevelPack(fileToOpen.getParentFile());
+        if ((pack != null) && pack.hasLevel(fileToOpen.getName())
+                && (fileToOpen.lastModified() <= pack.getLastModified()))
+        {
+            try
+            {
+                return pack.readLevel(fileToOpen.getName(), levelFile);
+            }
+            catch(IOException ioe)
+            {
+                // THE LEVEL'S OWN FILE MAY STILL BE GOOD
+            }
+        }
+        
+        // LOAD THE RAW DATA SO WE CAN USE IT
+        // OUR LEVEL FILES HAVE THE DIMENSIONS AND RULES FIRST,
+        // FOLLOWED BY THE GRID VALUES
+        
+        // LET'S USE A FAST LOADING TECHNIQUE. WE'LL LOAD ALL OF THE
+        // BYTES AT ONCE INTO A BYTE ARRAY, AND THEN PICK THAT APART.
+        // THIS IS FAST BECAUSE IT ONLY HAS TO DO FILE READING ONCE
+        byte[] bytes = new byte[Long.valueOf(fileToOpen.length()).intValue()];
+        FileInputStream fis = new FileInputStream(fileToOpen);
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(fis));
+        
+        // HERE IT IS, THE ONLY READ REQUEST WE NEED, WHICH FAILS
+        // RATHER THAN COMING UP SHORT
+        try
+        {
+            dis.readFully(bytes);
+        }
+        finally
+        {
+            dis.close();
+        }
+        
+        // NOW WE PICK THE LEVEL STRAIGHT OUT OF THE BYTE ARRAY, IN
+        // WHICHEVER VERSION OF THE FORMAT IT WAS SAVED
+        return LullabyLandSagaLevel.parse(levelFile, ByteBuffer.wrap(bytes));
+    }
+    
+    /**
+     * Helper method for getting the level pack in the levelDir directory,
+     * opening it the first time it's asked for.
+     */
+    private LullabyLandSagaLevelPack getLevelPack(File levelDir)
+    {
+        String dirPath = (levelDir == null) ? "." : levelDir.getPath();
+        synchronized (levelPacks)
+        {
+            if (!levelPacks.containsKey(dirPath))
+            {
+                LullabyLandSagaLevelPack pack = null;
+                File packFile = new File(dirPath, LEVEL_PACK_FILE_NAME);
+                if (packFile.exists())
+                {
+                    try
+                    {
+                        pack = new LullabyLandSagaLevelPack(packFile);
+                    }
+                    catch(IOException ioe)
+                    {
+                        // THEN THE LEVELS ARE READ FROM THEIR OWN FILES
+                    }
+                }
+                levelPacks.put(dirPath, pack);
+            }
+            return levelPacks.get(dirPath);
+        }
+    }
+    
     /**
      * This method loads the player record from the records file
      * so that the user may view stats.
@@ -0,0 +1,334 @@
+package lullabylandsaga.file;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import lullabylandsaga.data.LullabyLandSagaBoardGenerator;
+import lullabylandsaga.data.LullabyLandSagaLevel;
+import lullabylandsaga.data.LullabyLandSagaMatchEngine;
+import lullabylandsaga.data.LullabyLandSagaRandom;
+
+/**
+ * This class keeps the levels most recently read, and gets levels ready
+ * before they are played, so that starting one takes no time. A level is
+ * prefetched on a background thread while the player is on a screen that
+ * leads to it, which both reads the level and deals the board it will
+ * start with. When the level is then played its board is taken ready
+ * made, as long as it was dealt with the seed and tiles the game ends up
+ * dealing it with, which it checks, so a level plays the same whether or
+ * not it was prefetched.
+ *
+ * A level asked for before its prefetch is done is waited for, which
+ * costs no more than reading it then would have.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaLevelCache
+{
+    // THE MOST LEVELS KEPT, THE ONE USED LEAST RECENTLY GOES FIRST
+    public static final int MAX_CACHED_LEVELS = 4;
+
+    // FOR CACHING THE LEVELS READ ON THE CALLING THREAD AS DONE TASKS
+    private static final Runnable NO_TASK = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+        }
+    };
+
+    // THE FILE MANAGER THE LEVELS ARE READ WITH
+    private LullabyLandSagaFileManager fileManager;
+
+    // THE ONE BACKGROUND THREAD LEVELS ARE READIED ON
+    private ExecutorService executor;
+
+    // THE LEVELS, READ OR BEING READ, AND THE BOARDS DEALT OR BEING DEALT
+    // FOR THEM, BY LEVEL FILE
+    private LinkedHashMap<String, Future<LullabyLandSagaLevel>> levels;
+    private LinkedHashMap<String, Future<PreparedDeal>> deals;
+
+    /**
+     * Constructor for initializing an empty cache, which reads its levels
+     * using the file manager argument.
+     *
+     * @param initFileManager The file manager to read levels with.
+     */
+    public LullabyLandSagaLevelCache(LullabyLandSagaFileManager initFileManager)
+    {
+        fileManager = initFileManager;
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                // SO IT NEVER KEEPS THE GAME FROM EXITING
+                Thread thread = new Thread(r, "LullabyLandSaga level prefetcher");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        levels = makeLeastRecentlyUsedMap();
+        deals = makeLeastRecentlyUsedMap();
+    }
+
+    // LEVEL METHODS
+
+    /**
+     * This method starts getting the level in the levelFile argument ready
+     * on the background thread, reading it and dealing the board it starts
+     * with, unless that is already done or being done.
+     *
+     * @param levelFile The level to get ready.
+     *
+     * @param dealSeed The seed the board will be dealt with.
+     *
+     * @param supply The number of tiles of each type the board will be
+     * dealt from, before those not in the level's palette are left out.
+     */
+    public synchronized void prefetch(final String levelFile, final long dealSeed, int[] supply)
+    {
+        final Future<LullabyLandSagaLevel> levelFuture = getLevelFuture(levelFile);
+
+        // DON'T DEAL THE SAME BOARD TWICE
+        final int[] requestSupply = supply.clone();
+        Future<PreparedDeal> dealFuture = deals.get(levelFile);
+        if ((dealFuture != null) && !dealFuture.isDone())
+            return;
+        if (dealFuture != null)
+        {
+            PreparedDeal prepared = getDone(dealFuture);
+            if ((prepared != null) && (prepared.seed == dealSeed)
+                    && Arrays.equals(prepared.requestSupply, requestSupply))
+                return;
+        }
+
+        deals.put(levelFile, executor.submit(new Callable<PreparedDeal>()
+        {
+            @Override
+            public PreparedDeal call() throws Exception
+            {
+                LullabyLandSagaLevel level = levelFuture.get();
+                int[] dealSupply = requestSupply.clone();
+                for (int type = 0; type < dealSupply.length; type++)
+                {
+                    if (!level.usesTileType(type))
+                        dealSupply[type] = 0;
+                }
+
+                // THE GENERATOR TAKES THE TILES IT DEALS OUT OF THE SUPPLY
+                // IT'S GIVEN, SO IT GETS A COPY
+                LullabyLandSagaBoardGenerator generator
+                        = new LullabyLandSagaBoardGenerator(new LullabyLandSagaMatchEngine());
+                int[][] deal = generator.generate(level.getGrid(), level.getColumns(), level.getRows(),
+                        dealSupply.clone(), new LullabyLandSagaRandom(dealSeed));
+                return new PreparedDeal(dealSeed, requestSupply, dealSupply, deal,
+                        generator.lastDealHasMove());
+            }
+        }));
+    }
+
+    /**
+     * This method gets the level in the levelFile argument, from the cache
+     * if it is there, waiting for it if it is being read, and otherwise
+     * reading it now.
+     *
+     * @param levelFile The level to get.
+     *
+     * @return The level.
+     *
+     * @throws IOException If the level can't be read or doesn't parse.
+     */
+    public LullabyLandSagaLevel getLevel(String levelFile) throws IOException
+    {
+        Future<LullabyLandSagaLevel> levelFuture;
+        synchronized (this)
+        {
+            levelFuture = levels.get(levelFile);
+        }
+        if (levelFuture == null)
+        {
+            LullabyLandSagaLevel level = fileManager.readLevel(levelFile);
+            synchronized (this)
+            {
+                FutureTask<LullabyLandSagaLevel> done = new FutureTask<LullabyLandSagaLevel>(NO_TASK, level);
+                done.run();
+                levels.put(levelFile, done);
+            }
+            return level;
+        }
+
+        try
+        {
+            return levelFuture.get();
+        }
+        catch(InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted reading " + levelFile);
+        }
+        catch(ExecutionException ee)
+        {
+            // FORGET IT, SO IT IS READ AGAIN NEXT TIME
+            synchronized (this)
+            {
+                levels.remove(levelFile);
+            }
+            if (ee.getCause() instanceof IOException)
+                throw (IOException)ee.getCause();
+            throw new IOException("Couldn't read " + levelFile + ": " + ee.getCause());
+        }
+    }
+
+    /**
+     * This method takes the board dealt ahead of time for the level in the
+     * levelFile argument, if it was dealt with the seed and supply
+     * arguments, which are those the board is about to be dealt with. A
+     * board is only taken once.
+     *
+     * @param levelFile The level being dealt.
+     *
+     * @param dealSeed The seed the board is being dealt with.
+     *
+     * @param supply The number of tiles of each type the board is being
+     * dealt from, with those not in the level's palette left out.
+     *
+     * @return The board, as the board generator deals it, or null if none
+     * was dealt with that seed and supply, in which case it must be dealt
+     * now. A board with no move is never given, so the one dealing it finds
+     * that out from the generator.
+     */
+    public int[][] takeDeal(String levelFile, long dealSeed, int[] supply)
+    {
+        Future<PreparedDeal> dealFuture;
+        synchronized (this)
+        {
+            dealFuture = deals.remove(levelFile);
+        }
+        if (dealFuture == null)
+            return null;
+
+        // WAITING FOR ONE BEING DEALT COSTS NO MORE THAN DEALING IT
+        PreparedDeal prepared;
+        try
+        {
+            prepared = dealFuture.get();
+        }
+        catch(InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch(ExecutionException ee)
+        {
+            return null;
+        }
+        if (!matches(prepared, dealSeed, supply) || !prepared.hasMove)
+            return null;
+        return prepared.deal;
+    }
+
+    /**
+     * Helper method that starts reading the level in the levelFile
+     * argument on the background thread, unless it is already read or
+     * being read, returning what will be the level.
+     */
+    private Future<LullabyLandSagaLevel> getLevelFuture(final String levelFile)
+    {
+        Future<LullabyLandSagaLevel> levelFuture = levels.get(levelFile);
+        if (levelFuture == null)
+        {
+            levelFuture = executor.submit(new Callable<LullabyLandSagaLevel>()
+            {
+                @Override
+                public LullabyLandSagaLevel call() throws IOException
+                {
+                    return fileManager.readLevel(levelFile);
+                }
+            });
+            levels.put(levelFile, levelFuture);
+        }
+        return levelFuture;
+    }
+
+    /**
+     * Helper method for testing if the prepared argument was dealt with the
+     * seed and supply arguments.
+     */
+    private static boolean matches(PreparedDeal prepared, long dealSeed, int[] supply)
+    {
+        return (prepared != null)
+                && (prepared.seed == dealSeed)
+                && Arrays.equals(prepared.supply, supply);
+    }
+
+    /**
+     * Helper method for getting what a finished future made, or null if
+     * it failed.
+     */
+    private static <T> T getDone(Future<T> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch(InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch(ExecutionException ee)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Helper method for making a map that drops the entry used least
+     * recently once it has more than MAX_CACHED_LEVELS.
+     */
+    private static <V> LinkedHashMap<String, V> makeLeastRecentlyUsedMap()
+    {
+        return new LinkedHashMap<String, V>(MAX_CACHED_LEVELS * 2, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest)
+            {
+                return size() > MAX_CACHED_LEVELS;
+            }
+        };
+    }
+
+    /**
+     * A board dealt ahead of time, along with the seed and the supply of
+     * tiles it was dealt with, both as asked for and with the tile types
+     * not in the level's palette left out, and whether it has a move.
+     */
+    private static class PreparedDeal
+    {
+        private long seed;
+        private int[] requestSupply;
+        private int[] supply;
+        private int[][] deal;
+        private boolean hasMove;
+
+        private PreparedDeal(long initSeed, int[] initRequestSupply, int[] initSupply, int[][] initDeal,
+                             boolean initHasMove)
+        {
+            seed = initSeed;
+            requestSupply = initRequestSupply;
+            supply = initSupply;
+            deal = initDeal;
+            hasMove = initHasMove;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package lullabylandsaga.file;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import lullabylandsaga.data.LullabyLandSagaLevel;
+
+/**
+ * This class is a level pack, a single file holding many .zom levels,
+ * which is memory-mapped once and then has its levels read straight out
+ * of the mapping, with no more file reading, so switching levels costs no
+ * more than parsing one. The pack starts with an index of the levels in
+ * it, by name, so any one can be found without going through the others.
+ * It is laid out as follows, with all numbers big-endian:
+ *
+ *  - int PACK_MAGIC, then short version and short flags, 0 for now
+ *  - int number of levels
+ *  - for each level, short name length and the name's UTF-8 bytes, then
+ *    int offset of the level from the start of the pack, int length of
+ *    the level and int CRC32 checksum of the level
+ *  - the levels themselves, each a whole .zom file
+ *
+ * A level's checksum is checked the first time it is read, so a damaged
+ * pack is found out rather than played. Levels are named by their file
+ * names, like Level7.zom, and packs are made with write, see the level
+ * writer tool, which the build runs to make the game's pack from its
+ * level files. Only the level files are kept in the repository, so they
+ * are the one place each level is defined.
+ *
+ * Levels may be read by any thread, as each read has its own view of the
+ * mapping.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaLevelPack
+{
+    // EVERY LEVEL PACK STARTS WITH THIS, "LLPK"
+    public static final int PACK_MAGIC = 0x4C4C504B;
+
+    // THE NEWEST VERSION OF THE FORMAT, WHICH IS THE ONE WRITTEN
+    public static final int PACK_VERSION = 1;
+
+    // THE LEVEL NAMES ARE STORED AS UTF-8
+    private static final Charset NAME_CHARSET = Charset.forName("UTF-8");
+
+    // THE WHOLE PACK, MAPPED INTO MEMORY, AND WHEN ITS FILE WAS WRITTEN
+    private MappedByteBuffer mapping;
+    private long lastModified;
+
+    // EACH LEVEL'S INDEX ENTRY, BY NAME, WHICH IS { OFFSET, LENGTH, CRC32 }
+    private HashMap<String, int[]> index;
+
+    // THE LEVELS WHOSE CHECKSUMS HAVE BEEN CHECKED
+    private HashMap<String, Boolean> checked;
+
+    /**
+     * Constructor for opening the pack in the file argument, mapping it
+     * into memory and reading its index.
+     *
+     * @param packFile The level pack file.
+     *
+     * @throws IOException If the file can't be read or isn't a level pack.
+     */
+    public LullabyLandSagaLevelPack(File packFile) throws IOException
+    {
+        lastModified = packFile.lastModified();
+
+        // ONCE IT IS MAPPED THE FILE CAN BE CLOSED, THE MAPPING STAYS
+        RandomAccessFile raf = new RandomAccessFile(packFile, "r");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        index = new HashMap<String, int[]>();
+        checked = new HashMap<String, Boolean>();
+        try
+        {
+            ByteBuffer buffer = mapping.duplicate();
+            if (buffer.getInt() != PACK_MAGIC)
+                throw new IOException("Not a level pack: " + packFile);
+            int version = buffer.getShort() & 0xFFFF;
+            buffer.getShort();
+            if (version != PACK_VERSION)
+                throw new IOException("Unsupported level pack version " + version + " in " + packFile);
+
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++)
+            {
+                byte[] nameBytes = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(nameBytes);
+                int[] entry = { buffer.getInt(), buffer.getInt(), buffer.getInt() };
+                if ((entry[0] < 0) || (entry[1] < 0) || (entry[0] > mapping.capacity() - entry[1]))
+                    throw new IOException("Bad level pack index in " + packFile);
+                index.put(new String(nameBytes, NAME_CHARSET), entry);
+            }
+        }
+        catch(BufferUnderflowException bue)
+        {
+            throw new IOException("Level pack " + packFile + " ends too soon");
+        }
+    }
+
+    // ACCESSOR METHODS
+
+    /**
+     * Accessor method for testing if this pack has a level by the name
+     * argument.
+     *
+     * @param levelName The level's file name, like Level7.zom.
+     *
+     * @return true if the level is in the pack, false otherwise.
+     */
+    public boolean hasLevel(String levelName)
+    {
+        return index.containsKey(levelName);
+    }
+
+    /**
+     * Accessor method for getting when this pack's file was written, so
+     * that level files changed since can be read instead.
+     *
+     * @return The time the file was last modified, as File gives it.
+     */
+    public long getLastModified()
+    {
+        return lastModified;
+    }
+
+    /**
+     * Accessor method for getting the number of levels in this pack.
+     */
+    public int getLevelCount()
+    {
+        return index.size();
+    }
+
+    // READING METHODS
+
+    /**
+     * This method reads a level out of this pack, straight from its
+     * mapping, checking its checksum the first time it is read.
+     *
+     * @param levelName The level's file name in the pack, like Level7.zom.
+     *
+     * @param levelPath The name to give the level read, usually the path
+     * its file would have.
+     *
+     * @return The level read.
+     *
+     * @throws IOException If the level isn't in the pack, has been damaged,
+     * or doesn't parse.
+     */
+    public LullabyLandSagaLevel readLevel(String levelName, String levelPath) throws IOException
+    {
+        int[] entry = index.get(levelName);
+        if (entry == null)
+            throw new IOException("No level " + levelName + " in level pack");
+
+        // EACH READ GETS ITS OWN VIEW OF THE LEVEL'S BYTES
+        ByteBuffer buffer = mapping.duplicate();
+        buffer.limit(entry[0] + entry[1]);
+        buffer.position(entry[0]);
+        checkLevel(levelName, buffer, entry[2]);
+        return LullabyLandSagaLevel.parse(levelPath, buffer);
+    }
+
+    /**
+     * Helper method that checks the CRC32 checksum of a level's bytes the
+     * first time it is read, leaving the buffer where it was.
+     */
+    private void checkLevel(String levelName, ByteBuffer buffer, int checksum) throws IOException
+    {
+        synchronized (checked)
+        {
+            if (checked.containsKey(levelName))
+                return;
+        }
+
+        // THE LEVELS ARE SMALL, SO THEY ARE COPIED OUT IN ONE GO
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.mark();
+        buffer.get(bytes);
+        buffer.reset();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        if ((int)crc.getValue() != checksum)
+            throw new IOException("Level " + levelName + " in level pack is damaged");
+
+        synchronized (checked)
+        {
+            checked.put(levelName, Boolean.TRUE);
+        }
+    }
+
+    // WRITING METHODS
+
+    /**
+     * This method writes a level pack holding the levels argument, each
+     * stored in the newest version of the .zom format under the file
+     * name it was read from.
+     *
+     * @param packFile The file to write the pack to.
+     *
+     * @param levels The levels to put in the pack, which must have
+     * different file names.
+     *
+     * @throws IOException If the file can't be written.
+     */
+    public static void write(File packFile, ArrayList<LullabyLandSagaLevel> levels)
+            throws IOException
+    {
+        // FIRST PUT EACH LEVEL INTO BYTES, AND WORK OUT HOW BIG THE INDEX IS
+        byte[][] names = new byte[levels.size()][];
+        byte[][] levelBytes = new byte[levels.size()][];
+        int indexLength = 12;
+        for (int i = 0; i < levels.size(); i++)
+        {
+            names[i] = new File(levels.get(i).getName()).getName().getBytes(NAME_CHARSET);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(baos);
+            levels.get(i).write(dos);
+            dos.flush();
+            levelBytes[i] = baos.toByteArray();
+            indexLength += 2 + names[i].length + 12;
+        }
+
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(packFile)));
+        try
+        {
+            // THE HEADER AND INDEX
+            dos.writeInt(PACK_MAGIC);
+            dos.writeShort(PACK_VERSION);
+            dos.writeShort(0);
+            dos.writeInt(levels.size());
+            int offset = indexLength;
+            for (int i = 0; i < levels.size(); i++)
+            {
+                CRC32 crc = new CRC32();
+                crc.update(levelBytes[i], 0, levelBytes[i].length);
+                dos.writeShort(names[i].length);
+                dos.write(names[i]);
+                dos.writeInt(offset);
+                dos.writeInt(levelBytes[i].length);
+                dos.writeInt((int)crc.getValue());
+                offset += levelBytes[i].length;
+            }
+
+            // AND THE LEVELS
+            for (int i = 0; i < levels.size(); i++)
+            {
+                dos.write(levelBytes[i]);
+            }
+        }
+        finally
+        {
+            dos.close();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package lullabylandsaga.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import lullabylandsaga.data.LullabyLandSagaLevel;
+import static lullabylandsaga.LullabyLandSagaConstants.*;
+
+/**
+ * This is the tool for bringing level files up to the newest version of
+ * the .zom format, so that each carries its own rules rather than having
+ * them looked up by its level number. It reads each file given in
+ * whichever version it is in, and writes it back in the newest one. It is
+ * run as:
+ *
+ *   java lullabylandsaga.file.LullabyLandSagaLevelWriter levelFile...
+ *
+ * Once a level file is in the newest version, its rules, palette and
+ * spawn columns can be changed by a level editor or by hand without
+ * changing any code.
+ *
+ * It also packs level files into a level pack, leaving the files as they
+ * are, when run as:
+ *
+ *   java lullabylandsaga.file.LullabyLandSagaLevelWriter -pack packFile levelFileOrDir...
+ *
+ * where each directory given stands for all the .zom files in it. The
+ * build makes the game's level pack this way, whenever a level file is
+ * newer than the pack, and the game reads a level from its own file
+ * rather than the pack when the file has been changed since the pack was
+ * made, so a level file can be edited without making the pack again.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaLevelWriter
+{
+    /**
+     * Rewrites each level file named in the args in the newest version of
+     * the .zom format, or packs them into a level pack.
+     *
+     * @param args The paths of the level files to rewrite, or -pack, the
+     * path of the pack and the paths of the level files to pack.
+     */
+    public static void main(String[] args)
+    {
+        if ((args.length == 0) || (args[0].equals("-pack") && (args.length < 3)))
+        {
+            System.out.println("Usage: java lullabylandsaga.file.LullabyLandSagaLevelWriter levelFile...");
+            System.out.println("   or: java lullabylandsaga.file.LullabyLandSagaLevelWriter -pack packFile levelFile...");
+            return;
+        }
+        if (args[0].equals("-pack"))
+        {
+            // SO THE BUILD KNOWS WHEN IT FAILED
+            if (!writePack(args))
+                System.exit(1);
+            return;
+        }
+        for (String levelFile : args)
+        {
+            try
+            {
+                LullabyLandSagaLevel level = readLevel(new File(levelFile));
+                writeLevel(level, new File(levelFile));
+                System.out.println("Wrote " + levelFile
+                        + (level.hasRules() ? "" : " (no rules)"));
+            }
+            catch(IOException ioe)
+            {
+                System.out.println("Couldn't rewrite " + levelFile + ": " + ioe.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Packs the level files named in the args after "-pack packFile" into
+     * that pack file, along with the .zom files in any directories named.
+     *
+     * @return true if the pack was written, false otherwise.
+     */
+    private static boolean writePack(String[] args)
+    {
+        try
+        {
+            ArrayList<LullabyLandSagaLevel> levels = new ArrayList<LullabyLandSagaLevel>();
+            for (int i = 2; i < args.length; i++)
+            {
+                File file = new File(args[i]);
+                if (!file.isDirectory())
+                {
+                    levels.add(readLevel(file));
+                    continue;
+                }
+
+                // IN NAME ORDER, SO THE SAME LEVELS ALWAYS MAKE THE SAME PACK
+                File[] files = file.listFiles();
+                Arrays.sort(files);
+                for (File levelFile : files)
+                {
+                    if (levelFile.getName().endsWith(LEVEL_FILE_EXTENSION))
+                        levels.add(readLevel(levelFile));
+                }
+            }
+            LullabyLandSagaLevelPack.write(new File(args[1]), levels);
+            System.out.println("Packed " + levels.size() + " levels into " + args[1]);
+            return true;
+        }
+        catch(IOException ioe)
+        {
+            System.out.println("Couldn't write " + args[1] + ": " + ioe.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Reads the level in the file argument, whatever version it is in.
+     *
+     * @param file The level file to read.
+     *
+     * @return The level read.
+     *
+     * @throws IOException If the file can't be read or doesn't hold a level.
+     */
+    public static LullabyLandSagaLevel readLevel(File file) throws IOException
+    {
+        byte[] bytes = new byte[(int)file.length()];
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try
+        {
+            dis.readFully(bytes);
+        }
+        finally
+        {
+            dis.close();
+        }
+        return LullabyLandSagaLevel.parse(file.getPath(), ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Writes the level argument to the file argument in the newest version
+     * of the .zom format, replacing whatever was there.
+     *
+     * @param level The level to write.
+     *
+     * @param file The file to write it to.
+     *
+     * @throws IOException If the file can't be written.
+     */
+    public static void writeLevel(LullabyLandSagaLevel level, File file) throws IOException
+    {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try
+        {
+            level.write(dos);
+        }
+        finally
+        {
+            dos.close();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package lullabylandsaga.sim;
+
+import java.util.ArrayList;
+import java.util.Random;
+import lullabylandsaga.data.LullabyLandSagaMove;
+import lullabylandsaga.data.LullabyLandSagaRulesEngine;
+
+/**
+ * This policy plays each swap on a copy of the game and picks the one
+ * that scores the most, cascades and all. Since the tiles that fill the
+ * grid in are random, what a swap scores on the copy is only a guess at
+ * what it will score in the game.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaGreedyPolicy implements LullabyLandSagaMovePolicy
+{
+    @Override
+    public LullabyLandSagaMove chooseMove(LullabyLandSagaRulesEngine engine, Random random)
+    {
+        ArrayList<LullabyLandSagaMove> moves = engine.getMoveIndex().getAllMoves();
+        LullabyLandSagaMove bestMove = null;
+        int bestScore = Integer.MIN_VALUE;
+        for (LullabyLandSagaMove move : moves)
+        {
+            LullabyLandSagaRulesEngine copy = new LullabyLandSagaRulesEngine(engine, random.nextLong());
+            copy.playMove(move);
+            if (copy.getScore() > bestScore)
+            {
+                bestScore = copy.getScore();
+                bestMove = move;
+            }
+        }
+        return bestMove;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "greedy";
+    }
+}
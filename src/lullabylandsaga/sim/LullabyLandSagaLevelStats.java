@@ -0,0 +1,214 @@
+package lullabylandsaga.sim;
+
+import java.io.PrintStream;
+import lullabylandsaga.data.LullabyLandSagaLevel;
+import lullabylandsaga.data.LullabyLandSagaRulesEngine;
+
+/**
+ * This class collects the results of the games simulated on a level. Each
+ * simulation task fills in its own and they are then merged, so nothing
+ * here needs to be shared between threads.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaLevelStats
+{
+    // SCORES ARE BUCKETED BY HOW MUCH OF THE OBJECTIVE THEY REACH, IN
+    // STEPS OF 10%, WITH THE LAST BUCKET FOR ALL THOSE PAST 200%
+    public static final int SCORE_BUCKET_PERCENT = 10;
+    public static final int NUM_SCORE_BUCKETS = 21;
+
+    // CASCADE DEPTHS ARE COUNTED PER SWAP, WITH THE LAST BUCKET FOR
+    // ALL THOSE THIS DEEP OR DEEPER
+    public static final int NUM_CASCADE_BUCKETS = 16;
+
+    // THE LEVEL THE GAMES WERE PLAYED ON
+    private LullabyLandSagaLevel level;
+
+    // THE GAMES PLAYED AND WON
+    private int games;
+    private int wins;
+
+    // THE SCORES REACHED
+    private long scoreSum;
+    private double scoreSquareSum;
+    private int minScore;
+    private int maxScore;
+    private int[] scoreBuckets;
+
+    // THE SWAPS PLAYED, THE CASCADES THEY SET OFF, AND THE RESHUFFLES
+    private long swaps;
+    private long reshuffles;
+    private long[] cascadeBuckets;
+
+    /**
+     * Constructor for initializing empty stats for the level argument.
+     *
+     * @param initLevel The level the games are played on.
+     */
+    public LullabyLandSagaLevelStats(LullabyLandSagaLevel initLevel)
+    {
+        level = initLevel;
+        minScore = Integer.MAX_VALUE;
+        maxScore = Integer.MIN_VALUE;
+        scoreBuckets = new int[NUM_SCORE_BUCKETS];
+        cascadeBuckets = new long[NUM_CASCADE_BUCKETS];
+    }
+
+    // ACCESSOR METHODS
+
+    public LullabyLandSagaLevel getLevel()
+    {
+        return level;
+    }
+
+    public int getGames()
+    {
+        return games;
+    }
+
+    public int getWins()
+    {
+        return wins;
+    }
+
+    /**
+     * Accessor method for getting the share of the games that were won.
+     *
+     * @return The win rate, from 0 to 1.
+     */
+    public double getWinRate()
+    {
+        return (games == 0) ? 0 : (double)wins / games;
+    }
+
+    public double getMeanScore()
+    {
+        return (games == 0) ? 0 : (double)scoreSum / games;
+    }
+
+    public double getScoreDeviation()
+    {
+        if (games == 0)
+            return 0;
+        double mean = getMeanScore();
+        return Math.sqrt(Math.max(0, (scoreSquareSum / games) - (mean * mean)));
+    }
+
+    // MUTATOR METHODS
+
+    /**
+     * Mutator method for recording a swap, along with how many cascades
+     * it set off.
+     *
+     * @param cascadeDepth The number of cascades that followed the swap.
+     */
+    public void addSwap(int cascadeDepth)
+    {
+        swaps++;
+        cascadeBuckets[Math.min(cascadeDepth, NUM_CASCADE_BUCKETS - 1)]++;
+    }
+
+    /**
+     * Mutator method for recording a game that has been played out.
+     *
+     * @param engine The game, which must be over.
+     */
+    public void addGame(LullabyLandSagaRulesEngine engine)
+    {
+        int score = engine.getScore();
+        games++;
+        if (engine.isWon())
+            wins++;
+        scoreSum += score;
+        scoreSquareSum += (double)score * score;
+        minScore = Math.min(minScore, score);
+        maxScore = Math.max(maxScore, score);
+        reshuffles += engine.getReshuffleCount();
+
+        long percent = (score * 100L) / Math.max(1, level.getScoreObjective());
+        scoreBuckets[(int)Math.min(percent / SCORE_BUCKET_PERCENT, NUM_SCORE_BUCKETS - 1)]++;
+    }
+
+    /**
+     * Mutator method for adding the stats argument to these.
+     *
+     * @param stats Stats for more games on the same level.
+     */
+    public void merge(LullabyLandSagaLevelStats stats)
+    {
+        games += stats.games;
+        wins += stats.wins;
+        scoreSum += stats.scoreSum;
+        scoreSquareSum += stats.scoreSquareSum;
+        minScore = Math.min(minScore, stats.minScore);
+        maxScore = Math.max(maxScore, stats.maxScore);
+        swaps += stats.swaps;
+        reshuffles += stats.reshuffles;
+        for (int i = 0; i < NUM_SCORE_BUCKETS; i++)
+        {
+            scoreBuckets[i] += stats.scoreBuckets[i];
+        }
+        for (int i = 0; i < NUM_CASCADE_BUCKETS; i++)
+        {
+            cascadeBuckets[i] += stats.cascadeBuckets[i];
+        }
+    }
+
+    /**
+     * This method prints a report of these stats.
+     *
+     * @param out Where to print the report.
+     */
+    public void printReport(PrintStream out)
+    {
+        out.printf("%s: %d turns, objective %d, %d clouds%n",
+                    level.getName(), level.getTurns(),
+                    level.getScoreObjective(), level.getClouds());
+        if (games == 0)
+        {
+            out.println("  no games played");
+            return;
+        }
+        out.printf("  games %d, wins %d, win rate %.2f%%%n", games, wins, getWinRate() * 100);
+        out.printf("  score mean %.0f, deviation %.0f, min %d, max %d%n",
+                    getMeanScore(), getScoreDeviation(), minScore, maxScore);
+        out.printf("  reshuffles per game %.2f%n", (double)reshuffles / games);
+
+        // THE SCORE DISTRIBUTION, AS A SHARE OF THE OBJECTIVE
+        out.println("  score / objective:");
+        for (int i = 0; i < NUM_SCORE_BUCKETS; i++)
+        {
+            if (scoreBuckets[i] == 0)
+                continue;
+            String range = (i == NUM_SCORE_BUCKETS - 1)
+                    ? String.format("%d%%+", i * SCORE_BUCKET_PERCENT)
+                    : String.format("%d-%d%%", i * SCORE_BUCKET_PERCENT, (i + 1) * SCORE_BUCKET_PERCENT);
+            out.printf("    %-9s %8d  %s%n", range, scoreBuckets[i], bar(scoreBuckets[i], games));
+        }
+
+        // AND HOW DEEP THE CASCADES WENT
+        out.println("  cascades per swap:");
+        for (int i = 0; i < NUM_CASCADE_BUCKETS; i++)
+        {
+            if (cascadeBuckets[i] == 0)
+                continue;
+            String depth = (i == NUM_CASCADE_BUCKETS - 1) ? i + "+" : String.valueOf(i);
+            out.printf("    %-9s %8d  %s%n", depth, cascadeBuckets[i], bar(cascadeBuckets[i], swaps));
+        }
+    }
+
+    /**
+     * Makes a bar of up to 40 characters for count out of total.
+     */
+    private String bar(long count, long total)
+    {
+        int length = (int)((count * 40) / Math.max(1, total));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++)
+        {
+            sb.append('#');
+        }
+        return sb.toString();
+    }
+}
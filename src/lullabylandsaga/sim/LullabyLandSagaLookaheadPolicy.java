@@ -0,0 +1,137 @@
+package lullabylandsaga.sim;
+
+import java.util.ArrayList;
+import java.util.Random;
+import lullabylandsaga.data.LullabyLandSagaMove;
+import lullabylandsaga.data.LullabyLandSagaRulesEngine;
+
+/**
+ * This policy looks a few swaps ahead. Each swap is played on a copy of
+ * the game, and then the best few of them, by what they score, have the
+ * swaps that could follow them looked at the same way, and so on down to
+ * the depth asked for. A swap is then picked by the most the game could
+ * score along the way from it. Only following the best few swaps at each
+ * step keeps the cost down to what's needed to play through many games.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaLookaheadPolicy implements LullabyLandSagaMovePolicy
+{
+    // HOW MANY SWAPS DEEP TO LOOK, AND HOW MANY SWAPS TO FOLLOW AT EACH
+    private int depth;
+    private int beamWidth;
+
+    /**
+     * Constructor for initializing this policy.
+     *
+     * @param initDepth How many swaps ahead to look, counting the one
+     * being picked, which must be at least 1.
+     *
+     * @param initBeamWidth How many of the best swaps to look past at each
+     * step, which must be at least 1.
+     */
+    public LullabyLandSagaLookaheadPolicy(int initDepth, int initBeamWidth)
+    {
+        depth = Math.max(1, initDepth);
+        beamWidth = Math.max(1, initBeamWidth);
+    }
+
+    @Override
+    public LullabyLandSagaMove chooseMove(LullabyLandSagaRulesEngine engine, Random random)
+    {
+        ArrayList<LullabyLandSagaMove> moves = engine.getMoveIndex().getAllMoves();
+        if (moves.isEmpty())
+            return null;
+
+        // PLAY EACH SWAP ONCE
+        LullabyLandSagaRulesEngine[] results = new LullabyLandSagaRulesEngine[moves.size()];
+        for (int i = 0; i < moves.size(); i++)
+        {
+            results[i] = new LullabyLandSagaRulesEngine(engine, random.nextLong());
+            results[i].playMove(moves.get(i));
+        }
+
+        // AND LOOK PAST THE BEST OF THEM
+        int[] followed = pickBest(results);
+        int bestMove = followed[0];
+        int bestScore = Integer.MIN_VALUE;
+        for (int i : followed)
+        {
+            int score = lookAhead(results[i], depth - 1, random);
+            if (score > bestScore)
+            {
+                bestScore = score;
+                bestMove = i;
+            }
+        }
+        return moves.get(bestMove);
+    }
+
+    @Override
+    public String getName()
+    {
+        return "lookahead";
+    }
+
+    /**
+     * Finds the most the game argument could score in the next swapsLeft
+     * swaps, following only the best few swaps at each step.
+     */
+    private int lookAhead(LullabyLandSagaRulesEngine engine, int swapsLeft, Random random)
+    {
+        if ((swapsLeft == 0) || engine.isOver())
+            return engine.getScore();
+        ArrayList<LullabyLandSagaMove> moves = engine.getMoveIndex().getAllMoves();
+        if (moves.isEmpty())
+            return engine.getScore();
+
+        LullabyLandSagaRulesEngine[] results = new LullabyLandSagaRulesEngine[moves.size()];
+        for (int i = 0; i < moves.size(); i++)
+        {
+            results[i] = new LullabyLandSagaRulesEngine(engine, random.nextLong());
+            results[i].playMove(moves.get(i));
+        }
+        if (swapsLeft == 1)
+            return results[pickBest(results)[0]].getScore();
+
+        int bestScore = Integer.MIN_VALUE;
+        for (int i : pickBest(results))
+        {
+            bestScore = Math.max(bestScore, lookAhead(results[i], swapsLeft - 1, random));
+        }
+        return bestScore;
+    }
+
+    /**
+     * Finds the games that scored the most, up to the beam width of them,
+     * the best first.
+     *
+     * @return Their positions in the results argument.
+     */
+    private int[] pickBest(LullabyLandSagaRulesEngine[] results)
+    {
+        int[] best = new int[Math.min(beamWidth, results.length)];
+        int count = 0;
+        for (int i = 0; i < results.length; i++)
+        {
+            // INSERT IT IN ORDER, DROPPING THE WORST WHEN FULL
+            int score = results[i].getScore();
+            int pos = count;
+            while ((pos > 0) && (results[best[pos - 1]].getScore() < score))
+            {
+                pos--;
+            }
+            if (pos >= best.length)
+                continue;
+            int last = Math.min(count, best.length - 1);
+            for (int j = last; j > pos; j--)
+            {
+                best[j] = best[j - 1];
+            }
+            best[pos] = i;
+            if (count < best.length)
+                count++;
+        }
+        return best;
+    }
+}
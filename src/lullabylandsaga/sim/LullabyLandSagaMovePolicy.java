@@ -0,0 +1,36 @@
+package lullabylandsaga.sim;
+
+import java.util.Random;
+import lullabylandsaga.data.LullabyLandSagaMove;
+import lullabylandsaga.data.LullabyLandSagaRulesEngine;
+
+/**
+ * This interface is for the ways a simulated player picks their swaps.
+ * A policy is shared by all the games being played at once, so it must
+ * keep no state of its own between calls.
+ *
+ * @author Thomas Marion
+ */
+public interface LullabyLandSagaMovePolicy
+{
+    /**
+     * This method picks the next swap to play.
+     *
+     * @param engine The game being played. The policy may look at it and
+     * copy it, but must not play on it.
+     *
+     * @param random The random number generator for the game being played,
+     * which is all the policy may use for its random choices.
+     *
+     * @return The swap to play, or null if there is none.
+     */
+    public LullabyLandSagaMove chooseMove(LullabyLandSagaRulesEngine engine, Random random);
+
+    /**
+     * Accessor method for getting the name of this policy, as it is asked
+     * for on the command line and shown in reports.
+     *
+     * @return The name of this policy.
+     */
+    public String getName();
+}
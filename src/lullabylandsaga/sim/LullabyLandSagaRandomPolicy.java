@@ -0,0 +1,26 @@
+package lullabylandsaga.sim;
+
+import java.util.Random;
+import lullabylandsaga.data.LullabyLandSagaMove;
+import lullabylandsaga.data.LullabyLandSagaRulesEngine;
+
+/**
+ * This policy plays any swap that makes a match, each as likely as any
+ * other, which is about the worst a player who knows the rules could do.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaRandomPolicy implements LullabyLandSagaMovePolicy
+{
+    @Override
+    public LullabyLandSagaMove chooseMove(LullabyLandSagaRulesEngine engine, Random random)
+    {
+        return engine.getMoveIndex().getRandomMove(random);
+    }
+
+    @Override
+    public String getName()
+    {
+        return "random";
+    }
+}
@@ -0,0 +1,115 @@
+package lullabylandsaga.sim;
+
+import java.util.concurrent.RecursiveTask;
+import lullabylandsaga.data.LullabyLandSagaLevel;
+import lullabylandsaga.data.LullabyLandSagaMove;
+import lullabylandsaga.data.LullabyLandSagaRandom;
+import lullabylandsaga.data.LullabyLandSagaRulesEngine;
+
+/**
+ * This task plays a range of games on a level for the fork-join pool,
+ * splitting the range in half until it is small enough to just play.
+ * Each game is seeded by its number in the range, so the results are the
+ * same no matter how the work is split up or how many threads do it.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaSimulationTask extends RecursiveTask<LullabyLandSagaLevelStats>
+{
+    private static final long serialVersionUID = 1L;
+
+    // RANGES OF AT MOST THIS MANY GAMES ARE PLAYED RATHER THAN SPLIT
+    private static final int GAMES_PER_TASK = 8;
+
+    // WHAT TO PLAY AND HOW
+    private LullabyLandSagaLevel level;
+    private int[] dealSupply;
+    private int[] fillerSupply;
+    private LullabyLandSagaMovePolicy policy;
+    private long seed;
+
+    // THE GAMES TO PLAY, FROM firstGame UP TO BUT NOT INCLUDING endGame
+    private int firstGame;
+    private int endGame;
+
+    /**
+     * Constructor for initializing a task for a range of games.
+     *
+     * @param initLevel The level to play.
+     *
+     * @param initDealSupply The tiles of each type to deal the board from.
+     *
+     * @param initFillerSupply The tiles of each type to fill the grid in from.
+     *
+     * @param initPolicy How the swaps are picked.
+     *
+     * @param initSeed The seed all the games' seeds are made from.
+     *
+     * @param initFirstGame The number of the first game to play.
+     *
+     * @param initEndGame The number of the game after the last one to play.
+     */
+    public LullabyLandSagaSimulationTask(LullabyLandSagaLevel initLevel,
+                                            int[] initDealSupply,
+                                            int[] initFillerSupply,
+                                            LullabyLandSagaMovePolicy initPolicy,
+                                            long initSeed,
+                                            int initFirstGame,
+                                            int initEndGame)
+    {
+        level = initLevel;
+        dealSupply = initDealSupply;
+        fillerSupply = initFillerSupply;
+        policy = initPolicy;
+        seed = initSeed;
+        firstGame = initFirstGame;
+        endGame = initEndGame;
+    }
+
+    @Override
+    protected LullabyLandSagaLevelStats compute()
+    {
+        // SPLIT BIG RANGES IN HALF
+        if ((endGame - firstGame) > GAMES_PER_TASK)
+        {
+            int middle = (firstGame + endGame) >>> 1;
+            LullabyLandSagaSimulationTask firstHalf = new LullabyLandSagaSimulationTask(
+                    level, dealSupply, fillerSupply, policy, seed, firstGame, middle);
+            LullabyLandSagaSimulationTask secondHalf = new LullabyLandSagaSimulationTask(
+                    level, dealSupply, fillerSupply, policy, seed, middle, endGame);
+            firstHalf.fork();
+            LullabyLandSagaLevelStats stats = secondHalf.compute();
+            stats.merge(firstHalf.join());
+            return stats;
+        }
+
+        // AND PLAY THE SMALL ONES
+        LullabyLandSagaLevelStats stats = new LullabyLandSagaLevelStats(level);
+        for (int game = firstGame; game < endGame; game++)
+        {
+            playGame(game, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Plays the game with the number argument to the end, adding how it
+     * went to the stats argument.
+     */
+    private void playGame(int game, LullabyLandSagaLevelStats stats)
+    {
+        // EACH GAME HAS ITS OWN RANDOM NUMBERS, SPLIT BETWEEN THE ENGINE
+        // AND THE POLICY, SO NO TWO THREADS SHARE A GENERATOR
+        LullabyLandSagaRandom random = new LullabyLandSagaRandom(LullabyLandSagaRandom.nthLong(seed, game));
+        LullabyLandSagaRulesEngine engine = new LullabyLandSagaRulesEngine(
+                level, dealSupply, fillerSupply, random.nextLong());
+        while (!engine.isOver())
+        {
+            LullabyLandSagaMove move = policy.chooseMove(engine, random);
+            if ((move == null) || !engine.playMove(move))
+                break;
+            stats.addSwap(engine.getLastCascadeDepth());
+        }
+        stats.addGame(engine);
+    }
+}
@@ -0,0 +1,146 @@
+package lullabylandsaga.sim;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import lullabylandsaga.data.LullabyLandSagaLevel;
+import static lullabylandsaga.LullabyLandSagaConstants.*;
+
+/**
+ * This is the batch simulator used to balance the levels. It plays every
+ * level in the level directory over and over using the rules engine, with
+ * no display, spreading the games over all the cores, and reports how
+ * often each level was won, how the scores were spread out, and how deep
+ * the cascades went. It is run as:
+ *
+ *   java lullabylandsaga.sim.LullabyLandSagaSimulator [games] [policy] [levelDir] [seed]
+ *
+ * where policy is random, greedy or lookahead. By default it plays 1000
+ * random games on each level in ./data/lullaland/.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaSimulator
+{
+    // DEFAULTS FOR WHAT'S NOT GIVEN ON THE COMMAND LINE
+    private static final int DEFAULT_GAMES = 1000;
+    private static final String DEFAULT_POLICY = "random";
+    private static final String DEFAULT_LEVEL_DIR = "./data/lullaland/";
+    private static final long DEFAULT_SEED = 0;
+
+    // HOW FAR AND HOW WIDE THE LOOKAHEAD POLICY LOOKS
+    private static final int LOOKAHEAD_DEPTH = 2;
+    private static final int LOOKAHEAD_BEAM_WIDTH = 4;
+
+    /**
+     * This is where the simulator starts.
+     *
+     * @param args The games per level, the policy, the level directory
+     * and the seed, each of which may be left off.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int games = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        String policyName = (args.length > 1) ? args[1] : DEFAULT_POLICY;
+        String levelDir = (args.length > 2) ? args[2] : DEFAULT_LEVEL_DIR;
+        long seed = (args.length > 3) ? Long.parseLong(args[3]) : DEFAULT_SEED;
+
+        LullabyLandSagaMovePolicy policy = makePolicy(policyName);
+        if (policy == null)
+        {
+            System.err.println("Unknown policy " + policyName + ", use random, greedy or lookahead");
+            System.exit(1);
+        }
+
+        // EVERY TYPE OF TILE HAS ONE IMAGE
+        int[] dealSupply = new int[TILE_TYPES.length];
+        int[] fillerSupply = new int[TILE_TYPES.length];
+        Arrays.fill(dealSupply, TILES_PER_IMAGE);
+        Arrays.fill(fillerSupply, FILLER_TILES_PER_IMAGE);
+
+        ArrayList<LullabyLandSagaLevel> levels = loadLevels(levelDir);
+        ForkJoinPool pool = new ForkJoinPool();
+        System.out.printf("Playing %d %s games per level on %d threads%n%n",
+                            games, policy.getName(), pool.getParallelism());
+
+        long startTime = System.nanoTime();
+        for (LullabyLandSagaLevel level : levels)
+        {
+            long levelStartTime = System.nanoTime();
+            LullabyLandSagaLevelStats stats = pool.invoke(new LullabyLandSagaSimulationTask(
+                    level, dealSupply, fillerSupply, policy, seed, 0, games));
+            stats.printReport(System.out);
+            System.out.printf("  took %.1f s%n%n", (System.nanoTime() - levelStartTime) / 1e9);
+        }
+        pool.shutdown();
+        System.out.printf("All levels took %.1f s%n", (System.nanoTime() - startTime) / 1e9);
+    }
+
+    /**
+     * Makes the policy with the name argument.
+     *
+     * @return The policy, or null if there is none by that name.
+     */
+    public static LullabyLandSagaMovePolicy makePolicy(String name)
+    {
+        if (name.equals("random"))
+            return new LullabyLandSagaRandomPolicy();
+        if (name.equals("greedy"))
+            return new LullabyLandSagaGreedyPolicy();
+        if (name.equals("lookahead"))
+            return new LullabyLandSagaLookaheadPolicy(LOOKAHEAD_DEPTH, LOOKAHEAD_BEAM_WIDTH);
+        return null;
+    }
+
+    /**
+     * Loads all the levels with rules in the directory argument, in order
+     * of their level numbers.
+     *
+     * @param levelDir The directory with the .zom files in it.
+     *
+     * @return The levels loaded.
+     */
+    public static ArrayList<LullabyLandSagaLevel> loadLevels(String levelDir) throws IOException
+    {
+        File[] files = new File(levelDir).listFiles();
+        if (files == null)
+            throw new IOException("Not a level directory: " + levelDir);
+
+        ArrayList<LullabyLandSagaLevel> levels = new ArrayList();
+        for (File file : files)
+        {
+            if (LullabyLandSagaLevel.parseLevelNumber(file.getName()) == 0)
+                continue;
+            byte[] bytes = new byte[(int)file.length()];
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try
+            {
+                dis.readFully(bytes);
+            }
+            finally
+            {
+                dis.close();
+            }
+            LullabyLandSagaLevel level = LullabyLandSagaLevel.parse(file.getPath(), ByteBuffer.wrap(bytes));
+            if (level.hasRules())
+                levels.add(level);
+        }
+        Collections.sort(levels, new Comparator<LullabyLandSagaLevel>()
+        {
+            @Override
+            public int compare(LullabyLandSagaLevel level1, LullabyLandSagaLevel level2)
+            {
+                return Integer.compare(level1.getNumber(), level2.getNumber());
+            }
+        });
+        return levels;
+    }
+}
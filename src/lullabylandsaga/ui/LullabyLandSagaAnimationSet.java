@@ -0,0 +1,155 @@
+package lullabylandsaga.ui;
+
+import java.util.Arrays;
+import mini_game.MiniGame;
+
+/**
+ * This class keeps the tiles that are currently being animated. A tile is
+ * only ever in it once, no matter how many times it is added, since each
+ * tile remembers its own position in the set, which also makes testing
+ * if a tile is in the set cost nothing. Tiles stay in the order they were
+ * added, and those that reach their targets are dropped as the set is
+ * updated, all in a single pass.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaAnimationSet
+{
+    // THE TILES BEING ANIMATED, THE FIRST size OF THEM ARE IN USE
+    private LullabyLandSagaTile[] tiles;
+    private int size;
+
+    /**
+     * Constructor for initializing an empty set.
+     */
+    public LullabyLandSagaAnimationSet()
+    {
+        tiles = new LullabyLandSagaTile[64];
+        size = 0;
+    }
+
+    // ACCESSOR METHODS
+
+    /**
+     * Accessor method for getting the number of tiles being animated.
+     *
+     * @return The number of tiles in this set.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Accessor method for testing if no tiles are being animated.
+     *
+     * @return true if this set is empty, false otherwise.
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Accessor method for getting a tile being animated.
+     *
+     * @param index The position of the tile, which must be less than size().
+     *
+     * @return The tile at that position, in the order they were added.
+     */
+    public LullabyLandSagaTile get(int index)
+    {
+        return tiles[index];
+    }
+
+    /**
+     * Accessor method for testing if the tile argument is being animated.
+     *
+     * @return true if the tile is in this set, false otherwise.
+     */
+    public boolean contains(LullabyLandSagaTile tile)
+    {
+        return tile.getAnimationIndex() >= 0;
+    }
+
+    // MUTATOR METHODS
+
+    /**
+     * Mutator method for adding a tile to be animated. Adding a tile that
+     * is already in the set does nothing.
+     *
+     * @param tile The tile to animate.
+     *
+     * @return true if the tile was added, false if it was already in the set.
+     */
+    public boolean add(LullabyLandSagaTile tile)
+    {
+        if (contains(tile))
+            return false;
+
+        if (size == tiles.length)
+            tiles = Arrays.copyOf(tiles, size * 2);
+        tiles[size] = tile;
+        tile.setAnimationIndex(size);
+        size++;
+        return true;
+    }
+
+    /**
+     * Mutator method for adding the first count tiles of the batch
+     * argument to be animated, making room for all of them at once. Tiles
+     * already in the set are skipped.
+     *
+     * @param batch The tiles to animate.
+     *
+     * @param count The number of tiles in the batch to add.
+     */
+    public void addAll(LullabyLandSagaTile[] batch, int count)
+    {
+        if ((size + count) > tiles.length)
+            tiles = Arrays.copyOf(tiles, Math.max(size + count, size * 2));
+        for (int i = 0; i < count; i++)
+        {
+            add(batch[i]);
+        }
+    }
+
+    /**
+     * Called each step of the game, this method updates every tile being
+     * animated and drops those that have reached their targets. The tiles
+     * that are left are shifted down over the gaps as we go, so they keep
+     * their order and each one is looked at only once.
+     *
+     * @param game The game the tiles are part of.
+     */
+    public void update(MiniGame game)
+    {
+        int kept = 0;
+        for (int i = 0; i < size; i++)
+        {
+            LullabyLandSagaTile tile = tiles[i];
+
+            // THIS WILL UPDATE IT'S POSITION USING ITS VELOCITY
+            tile.update(game);
+
+            // IF IT'S REACHED ITS DESTINATION, DROP IT
+            if (!tile.isMovingToTarget())
+            {
+                tile.setAnimationIndex(-1);
+            }
+            else
+            {
+                tiles[kept] = tile;
+                tile.setAnimationIndex(kept);
+                kept++;
+            }
+        }
+
+        // LET GO OF THE TILES THAT WERE SHIFTED DOWN
+        for (int i = kept; i < size; i++)
+        {
+            tiles[i] = null;
+        }
+        size = kept;
+    }
+}
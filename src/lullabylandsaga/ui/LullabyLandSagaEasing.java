@@ -0,0 +1,67 @@
+package lullabylandsaga.ui;
+
+/**
+ * This enum lists the ways a tile may move toward its target. A LINEAR
+ * tile moves at a constant velocity, while the others follow a curve
+ * that takes them from where they start to their target over the same
+ * number of steps a LINEAR tile would take, only with a different feel.
+ *
+ * @author Thomas Marion
+ */
+public enum LullabyLandSagaEasing
+{
+    // A CONSTANT VELOCITY
+    LINEAR,
+
+    // FAST AT FIRST AND SLOWING DOWN TO SETTLE, GOOD FOR TILES FALLING
+    EASE_OUT,
+
+    // OVERSHOOTING THE TARGET AND BOUNCING BACK, GOOD FOR SWAPS
+    SPRING;
+
+    // THE SPRING CURVE, A DAMPED WAVE, SAMPLED ONCE HERE SO THAT MOVING A
+    // TILE ALONG IT TAKES NO TRIG, ONLY A LOOKUP BETWEEN TWO SAMPLES
+    private static final int SPRING_SAMPLES = 64;
+    private static final float[] SPRING_TABLE = new float[SPRING_SAMPLES + 1];
+    static
+    {
+        for (int i = 0; i < SPRING_SAMPLES; i++)
+        {
+            double t = (double)i / SPRING_SAMPLES;
+            SPRING_TABLE[i] = 1 - (float)(Math.cos(t * Math.PI * 2.5) * Math.exp(-6 * t));
+        }
+
+        // WHICH IS EXACTLY 1 AT THE END
+        SPRING_TABLE[SPRING_SAMPLES] = 1;
+    }
+
+    /**
+     * This method computes how far along the curve a tile is.
+     *
+     * @param t How far through the move the tile is in time, from 0 to 1.
+     *
+     * @return How far from its start to its target the tile should be,
+     * which is 0 at the start and 1 at the end, though it may go past 1
+     * in between.
+     */
+    public float apply(float t)
+    {
+        switch (this)
+        {
+            case EASE_OUT:
+                float u = 1 - t;
+                return 1 - (u * u * u);
+            case SPRING:
+                if (t <= 0)
+                    return 0;
+                if (t >= 1)
+                    return 1;
+                float sample = t * SPRING_SAMPLES;
+                int i = (int)sample;
+                float f = sample - i;
+                return SPRING_TABLE[i] + (f * (SPRING_TABLE[i + 1] - SPRING_TABLE[i]));
+            default:
+                return t;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package lullabylandsaga.ui;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import mini_game.Sprite;
+import mini_game.SpriteType;
+import static lullabylandsaga.LullabyLandSagaConstants.*;
+
+/**
+ * This class is a snapshot of everything that needs to be drawn for one
+ * frame, taken while the game data is locked so that the panel can then
+ * draw it without the lock. It records the sprites to draw in the order
+ * they are to be drawn, along with the stats and debugging info. The
+ * sprites that rarely change, like the background and the tiles that have
+ * settled into the grid, come first and make up the static layer, which
+ * carries a version that only changes when its contents do. Frames
+ * are pooled, so once drawn a frame is cleared and filled again rather
+ * than being thrown away, and its arrays only grow when they must.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaFrame
+{
+    // THE SPRITES TO DRAW, IN ORDER, THE FIRST spriteCount ARE IN USE
+    private int spriteCount;
+    private SpriteType[] spriteTypes;
+    private String[] states;
+    private int[] xs;
+    private int[] ys;
+
+    // TILES ARE DRAWN ON TOP OF A BLANK TILE, WITH THEIR STATE'S COLOR,
+    // SO FOR THEM WE ALSO RECORD THEIR TILE STATE
+    private boolean[] tiles;
+    private LullabyLandSagaTileState[] tileStates;
+
+    // THE FIRST staticCount SPRITES MAKE UP THE STATIC LAYER, AND ITS
+    // VERSION IS THE DATA MODEL'S VIEW VERSION WHEN IT WAS RECORDED, SO
+    // IF IT MATCHES THE ONE OF AN EARLIER FRAME THE LAYER HASN'T CHANGED
+    private int staticCount;
+    private long staticVersion;
+
+    // THE STATS, WHICH ARE ONLY SHOWN DURING A GAME
+    private boolean statsVisible;
+    private String gameTime;
+
+    // THE DEBUGGING INFO, INCLUDING THE OUTLINE OF EACH GRID CELL
+    private boolean debugging;
+    private int cellCount;
+    private int[] cellXs;
+    private int[] cellYs;
+    private ArrayList<String> debugText;
+    private int debugTextX;
+    private int debugTextY;
+
+    // FRAMES ARE NUMBERED IN THE ORDER THEY ARE FILLED
+    private long sequence;
+
+    // HOW FAR THE GAME IS BETWEEN STEPS, MOVING TILES ARE RECORDED
+    // THAT FAR BETWEEN WHERE THEIR LAST TWO STEPS PUT THEM
+    private float interpolation;
+
+    /**
+     * Constructor for initializing an empty frame.
+     */
+    public LullabyLandSagaFrame()
+    {
+        spriteTypes = new SpriteType[0];
+        states = new String[0];
+        xs = new int[0];
+        ys = new int[0];
+        tiles = new boolean[0];
+        tileStates = new LullabyLandSagaTileState[0];
+        cellXs = new int[0];
+        cellYs = new int[0];
+        debugText = new ArrayList();
+        sequence = -1;
+    }
+
+    // ACCESSOR METHODS
+
+    public long getSequence()           { return sequence; }
+    public int getSpriteCount()         { return spriteCount; }
+    public SpriteType getSpriteType(int i) { return spriteTypes[i]; }
+    public String getState(int i)       { return states[i]; }
+    public int getX(int i)              { return xs[i]; }
+    public int getY(int i)              { return ys[i]; }
+    public boolean isTile(int i)        { return tiles[i]; }
+    public LullabyLandSagaTileState getTileState(int i) { return tileStates[i]; }
+    public int getStaticCount()         { return staticCount; }
+    public long getStaticVersion()      { return staticVersion; }
+    public boolean isStatsVisible()     { return statsVisible; }
+    public String getGameTime()         { return gameTime; }
+    public boolean isDebugging()        { return debugging; }
+    public int getCellCount()           { return cellCount; }
+    public int getCellX(int i)          { return cellXs[i]; }
+    public int getCellY(int i)          { return cellYs[i]; }
+    public ArrayList<String> getDebugText() { return debugText; }
+    public int getDebugTextX()          { return debugTextX; }
+    public int getDebugTextY()          { return debugTextY; }
+
+    // MUTATOR METHODS, USED WHILE FILLING THE FRAME
+
+    /**
+     * Empties this frame so that it may be filled again.
+     *
+     * @param initSequence The number of the frame about to be filled.
+     */
+    public void clear(long initSequence)
+    {
+        sequence = initSequence;
+        interpolation = 0;
+        for (int i = 0; i < spriteCount; i++)
+        {
+            spriteTypes[i] = null;
+            states[i] = null;
+            tileStates[i] = null;
+        }
+        spriteCount = 0;
+        staticCount = 0;
+        staticVersion = 0;
+        statsVisible = false;
+        gameTime = null;
+        debugging = false;
+        cellCount = 0;
+        debugText.clear();
+    }
+
+    /**
+     * Records how far the game is between its steps, which must be done
+     * before any moving tiles are recorded.
+     */
+    public void setInterpolation(float initInterpolation)
+    {
+        interpolation = initInterpolation;
+    }
+
+    /**
+     * Records the sprite argument to be drawn, but only if it is visible.
+     */
+    public void addSprite(Sprite s)
+    {
+        if (!s.getState().equals(INVISIBLE_STATE))
+            add(s, null, s.getX(), s.getY());
+    }
+
+    /**
+     * Records the tile argument to be drawn, but only if it is visible.
+     */
+    public void addTile(LullabyLandSagaTile tile)
+    {
+        if (tile.getTileState() != LullabyLandSagaTileState.INVISIBLE)
+            add(tile, tile.getTileState(),
+                    tile.getRenderX(interpolation), tile.getRenderY(interpolation));
+    }
+
+    /**
+     * Ends the static layer, meaning all the sprites recorded so far make
+     * it up, and records its version.
+     *
+     * @param version The data model's view version, which changes whenever
+     * the board, the tiles' states or the screen do.
+     */
+    public void endStaticLayer(long version)
+    {
+        staticCount = spriteCount;
+        staticVersion = version;
+    }
+
+    /**
+     * This method works out the area of the screen where this frame differs
+     * from the previous one, so that only that area needs to be repainted.
+     * Sprites are compared by their place in the draw order, and for each
+     * one that differs both its old and new bounds are added to the damage.
+     *
+     * @param previous The frame drawn before this one.
+     *
+     * @param damage Receives the area that differs, which is empty if the
+     * frames look the same.
+     *
+     * @return true if the damage was worked out, false if the frames are
+     * too different to compare and the whole screen must be repainted.
+     */
+    public boolean findDamage(LullabyLandSagaFrame previous, Rectangle damage)
+    {
+        damage.setBounds(0, 0, 0, 0);
+        if ((previous.spriteCount != spriteCount)
+                || previous.debugging || debugging)
+            return false;
+
+        for (int i = 0; i < spriteCount; i++)
+        {
+            if ((previous.spriteTypes[i] != spriteTypes[i])
+                    || !previous.states[i].equals(states[i])
+                    || (previous.xs[i] != xs[i])
+                    || (previous.ys[i] != ys[i])
+                    || (previous.tiles[i] != tiles[i]))
+            {
+                addBounds(damage, previous.spriteTypes[i], previous.xs[i], previous.ys[i]);
+                addBounds(damage, spriteTypes[i], xs[i], ys[i]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Makes this frame a copy of the frame argument, reusing its arrays.
+     *
+     * @param frame The frame to copy.
+     */
+    public void copyFrom(LullabyLandSagaFrame frame)
+    {
+        clear(frame.sequence);
+        interpolation = frame.interpolation;
+        ensureCapacity(frame.spriteCount);
+        System.arraycopy(frame.spriteTypes, 0, spriteTypes, 0, frame.spriteCount);
+        System.arraycopy(frame.states, 0, states, 0, frame.spriteCount);
+        System.arraycopy(frame.xs, 0, xs, 0, frame.spriteCount);
+        System.arraycopy(frame.ys, 0, ys, 0, frame.spriteCount);
+        System.arraycopy(frame.tiles, 0, tiles, 0, frame.spriteCount);
+        System.arraycopy(frame.tileStates, 0, tileStates, 0, frame.spriteCount);
+        spriteCount = frame.spriteCount;
+        staticCount = frame.staticCount;
+        staticVersion = frame.staticVersion;
+        statsVisible = frame.statsVisible;
+        gameTime = frame.gameTime;
+        debugging = frame.debugging;
+        debugText.addAll(frame.debugText);
+        debugTextX = frame.debugTextX;
+        debugTextY = frame.debugTextY;
+        for (int i = 0; i < frame.cellCount; i++)
+        {
+            addCell(frame.cellXs[i], frame.cellYs[i]);
+        }
+    }
+
+    /**
+     * Records the stats to be shown.
+     */
+    public void setStats(String initGameTime)
+    {
+        statsVisible = true;
+        gameTime = initGameTime;
+    }
+
+    /**
+     * Records the debugging text to be drawn, and turns on the drawing
+     * of the grid cells.
+     */
+    public void setDebugText(ArrayList<String> initDebugText, int initX, int initY)
+    {
+        debugging = true;
+        debugText.addAll(initDebugText);
+        debugTextX = initX;
+        debugTextY = initY;
+    }
+
+    /**
+     * Records the outline of a grid cell to be drawn while debugging.
+     */
+    public void addCell(int x, int y)
+    {
+        if (cellCount == cellXs.length)
+        {
+            int capacity = Math.max(16, cellCount * 2);
+            cellXs = Arrays.copyOf(cellXs, capacity);
+            cellYs = Arrays.copyOf(cellYs, capacity);
+        }
+        cellXs[cellCount] = x;
+        cellYs[cellCount] = y;
+        cellCount++;
+    }
+
+    /**
+     * Helper method that records a sprite, growing the arrays if needed.
+     * Only tiles have a tile state, for other sprites it is null.
+     */
+    private void add(Sprite s, LullabyLandSagaTileState tileState, float x, float y)
+    {
+        ensureCapacity(spriteCount + 1);
+        spriteTypes[spriteCount] = s.getSpriteType();
+        states[spriteCount] = s.getState();
+        xs[spriteCount] = (int)x;
+        ys[spriteCount] = (int)y;
+        tiles[spriteCount] = (tileState != null);
+        tileStates[spriteCount] = tileState;
+        spriteCount++;
+    }
+
+    /**
+     * Helper method that grows the sprite arrays, if needed, so they can
+     * hold at least the number of sprites argument.
+     */
+    private void ensureCapacity(int numSprites)
+    {
+        if (numSprites > xs.length)
+        {
+            int capacity = Math.max(Math.max(64, xs.length * 2), numSprites);
+            spriteTypes = Arrays.copyOf(spriteTypes, capacity);
+            states = Arrays.copyOf(states, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            tiles = Arrays.copyOf(tiles, capacity);
+            tileStates = Arrays.copyOf(tileStates, capacity);
+        }
+    }
+
+    /**
+     * Helper method that adds the bounds of a sprite to the damage.
+     */
+    private void addBounds(Rectangle damage, SpriteType spriteType, int x, int y)
+    {
+        int width = spriteType.getWidth();
+        int height = spriteType.getHeight();
+        if (damage.isEmpty())
+        {
+            damage.setBounds(x, y, width, height);
+        }
+        else
+        {
+            damage.add(x, y);
+            damage.add(x + width, y + height);
+        }
+    }
+}
@@ -98,6 +98,21 @@ public class LullabyLandSagaMiniGame extends MiniGame
         return currentLevel;
     }
     
+    /**
+     * Accessor method for getting the path to the file of the level
+     * numbered by the level argument.
+     * 
+     * @param level The level's number.
+     * 
+     * @return The path to the level's file.
+     */
+    public String getLevelFile(int level)
+    {
+        PropertiesManager props = PropertiesManager.getPropertiesManager();
+        String dataPath = props.getProperty(LullabyLandSagaPropertyType.DATA_PATH);
+        return dataPath + LEVEL_FILE_PREFIX + level + LEVEL_FILE_EXTENSION;
+    }
+    
     /**
      * Used for testing to see if the current screen state matches
      * the testScreenState argument. If it mates, true is returned,
@@ -131,6 +146,18 @@ public class LullabyLandSagaMiniGame extends MiniGame
    
     
     
+    /**
+     * This method starts getting the level numbered by the level argument
+     * ready in the background, so that it can be played right away.
+     * 
+     * @param level The level's number.
+     */
+    public void prefetchLevel(int level)
+    {
+        if (level > 0)
+            fileManager.prefetchLevel(getLevelFile(level));
+    }
+    
     /**
      * This method forces the file manager to save the current player record.
      */
@@ -142,15 +169,14 @@ public class LullabyLandSagaMiniGame extends MiniGame
     
     public void switchToLevelWinScreen()
     {
-        String number = Character.toString(((LullabyLandSagaDataModel)data).getCurrentLevel().charAt(24));
-        if(((LullabyLandSagaDataModel)data).getCurrentLevel().charAt(25) == '0' )
-        {
-            number = number.concat("0");
-        }
-        String state = "LEVEL_X_WIN_SCREEN_STATE";
-        String end = state.substring(7,state.length());
-        state = state.substring(0,6).concat(number).concat(end);
+        int number = ((LullabyLandSagaDataModel)data).getLevel().getNumber();
+        String state = "LEVEL_" + number + "_WIN_SCREEN_STATE";
+        
+        // THE PLAYER MAY PLAY AGAIN OR GO ON TO THE NEXT LEVEL
+        fileManager.prefetchLevel(((LullabyLandSagaDataModel)data).getCurrentLevel());
+        prefetchLevel(((LullabyLandSagaDataModel)data).getLatestLevel());
         guiDecor.get(BACKGROUND_TYPE).setState(state);
+        ((LullabyLandSagaDataModel)data).markViewChanged();
         currentScreenState = state;
         
         
@@ -163,15 +189,13 @@ public class LullabyLandSagaMiniGame extends MiniGame
     
     public void switchToLevelLoseScreen()
     {
-        String number = Character.toString(((LullabyLandSagaDataModel)data).getCurrentLevel().charAt(24));
-        if(((LullabyLandSagaDataModel)data).getCurrentLevel().charAt(25) == '0' )
-        {
-            number = number.concat("0");
-        }
-        String state = "LEVEL_X_LOSE_SCREEN_STATE";
-        String end = state.substring(7,state.length());
-        state = state.substring(0,6).concat(number).concat(end);
+        int number = ((LullabyLandSagaDataModel)data).getLevel().getNumber();
+        String state = "LEVEL_" + number + "_LOSE_SCREEN_STATE";
+        
+        // THE PLAYER WILL MOST LIKELY TRY AGAIN
+        fileManager.prefetchLevel(((LullabyLandSagaDataModel)data).getCurrentLevel());
         guiDecor.get(BACKGROUND_TYPE).setState(state);
+        ((LullabyLandSagaDataModel)data).markViewChanged();
         currentScreenState = state;
         
         
@@ -191,8 +215,12 @@ public class LullabyLandSagaMiniGame extends MiniGame
             levelHolder = levelHolder.concat(Character.toString(screen.charAt(7)));
         }
         guiDecor.get(BACKGROUND_TYPE).setState(screen);
+        ((LullabyLandSagaDataModel)data).markViewChanged();
         currentScreenState = screen;
         
+        // THE LEVEL IS READIED WHILE THE PLAYER LOOKS AT ITS SCORES
+        prefetchLevel(level);
+        
         // DEACTIVATE THE TOOLBAR AND ITS CONTROLS
         guiButtons.get(SAGA_SCREEN_LEFT_BUTTON_TYPE).setState(INVISIBLE_STATE);
         guiButtons.get(SAGA_SCREEN_LEFT_BUTTON_TYPE).setEnabled(false);
@@ -234,6 +262,7 @@ public class LullabyLandSagaMiniGame extends MiniGame
         ((LullabyLandSagaDataModel)data).moveAllTilesToStack();
         // CHANGE THE BACKGROUND
         guiDecor.get(BACKGROUND_TYPE).setState(GAME_SCREEN_STATE);
+        ((LullabyLandSagaDataModel)data).markViewChanged();
         
         // DEACTIVATE THE LEVEL SELECT BUTTONS
         ArrayList<String> splashes = props.getPropertyOptionsList(LullabyLandSagaPropertyType.SPLASH_OPTIONS);
@@ -254,12 +283,13 @@ public class LullabyLandSagaMiniGame extends MiniGame
         guiButtons.get(PLAY_AGAIN_BUTTON_TYPE).setEnabled(false);
         guiButtons.get(PLAY_AGAIN_BUTTON_TYPE).setState(INVISIBLE_STATE);
         
+        // CHANGE THE SCREEN STATE FIRST, SO THAT SHOULD THE BOARD BE
+        // DEALT WITH NO MOVES, THE LOSE SCREEN THAT ENDS THE GAME STAYS
+        currentScreenState = GAME_SCREEN_STATE;
+        
         // MOVE THE TILES TO THE STACK AND MAKE THEM VISIBLE
         ((LullabyLandSagaDataModel)data).enableTiles(true);
         data.reset(this);
-        
-        // AND CHANGE THE SCREEN STATE
-        currentScreenState = GAME_SCREEN_STATE;
     
     }
     
@@ -271,6 +301,7 @@ public class LullabyLandSagaMiniGame extends MiniGame
     {
         // CHANGE THE BACKGROUND
         guiDecor.get(BACKGROUND_TYPE).setState(SPLASH_SCREEN_STATE);
+        ((LullabyLandSagaDataModel)data).markViewChanged();
         
         
         // DEACTIVATE THE TOOLBAR CONTROLS
@@ -322,6 +353,7 @@ public class LullabyLandSagaMiniGame extends MiniGame
         guiDialogs.get(WIN_DIALOG_TYPE).setState(INVISIBLE_STATE);
         guiDialogs.get(LOSS_DIALOG_TYPE).setState(INVISIBLE_STATE);
         guiDecor.get(BACKGROUND_TYPE).setState(SAGA_SCREEN_1_STATE);
+        ((LullabyLandSagaDataModel)data).markViewChanged();
         
         // DEACTIVATE THE LEVEL SELECT BUTTONS
         ArrayList<String> splashes = props.getPropertyOptionsList(LullabyLandSagaPropertyType.SPLASH_OPTIONS);
@@ -361,6 +393,9 @@ public class LullabyLandSagaMiniGame extends MiniGame
         guiButtons.get(PLAY_AGAIN_BUTTON_TYPE).setEnabled(false);
         
         currentScreenState = SAGA_SCREEN_1_STATE;
+        
+        // THE NEWEST LEVEL IS THE ONE MOST LIKELY TO BE PICKED
+        prefetchLevel(((LullabyLandSagaDataModel)data).getLatestLevel());
     }
     
     public void enableValidLevels()
@@ -431,6 +466,7 @@ public class LullabyLandSagaMiniGame extends MiniGame
         }
         
         guiDecor.get(BACKGROUND_TYPE).setState(currentScreenState);
+        ((LullabyLandSagaDataModel)data).markViewChanged();
     }
     
     /**
@@ -968,9 +1004,10 @@ public class LullabyLandSagaMiniGame extends MiniGame
         SplashHandler sh = new SplashHandler(this, "Back");
         guiButtons.get(SCORE_SCREEN_BUTTON_TYPE).setActionListener(sh);
         
-        GameScreenHandler gsh = new GameScreenHandler(this);
+        GameScreenHandler gsh = new GameScreenHandler(this, false);
         guiButtons.get(SCORE_TO_GAME_SCREEN_BUTTON_TYPE).setActionListener(gsh);
-        guiButtons.get(PLAY_AGAIN_BUTTON_TYPE).setActionListener(gsh);
+        GameScreenHandler pah = new GameScreenHandler(this, true);
+        guiButtons.get(PLAY_AGAIN_BUTTON_TYPE).setActionListener(pah);
         
         //USES LEVEL SCORE HANDLER FOR GAME SCREEN
         LevelScoreHandler lsh22 = new LevelScoreHandler(this, 0);
@@ -1010,7 +1047,8 @@ public class LullabyLandSagaMiniGame extends MiniGame
     
     /**
      * Updates the state of all gui controls according to the 
-     * current game conditions.
+     * current game conditions, and then publishes the frame
+     * the panel will render.
      */
     @Override
     public void updateGUI()
@@ -1038,5 +1076,9 @@ public class LullabyLandSagaMiniGame extends MiniGame
                 }
             }
         }
+        
+        // NOW THAT EVERYTHING IS UP TO DATE, TAKE A SNAPSHOT
+        // OF IT ALL FOR THE PANEL TO RENDER
+        ((LullabyLandSagaPanel)canvas).publishFrame();
     }    
 }
\ No newline at end of file
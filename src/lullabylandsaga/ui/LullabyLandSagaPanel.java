@@ -3,12 +3,16 @@ package lullabylandsaga.ui;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.swing.JPanel;
 import mini_game.MiniGame;
 import mini_game.Sprite;
@@ -37,6 +41,33 @@ public class LullabyLandSagaPanel extends JPanel
     // WE'LL USE THIS AS THE BASE IMAGE FOR RENDERING SELECTED TILES
     private BufferedImage blankTileSelectedImage;
     
+    // EVERY TILE IN EVERY STATE, ALREADY COMPOSITED ON ITS BLANK TILE
+    private LullabyLandSagaTileAtlas tileAtlas;
+    
+    // WE RENDER FROM SNAPSHOTS OF THE GAME, CALLED FRAMES, SO THAT
+    // RENDERING NEVER HAS TO LOCK THE GAME DATA. THERE ARE THREE, ONE
+    // BEING FILLED BY THE TIMER THREAD, ONE BEING RENDERED, AND THE
+    // MOST RECENTLY FILLED ONE, WHICH IS PASSED BETWEEN THE TWO
+    private LullabyLandSagaFrame backFrame;
+    private LullabyLandSagaFrame frontFrame;
+    private AtomicReference<LullabyLandSagaFrame> latestFrame;
+    private long frameCount;
+    
+    // THE STATIC LAYER OF THE LAST FRAME RENDERED, KEPT IN AN ACCELERATED
+    // IMAGE SO THAT IT ONLY NEEDS TO BE RENDERED AGAIN WHEN IT CHANGES
+    private VolatileImage staticLayer;
+    private long staticLayerVersion;
+    
+    // WE KEEP A COPY OF THE LAST FRAME PUBLISHED SO WE CAN COMPARE THE
+    // NEXT ONE TO IT, AND ONLY REPAINT THE AREA WHERE THEY DIFFER
+    private LullabyLandSagaFrame previousFrame;
+    private Rectangle frameDamage;
+    
+    // THE AREA WAITING TO BE REPAINTED, THIS IS SHARED BY THE TIMER
+    // THREAD AND WHOEVER ASKS FOR A REPAINT, SO WE SYNCHRONIZE ON IT
+    private Rectangle pendingDamage;
+    private boolean fullRepaintPending;
+    
     /**
      * This constructor stores the game and data references,
      * which we'll need for rendering.
@@ -53,11 +84,20 @@ public class LullabyLandSagaPanel extends JPanel
         numberFormatter = NumberFormat.getNumberInstance();
         numberFormatter.setMinimumFractionDigits(3);
         numberFormatter.setMaximumFractionDigits(3);
+        backFrame = new LullabyLandSagaFrame();
+        frontFrame = new LullabyLandSagaFrame();
+        latestFrame = new AtomicReference(new LullabyLandSagaFrame());
+        frameCount = 0;
+        previousFrame = new LullabyLandSagaFrame();
+        frameDamage = new Rectangle();
+        pendingDamage = new Rectangle();
+        fullRepaintPending = true;
     }
     
     // MUTATOR METHODS
         // -setBlankTileImage
         // -setBlankTileSelectedImage
+        // -setTileAtlas
     
     /**
      * This mutator method sets the base image to use for rendering tiles.
@@ -79,138 +119,255 @@ public class LullabyLandSagaPanel extends JPanel
     {
         blankTileSelectedImage = initBlankTileSelectedImage;
     }
+    
+    /**
+     * This mutator method sets the atlas of pre-composited tiles to render
+     * tiles from. Note that it should be built from the blank tile images
+     * set for this panel.
+     * 
+     * @param initTileAtlas The atlas to render tiles from.
+     */
+    public void setTileAtlas(LullabyLandSagaTileAtlas initTileAtlas)
+    {
+        tileAtlas = initTileAtlas;
+    }
+
+    /**
+     * This method takes a snapshot of everything to be rendered, locking
+     * the game data while it does so, and makes it the latest frame for
+     * rendering. It should be called once per frame by the thread that
+     * updates the game.
+     */
+    public void publishFrame()
+    {
+        try
+        {
+            // MAKE SURE WE HAVE EXCLUSIVE ACCESS TO THE GAME DATA
+            game.beginUsingData();
+            
+            backFrame.clear(frameCount++);
+            
+            // MOVING TILES ARE DRAWN BETWEEN WHERE THE GAME'S LAST
+            // TWO STEPS PUT THEM, DEPENDING ON WHEN THIS FRAME IS
+            backFrame.setInterpolation(data.getInterpolation());
+            
+            // THE STATIC LAYER, MEANING THE BACKGROUND, WHICHEVER
+            // SCREEN WE'RE ON, THE DECOR, AND THE SETTLED TILES
+            captureBackground(backFrame);
+            captureDecor(backFrame);
+            captureSettledTiles(backFrame);
+            backFrame.endStaticLayer(data.getViewVersion());
+            
+            // THEN THE BUTTONS
+            captureButtons(backFrame);
+            
+            // AND THE TILES THAT ARE ON THE MOVE
+            captureMovingTiles(backFrame);
+            
+            // AND THE DIALOGS, IF THERE ARE ANY
+            captureDialogs(backFrame);
+            
+            // AND THE TIME AND TILES STATS
+            captureStats(backFrame);
+            
+            // AND THE DEBUGGING INFO
+            captureDebugging(backFrame);
+        }
+        finally
+        {
+            // RELEASE THE LOCK
+            game.endUsingData();
+        }
+        
+        // WORK OUT WHAT NEEDS REPAINTING
+        boolean partial = backFrame.findDamage(previousFrame, frameDamage);
+        previousFrame.copyFrom(backFrame);
+        synchronized (pendingDamage)
+        {
+            if (!partial)
+            {
+                fullRepaintPending = true;
+            }
+            else if (!frameDamage.isEmpty())
+            {
+                if (pendingDamage.isEmpty())
+                    pendingDamage.setBounds(frameDamage);
+                else
+                    pendingDamage.add(frameDamage);
+            }
+        }
+        
+        // AND HAND IT OVER, GETTING BACK THE FRAME IT REPLACES
+        backFrame = latestFrame.getAndSet(backFrame);
+    }
+    
+    /**
+     * The game asks for a repaint every frame, so rather than repainting
+     * the whole panel each time we only repaint the area that changed in
+     * the frames published since the last repaint, and nothing at all if
+     * nothing changed.
+     */
+    @Override
+    public void repaint()
+    {
+        // THIS MAY BE CALLED WHILE THE PANEL IS STILL BEING CONSTRUCTED
+        if (pendingDamage == null)
+        {
+            super.repaint();
+            return;
+        }
+        
+        synchronized (pendingDamage)
+        {
+            if (fullRepaintPending)
+            {
+                super.repaint();
+            }
+            else if (!pendingDamage.isEmpty())
+            {
+                super.repaint(pendingDamage.x, pendingDamage.y,
+                                pendingDamage.width, pendingDamage.height);
+            }
+            fullRepaintPending = false;
+            pendingDamage.setBounds(0, 0, 0, 0);
+        }
+    }
 
     /**
      * This is where rendering starts. This method is called each frame, and the
      * entire game application is rendered here with the help of a number of
-     * helper methods.
+     * helper methods. Note that it renders the latest frame published, and so
+     * never needs to lock the game data.
      * 
      * @param g The Graphics context for this panel.
      */
     @Override
     public void paintComponent(Graphics g)
     {
-        try
+        // CLEAR THE PANEL
+        super.paintComponent(g);
+        
+        // SWAP IN THE LATEST FRAME, IF IT'S NEWER THAN THE ONE WE HAVE
+        if (latestFrame.get().getSequence() > frontFrame.getSequence())
         {
-            // MAKE SURE WE HAVE EXCLUSIVE ACCESS TO THE GAME DATA
-            game.beginUsingData();
+            frontFrame = latestFrame.getAndSet(frontFrame);
+        }
+        LullabyLandSagaFrame frame = frontFrame;
         
-            // CLEAR THE PANEL
-            super.paintComponent(g);
+        // RENDER THE BACKGROUND, DECOR AND SETTLED TILES
+        renderStaticLayer(g, frame);
         
-            // RENDER THE BACKGROUND, WHICHEVER SCREEN WE'RE ON
-            renderBackground(g);
-
-            // AND THE BUTTONS AND DECOR
-            renderGUIControls(g);
-                
-            // AND THE TILES
-            renderTiles(g);
+        // THEN THE BUTTONS, MOVING TILES AND DIALOGS
+        renderSprites(g, frame, frame.getStaticCount(), frame.getSpriteCount());
 
-            // AND THE DIALOGS, IF THERE ARE ANY
-            renderDialogs(g);
-
-            // AND THE TIME AND TILES STATS
-            renderStats(g);
+        // AND THE TIME AND TILES STATS
+        renderStats(g, frame);
                 
-            // RENDERING THE GRID WHERE ALL THE TILES GO CAN BE HELPFUL
-            // DURING DEBUGGIN TO BETTER UNDERSTAND HOW THEY RE LAID OUT
-            renderGrid(g);
+        // RENDERING THE GRID WHERE ALL THE TILES GO CAN BE HELPFUL
+        // DURING DEBUGGIN TO BETTER UNDERSTAND HOW THEY RE LAID OUT
+        renderGrid(g, frame);
         
-            // AND FINALLY, TEXT FOR DEBUGGING
-            renderDebuggingText(g);
-        }
-        finally
-        {
-            // RELEASE THE LOCK
-            game.endUsingData();    
-        }
+        // AND FINALLY, TEXT FOR DEBUGGING
+        renderDebuggingText(g, frame);
     }
     
-    // RENDERING HELPER METHODS
-        // - renderBackground
-        // - renderGUIControls
-        // - renderTiles
-        // - renderDialogs
-        // - renderGrid
-        // - renderDebuggingText
+    // CAPTURE HELPER METHODS
+        // - captureBackground
+        // - captureDecor
+        // - captureSettledTiles
+        // - captureButtons
+        // - captureMovingTiles
+        // - captureDialogs
+        // - captureStats
+        // - captureDebugging
     
     /**
-     * Renders the background image, which is different depending on the screen. 
+     * Captures the background image, which is different depending on the screen. 
      * 
-     * @param g the Graphics context of this panel.
+     * @param frame The frame being filled.
      */
-    public void renderBackground(Graphics g)
+    public void captureBackground(LullabyLandSagaFrame frame)
     {
         // THERE IS ONLY ONE CURRENTLY SET
         Sprite bg = game.getGUIDecor().get(BACKGROUND_TYPE);
-        renderSprite(g, bg);
+        frame.addSprite(bg);
     }
 
     /**
-     * Renders all the GUI decor and buttons.
+     * Captures all the GUI decor.
      * 
-     * @param g this panel's rendering context.
+     * @param frame The frame being filled.
      */
-    public void renderGUIControls(Graphics g)
+    public void captureDecor(LullabyLandSagaFrame frame)
     {
         // GET EACH DECOR IMAGE ONE AT A TIME
         Collection<Sprite> decorSprites = game.getGUIDecor().values();
         for (Sprite s : decorSprites)
         {
-            renderSprite(g, s);
+            frame.addSprite(s);
         }
-        
-        // AND NOW RENDER THE BUTTONS
-        Collection<Sprite> buttonSprites = game.getGUIButtons().values();
-        for (Sprite s : buttonSprites)
+    }
+
+    /**
+     * Captures the tiles that have settled into the grid, doing so
+     * carefully such that they are rendered in the proper order.
+     * 
+     * @param frame The frame being filled.
+     */
+    public void captureSettledTiles(LullabyLandSagaFrame frame)
+    {
+        // THE GRID TILES BOTTOM TO TOP USING
+        // THE TILE'S Z TO STAGGER THEM AND GIVE THE ILLUSION
+        // OF DEPTH
+        ArrayList<LullabyLandSagaTile>[][] tileGrid = data.getTileGrid();
+        boolean noneOnLevel = false;
+        int zIndex = 0;
+        while (!noneOnLevel)
         {
-            renderSprite(g, s);
+            int levelCounter = 0;
+            for (int i = 0; i < data.getGridColumns(); i++)
+            {
+                for (int j = 0; j < data.getGridRows(); j++)
+                {
+                    if (tileGrid[i][j].size() > zIndex)
+                    {
+                        // TILES ON THE MOVE ARE CAPTURED LATER
+                        LullabyLandSagaTile tile = tileGrid[i][j].get(zIndex);
+                        if (!tile.isMovingToTarget())
+                            frame.addTile(tile);
+                        levelCounter++;
+                    }
+                }
+            }
+            if (levelCounter == 0)
+                noneOnLevel = true;
+            zIndex++;
         }
     }
 
     /**
-     * This method renders the on-screen stats that change as
-     * the game progresses. This means things like the game time
-     * and the number of tiles remaining.
+     * Captures all the GUI buttons.
      * 
-     * @param g the Graphics context for this panel
+     * @param frame The frame being filled.
      */
-    public void renderStats(Graphics g)
+    public void captureButtons(LullabyLandSagaFrame frame)
     {
-        // RENDER THE GAME TIME
-        if (((LullabyLandSagaMiniGame)game).isCurrentScreenState(GAME_SCREEN_STATE) 
-                && data.inProgress() || data.isPaused())
+        Collection<Sprite> buttonSprites = game.getGUIButtons().values();
+        for (Sprite s : buttonSprites)
         {
-            Font statsFont = new Font("Verdana", Font.BOLD, 35);
-            Color fontColor = new Color(0, 160, 0);
-          
-            // RENDER THE TIME
-            String time = data.gameTimeToText();
-            //int x = TIME_X + TIME_OFFSET;
-            //int y = TIME_Y + TIME_TEXT_OFFSET;
-            g.setFont(statsFont);
-            g.setColor(fontColor);
-            //g.drawString(time, x, y);
-            
-            // RENDER THE TILE COUNT
-            //x = TILE_COUNT_X + TILE_TEXT_OFFSET;
-            //y = TILE_COUNT_Y + TIME_TEXT_OFFSET;
-            //g.drawString(Integer.toString( 144 - data.getStackTileCount() ), x, y);
-            
-            
-        }        
+            frame.addSprite(s);
+        }
     }
-        
+
     /**
-     * Renders all the game tiles, doing so carefully such
-     * that they are rendered in the proper order.
+     * Captures the tiles that are on the move, along with
+     * the top of the stack.
      * 
-     * @param g the Graphics context of this panel.
+     * @param frame The frame being filled.
      */
-    public void renderTiles(Graphics g)
+    public void captureMovingTiles(LullabyLandSagaFrame frame)
     {
-        // DRAW THE TOP TILES ON THE STACK
+        // THE TOP TILES ON THE STACK
         if (!data.won())
         {
             // WE DRAW ONLY THE TOP 4 (OR 2 IF THERE ARE ONLY 2). THE REASON
@@ -219,156 +376,243 @@ public class LullabyLandSagaPanel extends JPanel
             ArrayList<LullabyLandSagaTile> stackTiles = data.getStackTiles();
             if (stackTiles.size() > 3)
             {
-                renderTile(g, stackTiles.get(stackTiles.size()-3));
-                renderTile(g, stackTiles.get(stackTiles.size()-4));
+                frame.addTile(stackTiles.get(stackTiles.size()-3));
+                frame.addTile(stackTiles.get(stackTiles.size()-4));
             }
             if (stackTiles.size() > 1)
             {
-                renderTile(g, stackTiles.get(stackTiles.size()-1));
-                renderTile(g, stackTiles.get(stackTiles.size()-2));
+                frame.addTile(stackTiles.get(stackTiles.size()-1));
+                frame.addTile(stackTiles.get(stackTiles.size()-2));
             }
         }
         
-        // THEN DRAW THE GRID TILES BOTTOM TO TOP USING
-        // THE TILE'S Z TO STAGGER THEM AND GIVE THE ILLUSION
-        // OF DEPTH
-        ArrayList<LullabyLandSagaTile>[][] tileGrid = data.getTileGrid();
-        boolean noneOnLevel = false;
-        int zIndex = 0;
-        while (!noneOnLevel)
+        // THEN ALL THE MOVING TILES
+        LullabyLandSagaAnimationSet movingTiles = data.getMovingTiles();
+        for (int i = 0; i < movingTiles.size(); i++)
         {
-            int levelCounter = 0;
+            frame.addTile(movingTiles.get(i));
+        }
+    }
+
+    /**
+     * Captures the game dialog boxes.
+     * 
+     * @param frame The frame being filled.
+     */
+    public void captureDialogs(LullabyLandSagaFrame frame)
+    {
+        // GET EACH DIALOG ONE AT A TIME, NOTE ONLY VISIBLE ONES ARE KEPT
+        Collection<Sprite> dialogSprites = game.getGUIDialogs().values();
+        for (Sprite s : dialogSprites)
+        {
+            frame.addSprite(s);
+        }
+    }
+
+    /**
+     * Captures the on-screen stats that change as the game
+     * progresses. This means things like the game time
+     * and the number of tiles remaining.
+     * 
+     * @param frame The frame being filled.
+     */
+    public void captureStats(LullabyLandSagaFrame frame)
+    {
+        if (((LullabyLandSagaMiniGame)game).isCurrentScreenState(GAME_SCREEN_STATE) 
+                && data.inProgress() || data.isPaused())
+        {
+            frame.setStats(data.gameTimeToText());
+        }
+    }
+    
+    /**
+     * Captures the debugging text and the grid cells, but
+     * only if data has activated debug text rendering.
+     * 
+     * @param frame The frame being filled.
+     */
+    public void captureDebugging(LullabyLandSagaFrame frame)
+    {
+        if (data.isDebugTextRenderingActive())
+        {
+            frame.setDebugText(data.getDebugText(), data.getDebugTextX(), data.getDebugTextY());
             for (int i = 0; i < data.getGridColumns(); i++)
             {
                 for (int j = 0; j < data.getGridRows(); j++)
                 {
-                    if (tileGrid[i][j].size() > zIndex)
-                    {
-                        LullabyLandSagaTile tile2;
-                            LullabyLandSagaTile tile = tileGrid[i][j].get(zIndex);
-                            renderTile(g, tile);
-                            if(zIndex>0)
-                            {
-                                tile2 = tileGrid[i][j].get(zIndex);
-                                tile2.setState(CLOUD_STATE);
-                                tile2.setEnabled(false);
-                            }
-                        levelCounter++;
-                    }
+                    frame.addCell(data.calculateTileXInGrid(i, 0), data.calculateTileYInGrid(j, 0));
                 }
             }
-            if (levelCounter == 0)
-                noneOnLevel = true;
-            zIndex++;
         }
-        
-        while(data.matchOnGrid() != null)
+    }
+    
+    // RENDERING HELPER METHODS
+        // - renderStaticLayer
+        // - renderSprites
+        // - renderStats
+        // - renderTile
+        // - renderGrid
+        // - renderDebuggingText
+    
+    /**
+     * Renders the static layer of the frame. The layer is kept in an
+     * accelerated off-screen image, which is only rendered again when the
+     * layer's version changes or the image's contents are lost, so most
+     * frames just copy it.
+     * 
+     * @param g the Graphics context of this panel.
+     * 
+     * @param frame The frame to render.
+     */
+    public void renderStaticLayer(Graphics g, LullabyLandSagaFrame frame)
+    {
+        int width = getWidth();
+        int height = getHeight();
+        if ((staticLayer == null)
+                || (staticLayer.getWidth() != width)
+                || (staticLayer.getHeight() != height))
         {
-            System.out.println("P260 - GRID RESHUFFLE");
-            data.reset(this.game);
+            staticLayer = (width > 0 && height > 0) ? createVolatileImage(width, height) : null;
+            staticLayerVersion = frame.getStaticVersion() - 1;
         }
         
-        // THEN DRAW ALL THE MOVING TILES
-        Iterator<LullabyLandSagaTile> movingTiles = data.getMovingTiles();
-        while (movingTiles.hasNext())
+        // IF WE CAN'T HAVE AN ACCELERATED IMAGE, JUST RENDER THE LAYER
+        if (staticLayer == null)
         {
-            LullabyLandSagaTile tile = movingTiles.next();
-            renderTile(g, tile);
+            renderSprites(g, frame, 0, frame.getStaticCount());
+            return;
         }
         
-        // MAKE THE REST OF THE TILES IN THE STACK INVISIBLE
-        ArrayList<LullabyLandSagaTile>stackTiles = data.getStackTiles();
-        for(LullabyLandSagaTile tile : stackTiles)
+        do
         {
-            tile.setState(INVISIBLE_STATE);
-            tile.setEnabled(false);
-        }
+            int status = staticLayer.validate(getGraphicsConfiguration());
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE)
+            {
+                staticLayer = createVolatileImage(width, height);
+            }
+            if ((status != VolatileImage.IMAGE_OK)
+                    || (staticLayerVersion != frame.getStaticVersion()))
+            {
+                Graphics2D layerG = staticLayer.createGraphics();
+                try
+                {
+                    layerG.setColor(getBackground());
+                    layerG.fillRect(0, 0, width, height);
+                    renderSprites(layerG, frame, 0, frame.getStaticCount());
+                }
+                finally
+                {
+                    layerG.dispose();
+                }
+                staticLayerVersion = frame.getStaticVersion();
+            }
+            g.drawImage(staticLayer, 0, 0, null);
+        } while (staticLayer.contentsLost());
     }
-
+    
     /**
-     * Helper method for rendering the tiles that are currently moving.
+     * Renders the sprites in the frame from first up to but not including
+     * last, in the order they were captured.
      * 
-     * @param g Rendering context for this panel.
+     * @param g the Graphics context of this panel.
+     * 
+     * @param frame The frame to render.
+     * 
+     * @param first The index of the first sprite to render.
      * 
-     * @param tileToRender Tile to render to this panel.
+     * @param last The index after the last sprite to render.
      */
-    public void renderTile(Graphics g, LullabyLandSagaTile tileToRender)
+    public void renderSprites(Graphics g, LullabyLandSagaFrame frame, int first, int last)
     {
-        // ONLY RENDER VISIBLE TILES
-        if (!tileToRender.getState().equals(INVISIBLE_STATE))
+        // NO NEED TO RENDER WHAT'S OUTSIDE THE AREA BEING REPAINTED
+        Rectangle clip = g.getClipBounds();
+        for (int i = first; i < last; i++)
         {
-            // FIRST DRAW THE BLANK TILE IMAGE
-            if (tileToRender.getState().equals(SELECTED_STATE))
-                g.drawImage(blankTileSelectedImage, (int)tileToRender.getX(), (int)tileToRender.getY(), null);
-            else if (tileToRender.getState().equals(VISIBLE_STATE))
-                g.drawImage(blankTileImage, (int)tileToRender.getX(), (int)tileToRender.getY(), null);
-            
-            // THEN THE TILE IMAGE
-            SpriteType bgST = tileToRender.getSpriteType();
-            Image img = bgST.getStateImage(tileToRender.getState());
-            g.drawImage(img, (int)tileToRender.getX(), (int)tileToRender.getY(), bgST.getWidth(), bgST.getHeight(), null); 
-            // IF THE TILE IS SELECTED, HIGHLIGHT IT
-            switch (tileToRender.getState()) {
-                case SELECTED_STATE:
-                    g.setColor(SELECTED_TILE_COLOR);
-                    g.fillRoundRect((int)tileToRender.getX(), (int)tileToRender.getY(), bgST.getWidth(), bgST.getHeight(),5,5);
-                    break;
-                case ROW_CLEAR_STATE:
-                    g.setColor(ROW_CLEAR_TILE_COLOR);
-                    g.fillRoundRect((int)tileToRender.getX(), (int)tileToRender.getY(), bgST.getWidth(), bgST.getHeight(),5,5);
-                    break;
-                case COL_CLEAR_STATE:
-                    g.setColor(COL_CLEAR_TILE_COLOR);
-                    g.fillRoundRect((int)tileToRender.getX(), (int)tileToRender.getY(), bgST.getWidth(), bgST.getHeight(),5,5);
-                    break;
-                case WRAPPED_STATE:
-                    g.setColor(WRAPPED_TILE_COLOR);
-                    g.fillRoundRect((int)tileToRender.getX(), (int)tileToRender.getY(), bgST.getWidth(), bgST.getHeight(),5,5);
-                    break;
-                case SPECIAL_SELECTED_STATE:
-                    g.setColor(SPECIAL_SELECTED_COLOR);
-                    g.fillRoundRect((int)tileToRender.getX(), (int)tileToRender.getY(), bgST.getWidth(), bgST.getHeight(),5,5);
-                    break;
-                case CLOUD_STATE:
-                    g.setColor(CLOUD_COLOR);
-                    g.fillRoundRect((int)tileToRender.getX(), (int)tileToRender.getY(), bgST.getWidth(), bgST.getHeight(),5,5);
-                    break;
+            SpriteType bgST = frame.getSpriteType(i);
+            if ((clip != null)
+                    && !clip.intersects(frame.getX(i), frame.getY(i), bgST.getWidth(), bgST.getHeight()))
+                continue;
+            if (frame.isTile(i))
+            {
+                renderTile(g, bgST, frame.getTileState(i), frame.getX(i), frame.getY(i));
             }
-        }        
+            else
+            {
+                Image img = bgST.getStateImage(frame.getState(i));
+                g.drawImage(img, frame.getX(i), frame.getY(i), bgST.getWidth(), bgST.getHeight(), null); 
+            }
+        }
     }
-    
+
     /**
-     * Renders the game dialog boxes.
+     * This method renders the on-screen stats that change as
+     * the game progresses. This means things like the game time
+     * and the number of tiles remaining.
+     * 
+     * @param g the Graphics context for this panel
      * 
-     * @param g This panel's graphics context.
+     * @param frame The frame to render.
      */
-    public void renderDialogs(Graphics g)
+    public void renderStats(Graphics g, LullabyLandSagaFrame frame)
     {
-        // GET EACH DECOR IMAGE ONE AT A TIME
-        Collection<Sprite> dialogSprites = game.getGUIDialogs().values();
-        for (Sprite s : dialogSprites)
+        // RENDER THE GAME TIME
+        if (frame.isStatsVisible())
         {
-            // RENDER THE DIALOG, NOTE IT WILL ONLY DO IT IF IT'S VISIBLE
-            renderSprite(g, s);
-        }
+            Font statsFont = new Font("Verdana", Font.BOLD, 35);
+            Color fontColor = new Color(0, 160, 0);
+          
+            // RENDER THE TIME
+            String time = frame.getGameTime();
+            //int x = TIME_X + TIME_OFFSET;
+            //int y = TIME_Y + TIME_TEXT_OFFSET;
+            g.setFont(statsFont);
+            g.setColor(fontColor);
+            //g.drawString(time, x, y);
+            
+            // RENDER THE TILE COUNT
+            //x = TILE_COUNT_X + TILE_TEXT_OFFSET;
+            //y = TILE_COUNT_Y + TIME_TEXT_OFFSET;
+            //g.drawString(Integer.toString( 144 - data.getStackTileCount() ), x, y);
+            
+            
+        }        
     }
-    
+
     /**
-     * Renders the s Sprite into the Graphics context g. Note
-     * that each Sprite knows its own x,y coordinate location.
+     * Helper method for rendering a tile.
+     * 
+     * @param g Rendering context for this panel.
+     * 
+     * @param bgST The sprite type of the tile to render.
      * 
-     * @param g the Graphics context of this panel
+     * @param state The state of the tile to render.
      * 
-     * @param s the Sprite to be rendered
+     * @param x The x-axis pixel location of the tile.
+     * 
+     * @param y The y-axis pixel location of the tile.
      */
-    public void renderSprite(Graphics g, Sprite s)
+    public void renderTile(Graphics g, SpriteType bgST, LullabyLandSagaTileState state, int x, int y)
     {
-        // ONLY RENDER THE VISIBLE ONES
-        if (!s.getState().equals(INVISIBLE_STATE))
+        // MOST TILES ARE IN THE ATLAS ALREADY COMPOSITED, SO
+        // ALL IT TAKES IS ONE COPY
+        if ((tileAtlas != null) && tileAtlas.drawTile(g, bgST, state, x, y))
+            return;
+        
+        // OTHERWISE FIRST DRAW THE BLANK TILE IMAGE
+        if (state == LullabyLandSagaTileState.SELECTED)
+            g.drawImage(blankTileSelectedImage, x, y, null);
+        else if (state == LullabyLandSagaTileState.VISIBLE)
+            g.drawImage(blankTileImage, x, y, null);
+            
+        // THEN THE TILE IMAGE
+        Image img = bgST.getStateImage(state.getSpriteState());
+        g.drawImage(img, x, y, bgST.getWidth(), bgST.getHeight(), null); 
+        
+        // AND IF THE TILE IS SELECTED OR SPECIAL, HIGHLIGHT IT
+        if (state.getHighlightColor() != null)
         {
-            SpriteType bgST = s.getSpriteType();
-            Image img = bgST.getStateImage(s.getState());
-            g.drawImage(img, (int)s.getX(), (int)s.getY(), bgST.getWidth(), bgST.getHeight(), null); 
+            g.setColor(state.getHighlightColor());
+            g.fillRoundRect(x, y, bgST.getWidth(), bgST.getHeight(),5,5);
         }
     }
 
@@ -377,20 +621,17 @@ public class LullabyLandSagaPanel extends JPanel
      * during debugging.
      * 
      * @param g Graphics context for this panel.
+     * 
+     * @param frame The frame to render.
      */
-    public void renderGrid(Graphics g)
+    public void renderGrid(Graphics g, LullabyLandSagaFrame frame)
     {
         // ONLY RENDER THE GRID IF WE'RE DEBUGGING
-        if (data.isDebugTextRenderingActive())
+        if (frame.isDebugging())
         {
-            for (int i = 0; i < data.getGridColumns(); i++)
+            for (int i = 0; i < frame.getCellCount(); i++)
             {
-                for (int j = 0; j < data.getGridRows(); j++)
-                {
-                    int x = data.calculateTileXInGrid(i, 0);
-                    int y = data.calculateTileYInGrid(j, 0);
-                    g.drawRect(x, y, TILE_IMAGE_WIDTH, TILE_IMAGE_HEIGHT);
-                }
+                g.drawRect(frame.getCellX(i), frame.getCellY(i), TILE_IMAGE_WIDTH, TILE_IMAGE_HEIGHT);
             }
         }
     }
@@ -401,20 +642,22 @@ public class LullabyLandSagaPanel extends JPanel
      * if data has activated debug text rendering.
      * 
      * @param g the Graphics context for this panel
+     * 
+     * @param frame The frame to render.
      */
-    public void renderDebuggingText(Graphics g)
+    public void renderDebuggingText(Graphics g, LullabyLandSagaFrame frame)
     {
         // IF IT'S ACTIVATED
-        if (data.isDebugTextRenderingActive())
+        if (frame.isDebugging())
         {
             // ENABLE PROPER RENDER SETTINGS
             g.setFont(DEBUG_TEXT_FONT);
             g.setColor(DEBUG_TEXT_COLOR);
             
             // GO THROUGH ALL THE DEBUG TEXT
-            Iterator<String> it = data.getDebugText().iterator();
-            int x = data.getDebugTextX();
-            int y = data.getDebugTextY();
+            Iterator<String> it = frame.getDebugText().iterator();
+            int x = frame.getDebugTextX();
+            int y = frame.getDebugTextY();
             while (it.hasNext())
             {
                 // RENDER THE TEXT
@@ -1,6 +1,7 @@
 package lullabylandsaga.ui;
 
 import java.util.ArrayList;
+import java.util.Random;
 import mini_game.MiniGame;
 import mini_game.Sprite;
 import mini_game.SpriteType;
@@ -17,6 +18,14 @@ public class LullabyLandSagaTile extends Sprite
     // BE BEST TO DO THIS WITH AN enum, BUT WE COULD
     // ALSO DO IT THIS WAY, WITH STRING CONSTANTS
     private String tileType;
+    
+    // THE INDEX OF THE TILE TYPE IN TILE_TYPES, WHICH IS MUCH CHEAPER
+    // TO COMPARE THAN THE STRING WHEN LOOKING FOR MATCHES
+    private int tileTypeId;
+    
+    // THE STATE OF THIS TILE, KEPT IN STEP WITH THE Sprite STATE BUT
+    // MUCH CHEAPER TO TEST, WHICH THE GAME DOES CONSTANTLY
+    private LullabyLandSagaTileState tileState;
 
     // WHEN WE PUT A TILE IN THE GRID WE TELL IT WHAT COLUMN AND ROW
     // IT IS LOCATED TO MAKE THE UNDO OPERATION EASY LATER ON
@@ -27,6 +36,27 @@ public class LullabyLandSagaTile extends Sprite
     // OUT WHEN IT HAS REACHED A DESTINATION NODE
     private boolean movingToTarget;
     
+    // WHERE THIS TILE IS IN THE SET OF TILES BEING ANIMATED, OR -1 IF IT
+    // ISN'T, WHICH ONLY THAT SET SHOULD CHANGE
+    private int animationIndex;
+    
+    // WHERE THIS TILE WAS BEFORE ITS LAST UPDATE, SO THAT WHEN IT'S DRAWN
+    // BETWEEN UPDATES IT CAN BE DRAWN PART WAY BETWEEN THERE AND HERE
+    private float previousX;
+    private float previousY;
+    
+    // A MOVING TILE THIS CLOSE TO ITS TARGET IS PUT RIGHT ON IT
+    private static final float ARRIVAL_DISTANCE = 4;
+    
+    // HOW THE TILE IS MOVING TOWARDS ITS TARGET. A TILE FOLLOWING A CURVE
+    // RATHER THAN MOVING LINEARLY GOES FROM ITS START TO ITS TARGET IN A
+    // SET NUMBER OF STEPS, AND WE KEEP TRACK OF HOW MANY IT HAS TAKEN
+    private LullabyLandSagaEasing easing;
+    private float startX;
+    private float startY;
+    private int easingStep;
+    private int easingSteps;
+    
     // THE TARGET COORDINATES IN WHICH IT IS CURRENTLY HEADING
     private float targetX;
     private float targetY;
@@ -38,6 +68,9 @@ public class LullabyLandSagaTile extends Sprite
     // THIS TILE IS CURRENTLY TARGETING
     private int winPathIndex;
     
+    // THE RANDOM NUMBERS FOR FUZZING THE PATH AND THE SPEED ALONG IT
+    private Random winPathRandom;
+    
     /**
      * This constructor initializes this tile for use, including all the
      * sprite-related data from its ancestor class, Sprite.
@@ -49,18 +82,33 @@ public class LullabyLandSagaTile extends Sprite
     {
         // SEND ALL THE Sprite DATA TO A Sprite CONSTRUCTOR
         super(initSpriteType, initX, initY, initVx, initVy, initState);
+        tileState = LullabyLandSagaTileState.fromSpriteState(initState);
+        animationIndex = -1;
+        previousX = initX;
+        previousY = initY;
+        easing = LullabyLandSagaEasing.LINEAR;
         
         // INIT THE TILE TYPE
         tileType = initTileType;
+        tileTypeId = -1;
+        for (int i = 0; i < TILE_TYPES.length; i++)
+        {
+            if (TILE_TYPES[i].equals(initTileType))
+                tileTypeId = i;
+        }
     }
     
     // ACCESSOR METHODS
         // -getTileType
+        // -getTileTypeId
+        // -getTileState
         // -getGridColumn
         // -getGridRow
         // -getTargetX
         // -getTargetY
         // -isMovingToTarget
+        // -getRenderX
+        // -getRenderY
     
     /**
      * Accessor method for getting this tile type.
@@ -72,6 +120,26 @@ public class LullabyLandSagaTile extends Sprite
         return tileType;  
     }
     
+    /**
+     * Accessor method for getting this tile type as an id.
+     * 
+     * @return The index of this tile's type in TILE_TYPES.
+     */
+    public int getTileTypeId()
+    {
+        return tileTypeId;
+    }
+    
+    /**
+     * Accessor method for getting the state of this tile.
+     * 
+     * @return The state of this tile, which stands for its Sprite state.
+     */
+    public LullabyLandSagaTileState getTileState()
+    {
+        return tileState;
+    }
+    
     /**
      * Accessor method for getting the tile grid column that this tile
      * is either currently in, or was most recently in.
@@ -129,6 +197,67 @@ public class LullabyLandSagaTile extends Sprite
     // MUTATOR METHODS
         // -setGridCell
         // -setTarget
+        // -setTileState
+        // -setState
+        // -setX
+        // -setY
+    
+    /**
+     * Accessor method for getting the x-axis coordinate to draw this tile
+     * at, which for a moving tile is part way between where it was before
+     * its last update and where it is now.
+     * 
+     * @param interpolation How far the game is between its last update
+     * and its next one, from 0 to 1.
+     * 
+     * @return The x-axis coordinate to draw this tile at.
+     */
+    public float getRenderX(float interpolation)
+    {
+        if (!movingToTarget)
+            return x;
+        return previousX + ((x - previousX) * interpolation);
+    }
+    
+    /**
+     * Accessor method for getting the y-axis coordinate to draw this tile
+     * at, which for a moving tile is part way between where it was before
+     * its last update and where it is now.
+     * 
+     * @param interpolation How far the game is between its last update
+     * and its next one, from 0 to 1.
+     * 
+     * @return The y-axis coordinate to draw this tile at.
+     */
+    public float getRenderY(float interpolation)
+    {
+        if (!movingToTarget)
+            return y;
+        return previousY + ((y - previousY) * interpolation);
+    }
+    
+    /**
+     * Accessor method for getting where this tile is in the set of tiles
+     * being animated, used only by that set.
+     * 
+     * @return This tile's position in that set, or -1 if it isn't in it.
+     */
+    int getAnimationIndex()
+    {
+        return animationIndex;
+    }
+    
+    /**
+     * Mutator method for setting where this tile is in the set of tiles
+     * being animated, used only by that set.
+     * 
+     * @param initAnimationIndex This tile's position in that set, or -1
+     * if it's being taken out of it.
+     */
+    void setAnimationIndex(int initAnimationIndex)
+    {
+        animationIndex = initAnimationIndex;
+    }
     
     /**
      * Mutator method for setting both the grid column and row that
@@ -161,6 +290,58 @@ public class LullabyLandSagaTile extends Sprite
         targetX = initTargetX; 
         targetY = initTargetY;
     }  
+    
+    /**
+     * Mutator method for setting the state of this tile, which also sets
+     * its Sprite state to match.
+     * 
+     * @param initTileState The state to put this tile in.
+     */
+    public void setTileState(LullabyLandSagaTileState initTileState)
+    {
+        tileState = initTileState;
+        super.setState(initTileState.getSpriteState());
+    }
+    
+    /**
+     * Mutator method for setting the Sprite state of this tile, which also
+     * sets its tile state to match. Note that setTileState should be used
+     * where possible, since this must look up the tile state.
+     * 
+     * @param initState The Sprite state to put this tile in.
+     */
+    @Override
+    public void setState(String initState)
+    {
+        tileState = LullabyLandSagaTileState.fromSpriteState(initState);
+        super.setState(initState);
+    }
+
+    /**
+     * Mutator method for moving this tile straight to the x-axis coordinate
+     * argument, so it's drawn there right away rather than moving there.
+     * 
+     * @param initX The x-axis coordinate to put this tile at.
+     */
+    @Override
+    public void setX(float initX)
+    {
+        super.setX(initX);
+        previousX = initX;
+    }
+    
+    /**
+     * Mutator method for moving this tile straight to the y-axis coordinate
+     * argument, so it's drawn there right away rather than moving there.
+     * 
+     * @param initY The y-axis coordinate to put this tile at.
+     */
+    @Override
+    public void setY(float initY)
+    {
+        super.setY(initY);
+        previousY = initY;
+    }
 
     // METHOD FOR MATHING
         // -isNeighbor
@@ -192,6 +373,7 @@ public class LullabyLandSagaTile extends Sprite
         
     // PATHFINDING METHODS
         // -calculateDistanceToTarget
+        // -calculateSquaredDistanceToTarget
         // -initWinPath
         // -startMovingToTarget
         // -updateWinPath
@@ -218,22 +400,41 @@ public class LullabyLandSagaTile extends Sprite
         return distance;
     }
     
+    /**
+     * This method calculates the square of the distance from this tile's
+     * current location to the target coordinates on a direct line, which
+     * is all that's needed to compare it to some other distance, and
+     * without a square root.
+     * 
+     * @return The square of the distance from where the tile is currently
+     * to where its target is.
+     */
+    public float calculateSquaredDistanceToTarget()
+    {
+        float diffX = targetX - x;
+        float diffY = targetY - y;
+        return (diffX * diffX) + (diffY * diffY);
+    }
+    
     
     
     /**
      * This method builds a path for this tile for the 
      * win animations by slightly randomizing the locations
-     * of the nodes in the winPathNodes argument.
+     * of the nodes in the winPathNodes argument, using the random
+     * argument, which is then used for the speed along the path.
      */
-    public void initWinPath(ArrayList<Integer> winPathNodes)
+    public void initWinPath(ArrayList<Integer> winPathNodes, Random random)
     {
+        winPathRandom = random;
+        
         // CONSTRUCT THE PATH
         winPath = new ArrayList(winPathNodes.size());
         for (int i = 0; i < winPathNodes.size(); i+=2)
         {
             // AND FILL IT WITH FUZZY PATH NODES
-            int toleranceX = (int)(WIN_PATH_TOLERANCE * Math.random()) - (WIN_PATH_TOLERANCE/2);
-            int toleranceY = (int)(WIN_PATH_TOLERANCE * Math.random()) - (WIN_PATH_TOLERANCE/2);
+            int toleranceX = winPathRandom.nextInt(WIN_PATH_TOLERANCE) - (WIN_PATH_TOLERANCE/2);
+            int toleranceY = winPathRandom.nextInt(WIN_PATH_TOLERANCE) - (WIN_PATH_TOLERANCE/2);
             int x = winPathNodes.get(i) + toleranceX;
             int y = winPathNodes.get(i+1) + toleranceY;
             winPath.add(x);
@@ -250,29 +451,52 @@ public class LullabyLandSagaTile extends Sprite
      * account the trajectory angle.
      */
     public void startMovingToTarget(int maxVelocity)
+    {
+        startMovingToTarget(maxVelocity, LullabyLandSagaEasing.LINEAR);
+    }
+    
+    /**
+     * Allows the tile to start moving towards its target coordinates,
+     * following the easing curve argument. It takes as many steps to get
+     * there as it would moving linearly at the maximum velocity argument.
+     * 
+     * @param maxVelocity The maximum velocity of this tile.
+     * 
+     * @param initEasing The curve to follow, LINEAR simply moves the tile
+     * at the maximum velocity.
+     */
+    public void startMovingToTarget(int maxVelocity, LullabyLandSagaEasing initEasing)
     {
         // LET ITS POSITIONG GET UPDATED
         movingToTarget = true;
+        easing = initEasing;
         
-        // CALCULATE THE ANGLE OF THE TRAJECTORY TO THE TARGET
+        // THE VELOCITY IS THE DIRECTION TO THE TARGET, NORMALIZED,
+        // SCALED UP TO THE MAXIMUM VELOCITY
         float diffX = targetX - x;
         float diffY = targetY - y;
-        float tanResult = diffY/diffX;
-        float angleInRadians = (float)Math.atan(tanResult);
-        
-        // COMPUTE THE X VELOCITY COMPONENT
-        vX = (float)(maxVelocity * Math.cos(angleInRadians));
-        
-        // CLAMP THE VELOCTY IN CASE OF NEGATIVE ANGLES
-        if ((diffX < 0) && (vX > 0)) vX *= -1;
-        if ((diffX > 0) && (vX < 0)) vX *= -1;
-        
-        // COMPUTE THE Y VELOCITY COMPONENT
-        vY = (float)(maxVelocity * Math.sin(angleInRadians));        
+        float distance = (float)Math.sqrt((diffX * diffX) + (diffY * diffY));
+        if (distance > 0)
+        {
+            vX = (maxVelocity * diffX) / distance;
+            vY = (maxVelocity * diffY) / distance;
+        }
+        else
+        {
+            vX = 0;
+            vY = 0;
+        }
         
-        // CLAMP THE VELOCITY IN CASE OF NEGATIVE ANGLES
-        if ((diffY < 0) && (vY > 0)) vY *= -1;
-        if ((diffY > 0) && (vY < 0)) vY *= -1;
+        // A CURVE TAKES THE SAME NUMBER OF STEPS AS MOVING LINEARLY,
+        // WHICH IS ONE PER maxVelocity PIXELS UNTIL IT ARRIVES, AND
+        // THEN ONE MORE TO PUT IT ON THE TARGET
+        if (easing != LullabyLandSagaEasing.LINEAR)
+        {
+            startX = x;
+            startY = y;
+            easingStep = 0;
+            easingSteps = 1 + (int)Math.ceil(Math.max(0, distance - ARRIVAL_DISTANCE) / maxVelocity);
+        }
     }
     
     @Override
@@ -292,7 +516,7 @@ public class LullabyLandSagaTile extends Sprite
     public void updateWinPath(MiniGame game)
     {
         // IS THE TILE ALMOST AT THE PATH NODE IT'S TARGETING?
-        if (calculateDistanceToTarget() < MAX_TILE_VELOCITY)
+        if (calculateSquaredDistanceToTarget() < (MAX_TILE_VELOCITY * MAX_TILE_VELOCITY))
         {
             // PUT IT RIGHT ON THE NODE
             x = targetX;
@@ -303,7 +527,7 @@ public class LullabyLandSagaTile extends Sprite
             //targetY = winPath.get(winPathIndex+1);
             
             // START THE TILE MOVING AGAIN AND RANDOMIZE IT'S SPEED
-            startMovingToTarget((int)(Math.random() * MAX_TILE_VELOCITY) + 1);
+            startMovingToTarget(winPathRandom.nextInt(MAX_TILE_VELOCITY) + 1);
             
             // AND ON TO THE NEXT PATH FOR THE NEXT TIME WE PICK A TARGET
             winPathIndex += 2;
@@ -321,29 +545,45 @@ public class LullabyLandSagaTile extends Sprite
         // -update
 
     /**
-     * Called each frame, this method ensures that this tile is updated
-     * according to the path it is on.
+     * Called each step of the game, this method ensures that this tile is
+     * updated according to the path it is on.
      * 
      * @param game The Mahjong game this tile is part of.
      */
     @Override
     public void update(MiniGame game)
     {
+        // REMEMBER WHERE IT WAS, FOR DRAWING IT BETWEEN UPDATES
+        previousX = x;
+        previousY = y;
+        
         // IF WE ARE IN A POST-WIN STATE WE ARE PLAYING THE WIN
         // ANIMATION, SO MAKE SURE THIS TILE FOLLOWS THE PATH
         if (game.getDataModel().won())
         {
             updateWinPath(game);
         }
+        // IF IT'S FOLLOWING A CURVE, TAKE THE NEXT STEP ALONG IT,
+        // STOPPING ON THE TARGET WHEN THERE ARE NO MORE STEPS
+        else if (easing != LullabyLandSagaEasing.LINEAR)
+        {
+            easingStep++;
+            if (easingStep >= easingSteps)
+            {
+                stopOnTarget();
+            }
+            else
+            {
+                float progress = easing.apply((float)easingStep / easingSteps);
+                x = startX + ((targetX - startX) * progress);
+                y = startY + ((targetY - startY) * progress);
+            }
+        }
         // IF NOT, IF THIS TILE IS ALMOST AT ITS TARGET DESTINATION,
         // JUST GO TO THE TARGET AND THEN STOP MOVING
-        else if (calculateDistanceToTarget() < 4)
+        else if (calculateSquaredDistanceToTarget() < (ARRIVAL_DISTANCE * ARRIVAL_DISTANCE))
         {
-            vX = 0;
-            vY = 0;
-            x = targetX;
-            y = targetY;
-            movingToTarget = false;
+            stopOnTarget();
         }
         // OTHERWISE, JUST DO A NORMAL UPDATE, WHICH WILL CHANGE ITS POSITION
         // USING ITS CURRENT VELOCITY.
@@ -352,4 +592,22 @@ public class LullabyLandSagaTile extends Sprite
             super.update(game);
         }
     }
-}
\ No newline at end of file
+    
+    /**
+     * Helper method that puts this tile right on its target and stops it.
+     * Its previous position goes there too, since once it stops it is no
+     * longer updated, and otherwise it would be drawn partway back along
+     * its last step for as long as it sits there.
+     */
+    private void stopOnTarget()
+    {
+        vX = 0;
+        vY = 0;
+        x = targetX;
+        y = targetY;
+        previousX = targetX;
+        previousY = targetY;
+        movingToTarget = false;
+        easing = LullabyLandSagaEasing.LINEAR;
+    }
+}
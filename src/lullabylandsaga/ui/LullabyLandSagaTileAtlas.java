@@ -0,0 +1,162 @@
+package lullabylandsaga.ui;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import mini_game.SpriteType;
+import static lullabylandsaga.LullabyLandSagaConstants.*;
+
+/**
+ * This class is a texture atlas for the tiles. Drawing a tile means drawing
+ * the blank tile, then the tile's image, and then a highlight for its state,
+ * so instead of doing all that each frame we do it once at load time for
+ * every tile sprite type in every state, laying the results out in one big
+ * image. Drawing a tile is then a single copy out of that image.
+ *
+ * Each sprite type gets a row of the atlas, and each state a column.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaTileAtlas
+{
+    // THE TILE STATES WE PRE-COMPOSITE, ONE PER COLUMN
+    private static final LullabyLandSagaTileState[] STATES = {
+        LullabyLandSagaTileState.VISIBLE,
+        LullabyLandSagaTileState.SELECTED,
+        LullabyLandSagaTileState.ROW_CLEAR,
+        LullabyLandSagaTileState.COL_CLEAR,
+        LullabyLandSagaTileState.WRAPPED,
+        LullabyLandSagaTileState.COLOR_BOMB,
+        LullabyLandSagaTileState.SPECIAL_SELECTED,
+        LullabyLandSagaTileState.CLOUD
+    };
+
+    // THE IMAGE ALL THE TILES ARE COMPOSITED INTO
+    private BufferedImage atlasImage;
+
+    // THE SIZE OF EACH TILE IN THE ATLAS
+    private int cellWidth;
+    private int cellHeight;
+
+    // THE ROW FOR EACH SPRITE TYPE, AND THE COLUMN FOR EACH STATE BY
+    // ITS ORDINAL, WHICH IS NO_COLUMN FOR STATES NOT IN THE ATLAS
+    private static final int NO_COLUMN = -1;
+    private IdentityHashMap<SpriteType, Integer> rows;
+    private int[] columns;
+
+    /**
+     * Constructor for building the atlas, it composites every tile sprite
+     * type in every state just as they would be drawn one at a time.
+     *
+     * @param spriteTypes The sprite types of all the tiles.
+     *
+     * @param blankTileImage The image drawn under unselected tiles.
+     *
+     * @param blankTileSelectedImage The image drawn under selected tiles.
+     */
+    public LullabyLandSagaTileAtlas(ArrayList<SpriteType> spriteTypes,
+                                    BufferedImage blankTileImage,
+                                    BufferedImage blankTileSelectedImage)
+    {
+        // EACH CELL MUST FIT THE BIGGEST THING DRAWN IN IT
+        cellWidth = TILE_IMAGE_WIDTH;
+        cellHeight = TILE_IMAGE_HEIGHT;
+        for (SpriteType sT : spriteTypes)
+        {
+            cellWidth = Math.max(cellWidth, sT.getWidth());
+            cellHeight = Math.max(cellHeight, sT.getHeight());
+        }
+        for (BufferedImage blank : new BufferedImage[] { blankTileImage, blankTileSelectedImage })
+        {
+            if (blank != null)
+            {
+                cellWidth = Math.max(cellWidth, blank.getWidth());
+                cellHeight = Math.max(cellHeight, blank.getHeight());
+            }
+        }
+
+        rows = new IdentityHashMap();
+        columns = new int[LullabyLandSagaTileState.values().length];
+        Arrays.fill(columns, NO_COLUMN);
+        for (int i = 0; i < STATES.length; i++)
+        {
+            columns[STATES[i].ordinal()] = i;
+        }
+
+        // NOW COMPOSITE THEM ALL
+        atlasImage = new BufferedImage(Math.max(1, cellWidth * STATES.length),
+                                        Math.max(1, cellHeight * spriteTypes.size()),
+                                        BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = atlasImage.createGraphics();
+        try
+        {
+            for (int row = 0; row < spriteTypes.size(); row++)
+            {
+                SpriteType sT = spriteTypes.get(row);
+                rows.put(sT, row);
+                for (int col = 0; col < STATES.length; col++)
+                {
+                    int x = col * cellWidth;
+                    int y = row * cellHeight;
+
+                    // FIRST THE BLANK TILE IMAGE
+                    if (STATES[col] == LullabyLandSagaTileState.SELECTED)
+                        g.drawImage(blankTileSelectedImage, x, y, null);
+                    else if (STATES[col] == LullabyLandSagaTileState.VISIBLE)
+                        g.drawImage(blankTileImage, x, y, null);
+
+                    // THEN THE TILE IMAGE
+                    Image img = sT.getStateImage(STATES[col].getSpriteState());
+                    g.drawImage(img, x, y, sT.getWidth(), sT.getHeight(), null);
+
+                    // AND THE HIGHLIGHT FOR ITS STATE
+                    if (STATES[col].getHighlightColor() != null)
+                    {
+                        g.setColor(STATES[col].getHighlightColor());
+                        g.fillRoundRect(x, y, sT.getWidth(), sT.getHeight(), 5, 5);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            g.dispose();
+        }
+    }
+
+    /**
+     * This method draws a tile out of the atlas.
+     *
+     * @param g The Graphics context to draw to.
+     *
+     * @param sT The sprite type of the tile.
+     *
+     * @param state The state of the tile.
+     *
+     * @param x The x-axis pixel location of the tile.
+     *
+     * @param y The y-axis pixel location of the tile.
+     *
+     * @return true if the tile was drawn, false if the atlas doesn't have
+     * that tile in that state, in which case it must be drawn some other way.
+     */
+    public boolean drawTile(Graphics g, SpriteType sT, LullabyLandSagaTileState state, int x, int y)
+    {
+        if (state == null)
+            return false;
+        Integer row = rows.get(sT);
+        int col = columns[state.ordinal()];
+        if ((row == null) || (col == NO_COLUMN))
+            return false;
+
+        int sx = col * cellWidth;
+        int sy = row * cellHeight;
+        g.drawImage(atlasImage, x, y, x + cellWidth, y + cellHeight,
+                    sx, sy, sx + cellWidth, sy + cellHeight, null);
+        return true;
+    }
+}
@@ -0,0 +1,83 @@
+package lullabylandsaga.ui;
+
+import java.awt.Color;
+import static lullabylandsaga.LullabyLandSagaConstants.*;
+
+/**
+ * This enum lists the states a tile may be in. Sprites keep their state
+ * as a String, which is fine for the GUI buttons, but tiles have their
+ * state tested and changed all through the game logic and rendering, so
+ * tiles keep one of these as well. Each one knows the sprite state String
+ * it stands for, so that the tile can keep its Sprite state in step, as
+ * well as the color its tiles are highlighted with, if any.
+ *
+ * @author Thomas Marion
+ */
+public enum LullabyLandSagaTileState
+{
+    INVISIBLE           (INVISIBLE_STATE,               null),
+    VISIBLE             (VISIBLE_STATE,                 null),
+    SELECTED            (SELECTED_STATE,                SELECTED_TILE_COLOR),
+    CLOUD               (CLOUD_STATE,                   CLOUD_COLOR),
+    MOUSE_OVER          (MOUSE_OVER_STATE,              null),
+    ROW_CLEAR           (ROW_CLEAR_STATE,               ROW_CLEAR_TILE_COLOR),
+    COL_CLEAR           (COL_CLEAR_STATE,               COL_CLEAR_TILE_COLOR),
+    WRAPPED             (WRAPPED_STATE,                 WRAPPED_TILE_COLOR),
+    COLOR_BOMB          (COLOR_BOMB_STATE,              COLOR_BOMB_TILE_COLOR),
+    INCORRECTLY_SELECTED(INCORRECTLY_SELECTED_STATE,    null),
+    SPECIAL_SELECTED    (SPECIAL_SELECTED_STATE,        SPECIAL_SELECTED_COLOR);
+
+    // ALL THE STATES, KEPT SO WE DON'T COPY values() FOR EACH LOOKUP
+    private static final LullabyLandSagaTileState[] ALL_STATES = values();
+
+    // THE SPRITE STATE THIS STANDS FOR
+    private final String spriteState;
+
+    // THE COLOR TILES IN THIS STATE ARE HIGHLIGHTED WITH, OR null
+    private final Color highlightColor;
+
+    private LullabyLandSagaTileState(String initSpriteState, Color initHighlightColor)
+    {
+        spriteState = initSpriteState;
+        highlightColor = initHighlightColor;
+    }
+
+    /**
+     * Accessor method for getting the sprite state this stands for.
+     *
+     * @return The String state to give the tile's Sprite.
+     */
+    public String getSpriteState()
+    {
+        return spriteState;
+    }
+
+    /**
+     * Accessor method for getting the color tiles in this state are
+     * highlighted with.
+     *
+     * @return The highlight color, or null if they aren't highlighted.
+     */
+    public Color getHighlightColor()
+    {
+        return highlightColor;
+    }
+
+    /**
+     * This method finds the tile state that stands for the sprite state
+     * argument, for when a tile's state is set through the Sprite API.
+     *
+     * @param spriteState The sprite state to look up.
+     *
+     * @return The tile state standing for it, or null if there isn't one.
+     */
+    public static LullabyLandSagaTileState fromSpriteState(String spriteState)
+    {
+        for (LullabyLandSagaTileState tileState : ALL_STATES)
+        {
+            if (tileState.spriteState.equals(spriteState))
+                return tileState;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,141 @@
+package lullabylandsaga.data;
+
+import java.lang.management.ManagementFactory;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * This test checks that the frames run after a swap, which move its
+ * tiles through the match, the fall and the cascade it sets off, allocate
+ * nothing, so long play sessions don't stutter with garbage collection.
+ * It counts the bytes the test's thread allocates, using the JVM's thread
+ * allocation counters. Note that the swap itself is left out, since
+ * keeping it so it can be undone takes a snapshot of the game.
+ *
+ * The game is played without a window, see LullabyLandSagaHeadlessGame,
+ * so the test runs anywhere, and its frames are run by the test's thread.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaDataModelAllocationTest
+{
+    // THE LEVEL PLAYED, WHICH HAS PLENTY OF TURNS, AND THE SEED IT'S
+    // PLAYED WITH
+    private static final int LEVEL = 7;
+    private static final long SEED = 0x5EED1E7L;
+
+    // HOW MANY SWAPS ARE PLAYED BEFORE COUNTING, SO EVERYTHING ON THE PATH
+    // HAS BEEN LOADED AND SIZED, AND HOW MANY MAY BE COUNTED BEFORE ONE
+    // SETS OFF A CASCADE
+    private static final int WARM_UP_SWAPS = 10;
+    private static final int MAX_COUNTED_SWAPS = 20;
+
+    // THE GAME BEING TESTED AND ITS DATA
+    private LullabyLandSagaHeadlessGame game;
+    private LullabyLandSagaDataModel data;
+
+    // FOR READING HOW MUCH THIS THREAD HAS ALLOCATED
+    private com.sun.management.ThreadMXBean threads;
+
+    /**
+     * Sets up a game of the level, the way the game does when the level is
+     * picked, and waits for its tiles to reach the grid.
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        // THE JVM NEEDS TO COUNT ALLOCATIONS
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        game = new LullabyLandSagaHeadlessGame();
+        data = game.getData();
+        game.startLevel(LEVEL, SEED, false);
+        assertTrue(data.inProgress());
+    }
+
+    /**
+     * Tests that the frames run after a swap that sets off a cascade,
+     * until its tiles have all settled, allocate nothing.
+     */
+    @Test
+    public void testCascadeFramesDontAllocate() throws Exception
+    {
+        long threadId = Thread.currentThread().getId();
+
+        // PLAY THE PATH ENOUGH THAT IT IS AS IT WILL BE WHILE PLAYING
+        for (int i = 0; i < WARM_UP_SWAPS; i++)
+        {
+            game.playMove(findCascadingMove());
+        }
+
+        // READING THE COUNTER MAY ITSELF ALLOCATE, SO WE FIND OUT HOW
+        // MUCH, AND DON'T COUNT IT
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long after = threads.getThreadAllocatedBytes(threadId);
+        long counterCost = after - before;
+
+        // THE FILLER TILES ARE RANDOM, SO A SWAP MAY NOT CASCADE AS THE
+        // COPY OF THE GAME SAID, IN WHICH CASE WE TRY ANOTHER
+        boolean cascaded = false;
+        for (int i = 0; (i < MAX_COUNTED_SWAPS) && !cascaded; i++)
+        {
+            assertTrue("The game ran out of turns", data.getTurns() > 1);
+            game.beginMove(findCascadingMove());
+
+            before = threads.getThreadAllocatedBytes(threadId);
+            int frames = game.settle();
+            after = threads.getThreadAllocatedBytes(threadId);
+
+            assertTrue(frames > 0);
+            assertEquals("Bytes allocated over " + frames + " frames",
+                    0, (after - before) - counterCost);
+            cascaded = data.getRulesEngine().getLastCascadeDepth() > 0;
+        }
+        assertTrue("No swap set off a cascade", cascaded);
+    }
+
+    /**
+     * Helper method for finding the swap that sets off the most cascades
+     * in a copy of the game, or any swap there is should none.
+     */
+    private LullabyLandSagaMove findCascadingMove()
+    {
+        LullabyLandSagaMove move = new LullabyLandSagaMove();
+        LullabyLandSagaMove hint = data.moveOnGrid();
+        assertNotNull(hint);
+        move.col1 = hint.col1;
+        move.row1 = hint.row1;
+        move.col2 = hint.col2;
+        move.row2 = hint.row2;
+
+        // TRY EACH TILE SWAPPED WITH THE ONE TO ITS RIGHT AND BELOW IT
+        int mostCascades = 0;
+        for (int i = 0; i < data.getGridColumns(); i++)
+        {
+            for (int j = 0; j < data.getGridRows(); j++)
+            {
+                for (int k = 0; k < 2; k++)
+                {
+                    int col = i + 1 - k;
+                    int row = j + k;
+                    LullabyLandSagaRulesEngine copy = data.createRulesEngine(SEED);
+                    if (copy.playSwap(i, j, col, row)
+                            && (copy.getLastCascadeDepth() > mostCascades))
+                    {
+                        mostCascades = copy.getLastCascadeDepth();
+                        move.col1 = i;
+                        move.row1 = j;
+                        move.col2 = col;
+                        move.row2 = row;
+                    }
+                }
+            }
+        }
+        return move;
+    }
+}
@@ -0,0 +1,142 @@
+package lullabylandsaga.data;
+
+import java.util.ArrayList;
+import lullabylandsaga.ui.LullabyLandSagaTile;
+import lullabylandsaga.ui.LullabyLandSagaTileState;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * This test checks that the game the player sees is the one the rules
+ * engine plays. The same seeded swaps are played through the data model,
+ * as the player would play them, and through an engine of its own, and
+ * after each one the two must have the same board, clouds, score and
+ * turns, with every tile sprite sitting where the board says it is.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaDataModelRulesTest
+{
+    // THE LEVEL PLAYED, WHICH HAS CLOUDS AND PLENTY OF TURNS, AND THE SEED
+    // IT'S PLAYED WITH
+    private static final int LEVEL = 7;
+    private static final long SEED = 0x5EED1E7L;
+
+    // HOW MANY SWAPS ARE PLAYED, SHORT OF THE GAME ENDING
+    private static final int SWAPS = 10;
+
+    /**
+     * Tests the game plays the same as its engine when its first board is
+     * dealt as it starts.
+     */
+    @Test
+    public void testSameGameAsEngine() throws Exception
+    {
+        playBoth(false);
+    }
+
+    /**
+     * Tests the game plays the same as its engine when its first board was
+     * dealt ahead of time.
+     */
+    @Test
+    public void testSameGameAsEngineWhenPrefetched() throws Exception
+    {
+        playBoth(true);
+    }
+
+    /**
+     * Helper method that starts the level, with its board dealt ahead of
+     * time if the prefetch argument says so, and plays the same swaps
+     * through the game and an engine dealt the same way, comparing them
+     * after each.
+     */
+    private void playBoth(boolean prefetch) throws Exception
+    {
+        LullabyLandSagaHeadlessGame game = new LullabyLandSagaHeadlessGame();
+        LullabyLandSagaDataModel data = game.getData();
+        game.startLevel(LEVEL, SEED, prefetch);
+        assertTrue(data.inProgress());
+
+        // THE ENGINE STARTS FROM THE SAME TILES, WITH THE SEED THE GAME
+        // GIVES ITS OWN
+        LullabyLandSagaLevel level = data.getLevel();
+        int[] dealSupply = game.getDealSupply();
+        for (int i = 0; i < dealSupply.length; i++)
+        {
+            if (!level.usesTileType(i))
+                dealSupply[i] = 0;
+        }
+        LullabyLandSagaRulesEngine engine = new LullabyLandSagaRulesEngine(level,
+                dealSupply, game.getFillerSupply(), LullabyLandSagaRandom.nthLong(SEED, 1));
+        assertSameGame("Dealt", engine, data);
+
+        LullabyLandSagaMove move = new LullabyLandSagaMove();
+        for (int i = 0; (i < SWAPS) && (engine.getTurns() > 1) && !engine.isOver(); i++)
+        {
+            // THE GAME'S MOVE IS REUSED, SO IT'S COPIED BEFORE PLAYING
+            LullabyLandSagaMove hint = data.moveOnGrid();
+            assertNotNull(hint);
+            move.col1 = hint.col1;
+            move.row1 = hint.row1;
+            move.col2 = hint.col2;
+            move.row2 = hint.row2;
+            assertTrue(engine.playMove(move));
+            game.playMove(move);
+            assertSameGame("Swap " + (i + 1), engine, data);
+        }
+    }
+
+    /**
+     * Helper method that checks the data model's game is the engine
+     * argument's, and that its tiles are where its board has them.
+     */
+    private void assertSameGame(String when, LullabyLandSagaRulesEngine engine,
+                                LullabyLandSagaDataModel data)
+    {
+        LullabyLandSagaRulesEngine played = data.getRulesEngine();
+        assertEquals(when + ", score", engine.getScore(), data.getScore());
+        assertEquals(when + ", turns", engine.getTurns(), data.getTurns());
+        assertEquals(when + ", hash", engine.getHash(), played.getHash());
+
+        LullabyLandSagaBoard board = engine.getBoard();
+        LullabyLandSagaBoard playedBoard = data.getBoard();
+        ArrayList<LullabyLandSagaTile>[][] tileGrid = data.getTileGrid();
+        for (int i = 0; i < data.getGridColumns(); i++)
+        {
+            for (int j = 0; j < data.getGridRows(); j++)
+            {
+                String cell = when + ", cell " + i + "," + j;
+                assertEquals(cell, board.getType(i, j), playedBoard.getType(i, j));
+                assertEquals(cell, board.getSpecial(i, j), playedBoard.getSpecial(i, j));
+                int clouds = engine.getCloudCount(i, j);
+                assertEquals(cell, clouds, played.getCloudCount(i, j));
+
+                // ONE SPRITE FOR THE TILE USED FOR MATCHING, AND ONE FOR
+                // EACH CLOUD, ALL IN THE CELL AND AT REST THERE
+                ArrayList<LullabyLandSagaTile> stack = tileGrid[i][j];
+                int bottom = board.isEmpty(i, j) ? 0 : 1;
+                assertEquals(cell, bottom + clouds, stack.size());
+                if (bottom == 1)
+                {
+                    assertEquals(cell, board.getType(i, j), stack.get(0).getTileTypeId());
+                    assertNotSame(cell, LullabyLandSagaTileState.CLOUD, stack.get(0).getTileState());
+                }
+                for (int k = 0; k < clouds; k++)
+                {
+                    assertEquals(cell, engine.getCloudType(i, j, k), played.getCloudType(i, j, k));
+                    LullabyLandSagaTile cloud = stack.get(bottom + k);
+                    assertEquals(cell, engine.getCloudType(i, j, k), cloud.getTileTypeId());
+                    assertEquals(cell, LullabyLandSagaTileState.CLOUD, cloud.getTileState());
+                }
+                for (LullabyLandSagaTile tile : stack)
+                {
+                    assertEquals(cell, i, tile.getGridColumn());
+                    assertEquals(cell, j, tile.getGridRow());
+                    assertEquals(cell, data.calculateTileXInGrid(i, 0), tile.getX(), 0);
+                    assertEquals(cell, data.calculateTileYInGrid(j, 0), tile.getY(), 0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package lullabylandsaga.data;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import lullabylandsaga.LullabyLandSaga.LullabyLandSagaPropertyType;
+import lullabylandsaga.ui.LullabyLandSagaMiniGame;
+import lullabylandsaga.ui.LullabyLandSagaTileState;
+import mini_game.SpriteType;
+import properties_manager.PropertiesManager;
+import static lullabylandsaga.LullabyLandSagaConstants.*;
+
+/**
+ * This class is the game without its window, timer, art or sound, for
+ * testing the data model as it's played. Everything else is set up the way
+ * the game sets it up, from the properties and level files in ./data/,
+ * with the same tiles, which are given blank images. The frames are all
+ * driven by the test's thread, so it runs without a display.
+ *
+ * @author Thomas Marion
+ */
+public class LullabyLandSagaHeadlessGame extends LullabyLandSagaMiniGame
+{
+    // THE SAME FILES THE GAME STARTS WITH
+    private static final String UI_PROPERTIES_FILE_NAME = "properties.xml";
+    private static final String PROPERTIES_SCHEMA_FILE_NAME = "properties_schema.xsd";
+    private static final String DATA_PATH = "./data/";
+
+    // THE LONGEST WE WAIT FOR THE TILES TO SETTLE, IN MILLISECONDS
+    private static final long SETTLE_TIMEOUT = 30000;
+
+    // THE WINDOW'S LOCK COMES WITH THE WINDOW, SO WE HAVE OUR OWN
+    private ReentrantLock headlessLock;
+
+    // THE FRAMES PER SECOND THE GAME RUNS AT
+    private int fps;
+
+    // THE NUMBER OF TILES OF EACH TYPE MADE FOR DEALING AND FOR FILLING
+    private int[] dealSupply;
+    private int[] fillerSupply;
+
+    /**
+     * Constructor for initializing the game, its data and all its tiles,
+     * ready for a level to be started.
+     */
+    public LullabyLandSagaHeadlessGame() throws Exception
+    {
+        headlessLock = new ReentrantLock();
+
+        // LOAD THE SETTINGS THE SAME WAY THE GAME DOES
+        PropertiesManager props = PropertiesManager.getPropertiesManager();
+        props.addProperty(LullabyLandSagaPropertyType.UI_PROPERTIES_FILE_NAME, UI_PROPERTIES_FILE_NAME);
+        props.addProperty(LullabyLandSagaPropertyType.PROPERTIES_SCHEMA_FILE_NAME, PROPERTIES_SCHEMA_FILE_NAME);
+        props.addProperty(LullabyLandSagaPropertyType.DATA_PATH.toString(), DATA_PATH);
+        props.loadProperties(UI_PROPERTIES_FILE_NAME, PROPERTIES_SCHEMA_FILE_NAME);
+        String gameFlavorFile = props.getProperty(LullabyLandSagaPropertyType.GAME_FLAVOR_FILE_NAME);
+        props.loadProperties(gameFlavorFile, PROPERTIES_SCHEMA_FILE_NAME);
+        fps = Integer.parseInt(props.getProperty(LullabyLandSagaPropertyType.FPS));
+
+        // THE DATA NEEDS NO WINDOW
+        initData();
+
+        // ONE SPRITE TYPE PER TILE IMAGE, AS THE GAME MAKES THEM, AND AS
+        // MANY TILES OF EACH
+        dealSupply = new int[TILE_TYPES.length];
+        fillerSupply = new int[TILE_TYPES.length];
+        initTiles(LullabyLandSagaPropertyType.TYPE_A_TILES, 0);
+        initTiles(LullabyLandSagaPropertyType.TYPE_B_TILES, 1);
+        initTiles(LullabyLandSagaPropertyType.TYPE_C_TILES, 2);
+        initTiles(LullabyLandSagaPropertyType.TYPE_D_TILES, 3);
+        initTiles(LullabyLandSagaPropertyType.TYPE_E_TILES, 4);
+        initTiles(LullabyLandSagaPropertyType.TYPE_F_TILES, 5);
+    }
+
+    // ACCESSOR METHODS
+
+    public LullabyLandSagaDataModel getData()
+    {
+        return (LullabyLandSagaDataModel)data;
+    }
+
+    public int getFps()
+    {
+        return fps;
+    }
+
+    /**
+     * Accessor method for getting the number of tiles of each type made
+     * for dealing, which is what the first game is dealt from.
+     *
+     * @return The number of tiles of each type, indexed by tile type id.
+     */
+    public int[] getDealSupply()
+    {
+        return dealSupply.clone();
+    }
+
+    /**
+     * Accessor method for getting the number of filler tiles of each type
+     * made, which is what the first game starts its filler pool with.
+     *
+     * @return The number of tiles of each type, indexed by tile type id.
+     */
+    public int[] getFillerSupply()
+    {
+        return fillerSupply.clone();
+    }
+
+    // GAME METHODS
+
+    /**
+     * This method starts a game of the level with the levelNumber argument,
+     * the way the game does when the level is picked, and waits for its
+     * tiles to be dealt into the grid.
+     *
+     * @param levelNumber The level to play.
+     *
+     * @param seed The seed the game is started with.
+     *
+     * @param prefetch Whether to deal the board ahead of time first, as
+     * the game does while the player is on the level select screen.
+     */
+    public void startLevel(int levelNumber, long seed, boolean prefetch) throws Exception
+    {
+        LullabyLandSagaDataModel dataModel = getData();
+        beginUsingData();
+        try
+        {
+            String levelFile = getLevelFile(levelNumber);
+            LullabyLandSagaLevel level = getFileManager().readLevel(levelFile);
+            dataModel.initLevelGrid(level.getGrid(), level.getColumns(), level.getRows());
+            dataModel.setLevel(level);
+            dataModel.setRandomSeed(seed);
+            if (prefetch)
+                getFileManager().prefetchLevel(levelFile);
+            dataModel.reset(this);
+        }
+        finally
+        {
+            endUsingData();
+        }
+        settle();
+    }
+
+    /**
+     * This method plays the move argument as the player would, and waits
+     * for the tiles to settle.
+     *
+     * @param move The swap to play.
+     */
+    public void playMove(LullabyLandSagaMove move) throws Exception
+    {
+        beginMove(move);
+        settle();
+    }
+
+    /**
+     * This method plays the move argument as the player would, leaving
+     * its tiles to be moved by the frames that follow, see settle.
+     *
+     * @param move The swap to play.
+     */
+    public void beginMove(LullabyLandSagaMove move) throws Exception
+    {
+        beginUsingData();
+        try
+        {
+            getData().playMove(move);
+        }
+        finally
+        {
+            endUsingData();
+        }
+    }
+
+    /**
+     * This method runs frames, one every 1000 / fps milliseconds, as the
+     * game's timer does, until no tiles are moving.
+     *
+     * @return The number of frames run.
+     */
+    public int settle() throws InterruptedException
+    {
+        LullabyLandSagaDataModel dataModel = getData();
+        long deadline = System.currentTimeMillis() + SETTLE_TIMEOUT;
+        int frames = 0;
+        while (dataModel.areTilesMoving())
+        {
+            if (System.currentTimeMillis() > deadline)
+                throw new IllegalStateException("The tiles never settled");
+            dataModel.updateAll(this);
+            frames++;
+            Thread.sleep(1000 / fps);
+        }
+        return frames;
+    }
+
+    // OVERRIDDEN METHODS
+
+    @Override
+    public void beginUsingData()
+    {
+        headlessLock.lock();
+    }
+
+    @Override
+    public void endUsingData()
+    {
+        headlessLock.unlock();
+    }
+
+    // HELPER METHODS
+
+    /**
+     * Makes the tiles for each image listed in the tilesProperty argument,
+     * all of the type with the typeId argument, with blank images.
+     */
+    private void initTiles(LullabyLandSagaPropertyType tilesProperty, int typeId)
+    {
+        PropertiesManager props = PropertiesManager.getPropertiesManager();
+        LullabyLandSagaDataModel dataModel = getData();
+        ArrayList<String> images = props.getPropertyOptionsList(tilesProperty);
+        BufferedImage img = new BufferedImage(TILE_IMAGE_WIDTH, TILE_IMAGE_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        for (int i = 0; i < images.size(); i++)
+        {
+            SpriteType sT = new SpriteType(TILE_SPRITE_TYPE_PREFIX + typeId + "_" + i);
+            for (LullabyLandSagaTileState tileState : LullabyLandSagaTileState.values())
+            {
+                sT.addState(tileState.getSpriteState(), img);
+            }
+            for (int j = 0; j < TILES_PER_IMAGE; j++)
+            {
+                dataModel.initTile(sT, TILE_TYPES[typeId]);
+            }
+            for (int j = 0; j < FILLER_TILES_PER_IMAGE; j++)
+            {
+                dataModel.initFillerTile(sT, TILE_TYPES[typeId]);
+            }
+            dealSupply[typeId] += TILES_PER_IMAGE;
+            fillerSupply[typeId] += FILLER_TILES_PER_IMAGE;
+        }
+    }
+}